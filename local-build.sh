@@ -2,5 +2,4 @@
 set -e
 ./mvnw clean package --file standalone.pom.xml
 java -cp target/*-with-deps.jar com.onthegomap.planetiler.examples.SingleHighwayLayer --download --area=massachusetts
-pmtiles convert data/single-highway-layer.mbtiles data/single-highway-layer.pmtiles
-npx serve .
+java -cp target/*-with-deps.jar com.onthegomap.planetiler.examples.TileServer --tiles=data/single-highway-layer.pmtiles --port=8080
@@ -0,0 +1,46 @@
+#!/usr/bin/env bash
+# Builds one area in a single process and then with each given number of local shard processes, merges the shards
+# and prints the wall time and speedup per shard count. The CPUs and memory of the machine are split between the
+# shards of a run. Build the jar first with ./mvnw clean package --file standalone.pom.xml
+# Usage: ./shard-build.sh [area] [shard counts...], for example ./shard-build.sh switzerland 2 4 8
+set -e
+AREA=${1:-monaco}
+shift || true
+COUNTS=${*:-2 4}
+JAR=$(ls target/*-with-deps.jar | head -1)
+CPUS=$(nproc)
+MEMORY_MB=$(( $(awk '/MemTotal/ {print $2}' /proc/meminfo) / 1024 * 3 / 4 ))
+OUT=data/shards
+mkdir -p "$OUT"
+
+java -cp "$JAR" com.onthegomap.planetiler.examples.SingleHighwayLayer --area="$AREA" --download --only_download
+
+start=$(date +%s.%N)
+java -Xmx${MEMORY_MB}m -cp "$JAR" com.onthegomap.planetiler.examples.SingleHighwayLayer --area="$AREA" \
+  --mbtiles="$OUT/$AREA-single.mbtiles" --pmtiles= > "$OUT/$AREA-single.log" 2>&1
+single=$(echo "$(date +%s.%N) - $start" | bc)
+results="shards  seconds  speedup  efficiency\n1       $(printf %.1f "$single")     1.00     100%"
+
+for count in $COUNTS; do
+  start=$(date +%s.%N)
+  pids=()
+  shards=()
+  for ((index = 0; index < count; index++)); do
+    java -Xmx$((MEMORY_MB / count))m -cp "$JAR" com.onthegomap.planetiler.examples.SingleHighwayLayer \
+      --area="$AREA" --shard="$index/$count" --threads=$(( CPUS / count > 0 ? CPUS / count : 1 )) \
+      --mbtiles="$OUT/$AREA-$count.mbtiles" > "$OUT/$AREA-$count-$index.log" 2>&1 &
+    pids+=($!)
+    shards+=("$OUT/$AREA-$count.shard-$index-of-$count.mbtiles")
+  done
+  for pid in "${pids[@]}"; do
+    wait "$pid" || { echo "A shard of the $count shard build failed, see $OUT/$AREA-$count-*.log"; exit 1; }
+  done
+  java -cp "$JAR" com.onthegomap.planetiler.examples.HighwayShardMerge \
+    --shards="$(IFS=,; echo "${shards[*]}")" --mbtiles="$OUT/$AREA-$count-merged.mbtiles" --pmtiles= \
+    --single_build_seconds="$single" > "$OUT/$AREA-$count-merge.log" 2>&1
+  seconds=$(echo "$(date +%s.%N) - $start" | bc)
+  speedup=$(echo "$single / $seconds" | bc -l)
+  results="$results\n$(printf '%-7s %-8.1f %-8.2f %.0f%%' "$count" "$seconds" "$speedup" "$(echo "$speedup * 100 / $count" | bc -l)")"
+done
+
+echo -e "$results"
@@ -0,0 +1,227 @@
+// Times what a client does with the features of one highway tile with and without line-sort-key, without a browser:
+// decoding the features with their properties and geometry, and for the sorted style also evaluating the key and
+// sorting the features by it, as MapLibre's line bucket does. Has no dependencies.
+// Usage: node sort-bench.js tile.pbf [runs], for example with a tile saved from the tile server:
+//   curl -o tile.pbf http://localhost:8080/14/8529/5975.pbf && node sort-bench.js tile.pbf
+const fs = require('fs');
+const zlib = require('zlib');
+
+class Reader {
+    constructor(buffer, start = 0, end = buffer.length) {
+        this.buffer = buffer;
+        this.pos = start;
+        this.end = end;
+    }
+
+    varint() {
+        let result = 0;
+        let shift = 0;
+        let byte;
+        do {
+            byte = this.buffer[this.pos++];
+            result += (byte & 0x7f) * 2 ** shift;
+            shift += 7;
+        } while (byte & 0x80);
+        return result;
+    }
+
+    bytes() {
+        const length = this.varint();
+        const start = this.pos;
+        this.pos += length;
+        return [start, this.pos];
+    }
+
+    string() {
+        const [start, end] = this.bytes();
+        return this.buffer.toString('utf8', start, end);
+    }
+
+    packed() {
+        const [start, end] = this.bytes();
+        const reader = new Reader(this.buffer, start, end);
+        const result = [];
+        while (reader.pos < end) {
+            result.push(reader.varint());
+        }
+        return result;
+    }
+
+    skip(type) {
+        if (type === 0) {
+            this.varint();
+        } else if (type === 1) {
+            this.pos += 8;
+        } else if (type === 2) {
+            this.bytes();
+        } else if (type === 5) {
+            this.pos += 4;
+        }
+    }
+}
+
+function zigzag(value) {
+    return (value >>> 1) ^ -(value & 1);
+}
+
+function readValue(buffer, start, end) {
+    const reader = new Reader(buffer, start, end);
+    let value = null;
+    while (reader.pos < end) {
+        const tag = reader.varint();
+        const field = tag >> 3;
+        if (field === 1) {
+            value = reader.string();
+        } else if (field === 2) {
+            value = buffer.readFloatLE(reader.pos);
+            reader.pos += 4;
+        } else if (field === 3) {
+            value = buffer.readDoubleLE(reader.pos);
+            reader.pos += 8;
+        } else if (field === 4 || field === 5) {
+            value = reader.varint();
+        } else if (field === 6) {
+            value = zigzag(reader.varint());
+        } else if (field === 7) {
+            value = reader.varint() !== 0;
+        } else {
+            reader.skip(tag & 7);
+        }
+    }
+    return value;
+}
+
+// Returns the raw features of every layer, leaving properties and geometry encoded like VectorTileLayer does.
+function readLayers(buffer) {
+    const layers = {};
+    const tile = new Reader(buffer);
+    while (tile.pos < tile.end) {
+        const tag = tile.varint();
+        if (tag >> 3 !== 3) {
+            tile.skip(tag & 7);
+            continue;
+        }
+        const [start, end] = tile.bytes();
+        const layer = new Reader(buffer, start, end);
+        const result = {name: '', keys: [], values: [], features: []};
+        while (layer.pos < end) {
+            const layerTag = layer.varint();
+            const field = layerTag >> 3;
+            if (field === 1) {
+                result.name = layer.string();
+            } else if (field === 2) {
+                result.features.push(layer.bytes());
+            } else if (field === 3) {
+                result.keys.push(layer.string());
+            } else if (field === 4) {
+                const [valueStart, valueEnd] = layer.bytes();
+                result.values.push(readValue(buffer, valueStart, valueEnd));
+            } else {
+                layer.skip(layerTag & 7);
+            }
+        }
+        layers[result.name] = result;
+    }
+    return layers;
+}
+
+// Decodes the properties and the geometry of one feature, like VectorTileFeature plus loadGeometry.
+function loadFeature(buffer, layer, [start, end]) {
+    const reader = new Reader(buffer, start, end);
+    const properties = {};
+    let commands = [];
+    while (reader.pos < end) {
+        const tag = reader.varint();
+        const field = tag >> 3;
+        if (field === 2) {
+            const tags = reader.packed();
+            for (let i = 0; i < tags.length; i += 2) {
+                properties[layer.keys[tags[i]]] = layer.values[tags[i + 1]];
+            }
+        } else if (field === 4) {
+            commands = reader.packed();
+        } else {
+            reader.skip(tag & 7);
+        }
+    }
+    const lines = [];
+    let line = null;
+    let x = 0;
+    let y = 0;
+    for (let i = 0; i < commands.length;) {
+        const command = commands[i] & 7;
+        const count = commands[i] >> 3;
+        i++;
+        if (command === 7) {
+            continue;
+        }
+        for (let n = 0; n < count; n++) {
+            x += zigzag(commands[i++]);
+            y += zigzag(commands[i++]);
+            if (command === 1) {
+                line = [];
+                lines.push(line);
+            }
+            line.push({x, y});
+        }
+    }
+    return {properties, geometry: lines};
+}
+
+function decode(buffer, layer) {
+    return layer.features.map(feature => loadFeature(buffer, layer, feature));
+}
+
+// Evaluates ["to-number", ["get", "line-sort-key"]] for every feature and sorts them by it, as the line bucket does.
+function decodeSorted(buffer, layer) {
+    const features = decode(buffer, layer).map((feature, index) => ({
+        feature,
+        index,
+        sortKey: Number(feature.properties['line-sort-key'] ?? 0),
+    }));
+    features.sort((a, b) => a.sortKey - b.sortKey || a.index - b.index);
+    return features;
+}
+
+function time(runs, fn) {
+    const millis = [];
+    for (let run = 0; run < runs; run++) {
+        const start = process.hrtime.bigint();
+        fn();
+        millis.push(Number(process.hrtime.bigint() - start) / 1e6);
+    }
+    millis.sort((a, b) => a - b);
+    return {median: millis[Math.floor(runs / 2)], min: millis[0]};
+}
+
+const file = process.argv[2];
+const runs = parseInt(process.argv[3] || '500');
+let buffer = fs.readFileSync(file);
+if (buffer[0] === 0x1f && buffer[1] === 0x8b) {
+    buffer = zlib.gunzipSync(buffer);
+}
+const layer = readLayers(buffer).highway;
+let inOrder = true;
+let previous = -Infinity;
+let vertices = 0;
+for (const feature of decode(buffer, layer)) {
+    const key = Number(feature.properties['line-sort-key'] ?? 0);
+    inOrder = inOrder && key >= previous;
+    previous = key;
+    vertices += feature.geometry.reduce((sum, line) => sum + line.length, 0);
+}
+console.log(`${file}: ${buffer.length} bytes, ${layer.features.length} features, ${vertices} vertices, ` +
+    `${inOrder ? 'already' : 'not'} in line-sort-key order`);
+
+// warm up both paths before measuring, then alternate them so that neither profits from running later
+time(runs, () => decode(buffer, layer));
+time(runs, () => decodeSorted(buffer, layer));
+const results = {'tile order': [], 'line-sort-key': []};
+for (let round = 0; round < 10; round++) {
+    results['tile order'].push(time(runs / 10, () => decode(buffer, layer)).median);
+    results['line-sort-key'].push(time(runs / 10, () => decodeSorted(buffer, layer)).median);
+}
+for (const [name, medians] of Object.entries(results)) {
+    medians.sort((a, b) => a - b);
+    console.log(`${name.padEnd(14)} median ${medians[5].toFixed(3)} ms, best round ${medians[0].toFixed(3)} ms`);
+}
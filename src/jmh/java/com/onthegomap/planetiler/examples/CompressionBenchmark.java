@@ -0,0 +1,143 @@
+package com.onthegomap.planetiler.examples;
+
+import com.onthegomap.planetiler.VectorTile;
+import com.onthegomap.planetiler.config.Arguments;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compressed size, compression throughput and decompression latency of every tile codec per zoom. Uses the tiles of
+ * {@code -p mbtiles=...} when given, otherwise synthetic dense tiles. The sizes are logged when a trial starts, the
+ * compression throughput is reported as uncompressed bytes per second by the {@code rawBytes} counter.
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionBenchmark {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CompressionBenchmark.class);
+  private static final int TILES_PER_ZOOM = 64;
+  private static final int DICTIONARY_SAMPLES = 4000;
+  private static final int DICTIONARY_BYTES = 112_640;
+  private static final int ZSTD_LEVEL = 19;
+
+  @Param({"gzip", "none", "zstd", "zstd_dict"})
+  public String codec;
+
+  @Param({"8", "10", "12", "14"})
+  public int zoom;
+
+  @Param({""})
+  public String mbtiles;
+
+  private TileCodec tileCodec;
+  private byte[][] tiles;
+  private byte[][] compressed;
+  private int next;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Bytes {
+    public long rawBytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      rawBytes = 0;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    List<byte[]> raw = mbtiles.isEmpty() ? syntheticTiles(zoom, 0) : readTiles(Path.of(mbtiles), zoom);
+    tiles = raw.toArray(byte[][]::new);
+    List<byte[]> samples = new ArrayList<>();
+    if (TileCodec.ZSTD_DICTIONARY.equals(codec)) {
+      if (mbtiles.isEmpty()) {
+        // train on other tiles than the measured ones
+        for (int sampleZoom = 8; sampleZoom <= 14; sampleZoom++) {
+          samples.addAll(syntheticTiles(sampleZoom, 1000));
+        }
+      } else {
+        samples.addAll(TileCodec.sampleTiles(Path.of(mbtiles), DICTIONARY_SAMPLES));
+      }
+    }
+    tileCodec = samples.isEmpty() ?
+      TileCodec.fromArguments(Arguments.of(Map.of("tile_compression", codec)), null) :
+      TileCodec.zstd(ZSTD_LEVEL, TileCodec.trainDictionary(samples, DICTIONARY_BYTES));
+
+    compressed = new byte[tiles.length][];
+    long rawBytes = 0;
+    long compressedBytes = 0;
+    for (int i = 0; i < tiles.length; i++) {
+      compressed[i] = tileCodec.compress(tiles[i]);
+      rawBytes += tiles[i].length;
+      compressedBytes += compressed[i].length;
+    }
+    LOGGER.info("{} z{}: {} tiles, {} bytes -> {} bytes ({}%){}", codec, zoom, tiles.length, rawBytes,
+      compressedBytes, String.format("%.1f", compressedBytes * 100.0 / Math.max(1, rawBytes)),
+      tileCodec.dictionary() == null ? "" : ", dictionary " + tileCodec.dictionary().length + " bytes");
+  }
+
+  private static List<byte[]> syntheticTiles(int zoom, long firstSeed) {
+    SingleHighwayLayer profile = new SingleHighwayLayer();
+    int ways = 250 << Math.min(Math.max(zoom - 8, 0), 5);
+    List<byte[]> result = new ArrayList<>();
+    for (int i = 0; i < TILES_PER_ZOOM; i++) {
+      List<VectorTile.Feature> features = profile.postProcessLayerFeatures("highway", zoom,
+        SyntheticHighways.tileFeatures(profile, zoom, ways / (1 + i % 4), firstSeed + i));
+      result.add(new VectorTile().addLayerFeatures("highway", features).encode());
+    }
+    return result;
+  }
+
+  private static List<byte[]> readTiles(Path path, int zoom) throws Exception {
+    List<byte[]> result = new ArrayList<>();
+    try (MbtilesArchive archive = MbtilesArchive.open(path)) {
+      long[] coordinates = archive.tileCoordinates(zoom);
+      long step = Math.max(1, coordinates.length / TILES_PER_ZOOM);
+      for (int i = 0; i < coordinates.length && result.size() < TILES_PER_ZOOM; i += step) {
+        byte[] data = archive.getTile(zoom, (int) (coordinates[i] >>> 32), (int) coordinates[i]);
+        result.add(MbtilesArchive.gunzipIfNeeded(data));
+      }
+    }
+    if (result.isEmpty()) {
+      throw new IllegalArgumentException("No z" + zoom + " tiles in " + path);
+    }
+    return result;
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public byte[] compress(Bytes bytes) throws Exception {
+    byte[] tile = tiles[next++ % tiles.length];
+    bytes.rawBytes += tile.length;
+    return tileCodec.compress(tile);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public byte[] decompress() throws Exception {
+    return tileCodec.decompress(compressed[next++ % compressed.length]);
+  }
+}
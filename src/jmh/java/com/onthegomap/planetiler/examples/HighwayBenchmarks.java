@@ -0,0 +1,25 @@
+package com.onthegomap.planetiler.examples;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the profile benchmarks with the GC profiler attached so every result also reports the bytes allocated per
+ * operation ({@code gc.alloc.rate.norm}). Arguments are passed through to JMH.
+ */
+public class HighwayBenchmarks {
+
+  public static void main(String[] args) throws Exception {
+    Options options = new OptionsBuilder()
+      .parent(new CommandLineOptions(args))
+      .include(ProcessFeatureBenchmark.class.getSimpleName())
+      .include(PostProcessBenchmark.class.getSimpleName())
+      .include(CompressionBenchmark.class.getSimpleName())
+      .addProfiler(GCProfiler.class)
+      .build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,45 @@
+package com.onthegomap.planetiler.examples;
+
+import com.onthegomap.planetiler.VectorTile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PostProcessBenchmark {
+
+  @Param({"8", "9", "10", "11", "12", "13", "14"})
+  public int zoom;
+
+  private SingleHighwayLayer profile;
+  private List<VectorTile.Feature> items;
+
+  @Setup
+  public void setup() {
+    profile = new SingleHighwayLayer();
+    // roughly the number of highway ways in a dense downtown tile at each zoom
+    int ways = 250 << Math.min(zoom - 8, 5);
+    items = SyntheticHighways.tileFeatures(profile, zoom, ways);
+  }
+
+  @Benchmark
+  public List<VectorTile.Feature> postProcessLayerFeatures() {
+    return profile.postProcessLayerFeatures("highway", zoom, new ArrayList<>(items));
+  }
+}
@@ -0,0 +1,59 @@
+package com.onthegomap.planetiler.examples;
+
+import com.onthegomap.planetiler.FeatureCollector;
+import com.onthegomap.planetiler.config.PlanetilerConfig;
+import com.onthegomap.planetiler.reader.SourceFeature;
+import com.onthegomap.planetiler.stats.Stats;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessFeatureBenchmark {
+
+  @Param({
+    "unclassified",
+    "tertiary", "tertiary_link",
+    "secondary", "secondary_link",
+    "primary", "primary_link",
+    "trunk", "trunk_link",
+    "motorway", "motorway_link",
+    "residential",
+  })
+  public String highway;
+
+  private SingleHighwayLayer profile;
+  private FeatureCollector.Factory collectors;
+  private SourceFeature[] ways;
+  private int next;
+
+  @Setup
+  public void setup() {
+    profile = new SingleHighwayLayer();
+    collectors = new FeatureCollector.Factory(PlanetilerConfig.defaults(), Stats.inMemory());
+    ways = SyntheticHighways.ways(highway);
+  }
+
+  @Benchmark
+  public FeatureCollector processFeature() {
+    SourceFeature way = ways[next];
+    next = (next + 1) % ways.length;
+    FeatureCollector collector = collectors.get(way);
+    profile.processFeature(way, collector);
+    return collector;
+  }
+}
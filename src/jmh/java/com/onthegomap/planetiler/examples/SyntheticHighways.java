@@ -0,0 +1,123 @@
+package com.onthegomap.planetiler.examples;
+
+import com.onthegomap.planetiler.FeatureCollector;
+import com.onthegomap.planetiler.VectorTile;
+import com.onthegomap.planetiler.config.PlanetilerConfig;
+import com.onthegomap.planetiler.geo.GeoUtils;
+import com.onthegomap.planetiler.reader.SimpleFeature;
+import com.onthegomap.planetiler.reader.SourceFeature;
+import com.onthegomap.planetiler.stats.Stats;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+
+/** Deterministic synthetic highway ways and tile feature lists for the benchmarks. */
+class SyntheticHighways {
+
+  static final String[] HIGHWAYS = {
+    "unclassified",
+    "tertiary", "tertiary_link",
+    "secondary", "secondary_link",
+    "primary", "primary_link",
+    "trunk", "trunk_link",
+    "motorway", "motorway_link",
+  };
+
+  // relative frequency of each entry in HIGHWAYS in a dense city tile
+  private static final int[] HIGHWAY_WEIGHTS = {40, 18, 2, 12, 2, 9, 2, 5, 2, 4, 4};
+
+  private static final List<Map<String, Object>> STRUCTURES = List.of(
+    Map.of(),
+    Map.of("bridge", "yes"),
+    Map.of("tunnel", "yes"),
+    Map.of("covered", "yes"),
+    Map.of("bridge", "yes", "layer", "2"),
+    Map.of("tunnel", "yes", "layer", "-1"),
+    Map.of("bridge", "viaduct", "layer", "-1;0"),
+    Map.of("bridge", "yes", "layer", "7")
+  );
+
+  private SyntheticHighways() {}
+
+  static SourceFeature way(String highway, Map<String, Object> structure, double lon, double lat) {
+    Map<String, Object> tags = new HashMap<>(structure);
+    tags.put("highway", highway);
+    LineString line = GeoUtils.JTS_FACTORY.createLineString(new Coordinate[]{
+      new Coordinate(lon, lat),
+      new Coordinate(lon + 0.001, lat + 0.0005),
+      new Coordinate(lon + 0.002, lat + 0.0004),
+      new Coordinate(lon + 0.003, lat + 0.001),
+    });
+    return SimpleFeature.create(line, tags);
+  }
+
+  /** One way of the given highway value for every bridge, tunnel and layer combination. */
+  static SourceFeature[] ways(String highway) {
+    SourceFeature[] result = new SourceFeature[STRUCTURES.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = way(highway, STRUCTURES.get(i), -71.06 + i * 0.01, 42.37);
+    }
+    return result;
+  }
+
+  /**
+   * Highway features of a dense tile at {@code zoom} as they reach {@code postProcessLayerFeatures}: chains of short
+   * segments that share end points, with attributes computed by the profile.
+   */
+  static List<VectorTile.Feature> tileFeatures(SingleHighwayLayer profile, int zoom, int ways) {
+    return tileFeatures(profile, zoom, ways, zoom);
+  }
+
+  /** Like {@link #tileFeatures(SingleHighwayLayer, int, int)}, with another tile for every {@code seed}. */
+  static List<VectorTile.Feature> tileFeatures(SingleHighwayLayer profile, int zoom, int ways, long seed) {
+    Random random = new Random(seed);
+    FeatureCollector.Factory collectors = new FeatureCollector.Factory(PlanetilerConfig.defaults(), Stats.inMemory());
+    int totalWeight = 0;
+    for (int weight : HIGHWAY_WEIGHTS) {
+      totalWeight += weight;
+    }
+
+    List<VectorTile.Feature> result = new ArrayList<>();
+    long id = 0;
+    while (id < ways) {
+      int pick = random.nextInt(totalWeight);
+      int index = 0;
+      while (pick >= HIGHWAY_WEIGHTS[index]) {
+        pick -= HIGHWAY_WEIGHTS[index];
+        index++;
+      }
+      Map<String, Object> structure = STRUCTURES.get(random.nextInt(10) < 8 ? 0 : random.nextInt(STRUCTURES.size()));
+      SourceFeature source = way(HIGHWAYS[index], structure, -71.06, 42.37);
+      FeatureCollector collector = collectors.get(source);
+      profile.processFeature(source, collector);
+
+      double x = random.nextDouble() * 256;
+      double y = random.nextDouble() * 256;
+      double angle = random.nextDouble() * Math.PI * 2;
+      int segments = 1 + random.nextInt(6);
+      for (int segment = 0; segment < segments && id < ways; segment++, id++) {
+        double nextX = x + Math.cos(angle) * (4 + random.nextDouble() * 20);
+        double nextY = y + Math.sin(angle) * (4 + random.nextDouble() * 20);
+        angle += (random.nextDouble() - 0.5) * 0.6;
+        LineString line = GeoUtils.JTS_FACTORY.createLineString(new Coordinate[]{
+          new Coordinate(x, y),
+          new Coordinate((x + nextX) / 2 + random.nextDouble() - 0.5, (y + nextY) / 2 + random.nextDouble() - 0.5),
+          new Coordinate(nextX, nextY),
+        });
+        for (FeatureCollector.Feature feature : collector) {
+          if (zoom >= feature.getMinZoom() && zoom <= feature.getMaxZoom()) {
+            result.add(new VectorTile.Feature("highway", id, VectorTile.encodeGeometry(line),
+              feature.getAttrsAtZoom(zoom)));
+          }
+        }
+        x = nextX;
+        y = nextY;
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,183 @@
+package com.onthegomap.planetiler.examples;
+
+import com.onthegomap.planetiler.Planetiler;
+import com.onthegomap.planetiler.config.Arguments;
+import com.onthegomap.planetiler.stats.Stats;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds many local extracts in one JVM. Regions are started largest first whenever their estimated memory fits into
+ * what is left of the budget, so small regions run side by side while a region that needs the whole budget runs alone.
+ * All builds share one warm {@link SingleHighwayLayer} template. Every region gets its own temporary directory, and
+ * like {@link SingleHighwayLayer#run} writes its palette style and pmtiles file next to its mbtiles file.
+ */
+public class HighwayBatch {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HighwayBatch.class);
+
+  record Region(Path input, Path output, long estimatedBytes) {
+
+    /**
+     * Returns the file next to the output with {@code suffix} instead of its extension, e.g. {@code monaco.pmtiles}.
+     */
+    Path sibling(String suffix) {
+      String name = output.getFileName().toString();
+      int dot = name.lastIndexOf('.');
+      return output.resolveSibling((dot < 0 ? name : name.substring(0, dot)) + suffix);
+    }
+  }
+
+  record Result(Region region, int threads, long millis, Exception error) {}
+
+  private final Arguments args;
+  private final SingleHighwayLayer template;
+  private final long budget;
+  private final int threads;
+  private final Path tmpdir;
+  private final boolean pmtiles;
+  private long available;
+
+  HighwayBatch(Arguments args, SingleHighwayLayer template, long budget, int threads) {
+    this.args = args;
+    this.template = template;
+    this.budget = budget;
+    this.available = budget;
+    this.threads = threads;
+    this.tmpdir = Path.of(args.getString("tmpdir", "temp directory", Path.of("data", "tmp").toString()));
+    this.pmtiles = args.getBoolean("region_pmtiles", "write a pmtiles file next to the mbtiles file of every region",
+      true);
+  }
+
+  public static void main(String[] args) throws Exception {
+    run(Arguments.fromArgsOrConfigFile(args));
+  }
+
+  static void run(Arguments args) throws Exception {
+    Path batch = args.inputFile("batch", "file with one \"input.osm.pbf output.mbtiles\" pair per line",
+      Path.of("batch.txt"));
+    long budget = args.getLong("memory_budget", "bytes of heap the concurrently running regions may use",
+      Runtime.getRuntime().maxMemory() * 3 / 4);
+    double bytesPerInputByte = args.getDouble("memory_per_input_byte",
+      "estimated heap bytes a build needs per byte of .osm.pbf input", 8);
+    long baseBytes = args.getLong("memory_per_region", "estimated heap bytes every build needs on top", 256L << 20);
+
+    List<Region> regions = new ArrayList<>();
+    for (String line : Files.readAllLines(batch)) {
+      String trimmed = line.strip();
+      if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+        continue;
+      }
+      String[] parts = trimmed.split("\\s+");
+      if (parts.length != 2) {
+        throw new IllegalArgumentException(batch + ": expected \"input.osm.pbf output.mbtiles\" but got " + line);
+      }
+      Path input = Path.of(parts[0]);
+      regions.add(new Region(input, Path.of(parts[1]), baseBytes + (long) (Files.size(input) * bytesPerInputByte)));
+    }
+    regions.sort(Comparator.comparingLong(Region::estimatedBytes).reversed());
+
+    SingleHighwayLayer template = new SingleHighwayLayer(SingleHighwayLayer.styles(args), args, Stats.inMemory());
+    long start = System.nanoTime();
+    List<Result> results = new HighwayBatch(args, template, budget, args.threads()).build(regions);
+
+    int failed = 0;
+    for (Result result : results) {
+      if (result.error() != null) {
+        failed++;
+      }
+      LOGGER.info("{} -> {}: {} ms with {} threads (estimated {} MB){}", result.region().input(),
+        result.region().output(), result.millis(), result.threads(), result.region().estimatedBytes() >> 20,
+        result.error() == null ? "" : " FAILED: " + result.error());
+    }
+    LOGGER.info("Built {} regions ({} failed) in {} ms", results.size(), failed,
+      (System.nanoTime() - start) / 1_000_000);
+    if (failed > 0) {
+      throw new IllegalStateException(failed + " of " + results.size() + " regions failed");
+    }
+  }
+
+  List<Result> build(List<Region> regions) throws Exception {
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      List<Future<Result>> futures = new ArrayList<>();
+      for (int i = 0; i < regions.size(); i++) {
+        Region region = regions.get(i);
+        Path regionTmpdir = tmpdir.resolve("region-" + i);
+        long reserved = Math.min(region.estimatedBytes(), budget);
+        int regionThreads = reserve(reserved);
+        futures.add(executor.submit(() -> {
+          try {
+            return build(region, regionThreads, regionTmpdir);
+          } finally {
+            release(reserved);
+          }
+        }));
+      }
+      List<Result> results = new ArrayList<>();
+      for (Future<Result> future : futures) {
+        results.add(future.get());
+      }
+      return results;
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /** Waits until {@code bytes} of the budget are free and returns the threads the region gets. */
+  private synchronized int reserve(long bytes) throws InterruptedException {
+    while (bytes > available) {
+      wait();
+    }
+    available -= bytes;
+    return Math.max(2, (int) Math.ceil(threads * (double) bytes / budget));
+  }
+
+  private synchronized void release(long bytes) {
+    available += bytes;
+    notifyAll();
+  }
+
+  private Result build(Region region, int regionThreads, Path regionTmpdir) {
+    long start = System.nanoTime();
+    try {
+      Arguments regionArgs = Arguments.of(Map.of(
+        "osm_path", region.input().toString(),
+        "mbtiles", region.output().toString(),
+        "threads", Integer.toString(regionThreads),
+        "tmpdir", regionTmpdir.toString()
+      )).orElse(args);
+      Planetiler planetiler = Planetiler.create(regionArgs);
+      SingleHighwayLayer profile = template.forBuild(planetiler.stats());
+      profile.collectOverview(true);
+      planetiler
+        .setProfile(profile)
+        .addOsmSource("osm", region.input(), null)
+        .overwriteOutput("mbtiles", region.output())
+        .run();
+      profile.lineMerger().logStats(LOGGER);
+      if (profile.overview() != null) {
+        profile.overview().logStats(LOGGER);
+      }
+      Path regionPmtiles = region.sibling(".pmtiles");
+      profile.writePalette(region.sibling("-style-palette.json"), region.output(),
+        SingleHighwayLayer.tilesUrl(regionPmtiles));
+      if (pmtiles) {
+        PmtilesWriter.convert(region.output(), regionPmtiles, TileCodec.fromArguments(regionArgs, region.output()));
+      }
+      return new Result(region, regionThreads, (System.nanoTime() - start) / 1_000_000, null);
+    } catch (Exception e) {
+      LOGGER.error("Failed to build {}", region.input(), e);
+      return new Result(region, regionThreads, (System.nanoTime() - start) / 1_000_000, e);
+    }
+  }
+}
@@ -0,0 +1,170 @@
+package com.onthegomap.planetiler.examples;
+
+import com.onthegomap.planetiler.VectorTile;
+import com.onthegomap.planetiler.util.ZoomFunction;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.LineString;
+import org.slf4j.Logger;
+
+/**
+ * Per-zoom tile buffer sized from the widest casing line drawn at each zoom instead of one default for all zooms.
+ * MapLibre draws a tile at 512 CSS pixels while Planetiler measures buffers in 256 pixel tiles, so a line of width
+ * {@code w} reaches {@code w / 4} buffer pixels past the tile edge. A margin on top covers antialiasing and round joins
+ * so that lines still meet without seams. With {@code --buffer_stats}, also counts the vertices written outside of the
+ * tile, which are the geometry duplicated into neighboring tiles, and compares how many input vertices this buffer and
+ * Planetiler's default buffer copy into neighboring tiles.
+ */
+class HighwayBuffer implements ZoomFunction<Number> {
+
+  /** Planetiler's default buffer, for comparison in the log. */
+  static final double DEFAULT_BUFFER_PIXELS = 4;
+  private static final double CSS_PIXELS_PER_BUFFER_PIXEL = 2;
+  private static final int EXTENT = 4096;
+
+  private final Double[] pixels;
+  private final LongAdder[] vertices;
+  private final LongAdder[] outside;
+  private final LongAdder[] inputVertices;
+  private final LongAdder[] inputCopies;
+  private final LongAdder[] inputDefaultCopies;
+
+  HighwayBuffer(Double[] pixels) {
+    this.pixels = pixels.clone();
+    this.vertices = new LongAdder[pixels.length];
+    this.outside = new LongAdder[pixels.length];
+    this.inputVertices = new LongAdder[pixels.length];
+    this.inputCopies = new LongAdder[pixels.length];
+    this.inputDefaultCopies = new LongAdder[pixels.length];
+    for (int zoom = 0; zoom < pixels.length; zoom++) {
+      vertices[zoom] = new LongAdder();
+      outside[zoom] = new LongAdder();
+      inputVertices[zoom] = new LongAdder();
+      inputCopies[zoom] = new LongAdder();
+      inputDefaultCopies[zoom] = new LongAdder();
+    }
+  }
+
+  /** Returns the buffer for lines whose widest casing at each zoom is {@code maxCasingWidths}, in CSS pixels. */
+  static HighwayBuffer fromCasingWidths(double[] maxCasingWidths, double margin) {
+    Double[] pixels = new Double[maxCasingWidths.length];
+    for (int zoom = 0; zoom < pixels.length; zoom++) {
+      pixels[zoom] = maxCasingWidths[zoom] / 2 / CSS_PIXELS_PER_BUFFER_PIXEL + margin;
+    }
+    return new HighwayBuffer(pixels);
+  }
+
+  /** Returns Planetiler's default buffer at every zoom, still counting vertices outside of the tile. */
+  static HighwayBuffer fixed(int zooms) {
+    Double[] pixels = new Double[zooms];
+    Arrays.fill(pixels, DEFAULT_BUFFER_PIXELS);
+    return new HighwayBuffer(pixels);
+  }
+
+  /** Returns a buffer with the same sizes and fresh statistics. */
+  HighwayBuffer withEmptyStats() {
+    return new HighwayBuffer(pixels);
+  }
+
+  @Override
+  public Number apply(int value) {
+    return value < pixels.length ? pixels[value] : pixels[pixels.length - 1];
+  }
+
+  /** Counts the vertices of {@code features} and how many of them lie outside of the tile. */
+  void record(int zoom, List<VectorTile.Feature> features) {
+    if (zoom >= vertices.length) {
+      return;
+    }
+    long count = 0;
+    long beyond = 0;
+    for (VectorTile.Feature feature : features) {
+      VectorTile.VectorGeometry geometry = feature.geometry();
+      int[] commands = geometry.commands();
+      long extent = (long) EXTENT << geometry.scale();
+      long x = 0;
+      long y = 0;
+      int i = 0;
+      while (i < commands.length) {
+        int command = commands[i] & 7;
+        int repeat = commands[i] >>> 3;
+        i++;
+        if (command == 7) {
+          continue;
+        }
+        for (int n = 0; n < repeat && i + 1 < commands.length; n++) {
+          x += zigzagDecode(commands[i]);
+          y += zigzagDecode(commands[i + 1]);
+          i += 2;
+          count++;
+          if (x < 0 || y < 0 || x > extent || y > extent) {
+            beyond++;
+          }
+        }
+      }
+    }
+    vertices[zoom].add(count);
+    outside[zoom].add(beyond);
+  }
+
+  /**
+   * Counts, for every zoom from {@code minZoom} to {@code maxZoom}, the vertices of the input way {@code worldLine} and
+   * how often they fall into the buffer of a neighboring tile with this buffer and with
+   * {@link #DEFAULT_BUFFER_PIXELS}. The written vertices are clipped to this buffer already, so the difference to the
+   * default can only be measured before clipping.
+   */
+  void recordWay(LineString worldLine, int minZoom, int maxZoom) {
+    CoordinateSequence coordinates = worldLine.getCoordinateSequence();
+    int size = coordinates.size();
+    for (int zoom = Math.max(0, minZoom); zoom <= Math.min(maxZoom, pixels.length - 1); zoom++) {
+      double scale = 256d * (1 << zoom);
+      double buffer = pixels[zoom];
+      long copies = 0;
+      long defaultCopies = 0;
+      for (int i = 0; i < size; i++) {
+        double x = coordinates.getX(i) * scale;
+        double y = coordinates.getY(i) * scale;
+        double tileX = x - 256 * Math.floor(x / 256);
+        double tileY = y - 256 * Math.floor(y / 256);
+        copies += neighborCopies(tileX, tileY, buffer);
+        defaultCopies += neighborCopies(tileX, tileY, DEFAULT_BUFFER_PIXELS);
+      }
+      inputVertices[zoom].add(size);
+      inputCopies[zoom].add(copies);
+      inputDefaultCopies[zoom].add(defaultCopies);
+    }
+  }
+
+  /** Returns how many neighboring tiles a vertex at {@code x, y} pixels within its tile lies in the buffer of. */
+  private static int neighborCopies(double x, double y, double buffer) {
+    int columns = (x < buffer ? 1 : 0) + (x > 256 - buffer ? 1 : 0);
+    int rows = (y < buffer ? 1 : 0) + (y > 256 - buffer ? 1 : 0);
+    return columns + rows + columns * rows;
+  }
+
+  private static int zigzagDecode(int value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  void logStats(Logger logger) {
+    for (int zoom = 0; zoom < pixels.length; zoom++) {
+      long count = vertices[zoom].sum();
+      if (count == 0) {
+        continue;
+      }
+      long beyond = outside[zoom].sum();
+      logger.info("z{} buffer {} px (default {} px): {} of {} vertices outside the tile ({}%)", zoom,
+        String.format("%.2f", pixels[zoom]), DEFAULT_BUFFER_PIXELS, beyond, count, beyond * 100 / count);
+      long input = inputVertices[zoom].sum();
+      if (input > 0) {
+        long copies = inputCopies[zoom].sum();
+        long defaultCopies = inputDefaultCopies[zoom].sum();
+        logger.info("z{} input vertices copied into neighboring tiles: {} of {} with this buffer, " +
+          "{} with the default, {} {}", zoom, copies, input, defaultCopies, Math.abs(defaultCopies - copies),
+          copies <= defaultCopies ? "fewer" : "more");
+      }
+    }
+  }
+}
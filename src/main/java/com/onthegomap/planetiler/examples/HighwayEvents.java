@@ -0,0 +1,96 @@
+package com.onthegomap.planetiler.examples;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+
+/**
+ * Java Flight Recorder events of the profile, so that a recording ties build time to highway classes and zooms instead
+ * of only to Planetiler internals. The profile only creates them with {@code --jfr}, so a build without it does not
+ * allocate or time anything.
+ */
+final class HighwayEvents {
+
+  static final String PROCESS_FEATURE = "single_highway_layer.ProcessFeature";
+  static final String POST_PROCESS = "single_highway_layer.PostProcess";
+
+  private HighwayEvents() {}
+
+  /**
+   * Starts a recording with the JDK's {@code profile} settings and the profile events, which is written to
+   * {@code output} when closed.
+   */
+  static AutoCloseable record(Path output) throws IOException, ParseException {
+    Recording recording = new Recording(Configuration.getConfiguration("profile"));
+    recording.enable(PROCESS_FEATURE);
+    recording.enable(POST_PROCESS);
+    recording.setName("single-highway-layer");
+    recording.setDestination(output);
+    recording.start();
+    return () -> {
+      recording.stop();
+      recording.close();
+    };
+  }
+
+  @Name(PROCESS_FEATURE)
+  @Label("Process Highway")
+  @Category("Single Highway Layer")
+  @Description("processFeature for one matched highway way")
+  static class ProcessFeature extends Event {
+
+    @Label("Class")
+    String highwayClass;
+
+    @Label("Link")
+    boolean link;
+
+    @Label("Bridge")
+    boolean bridge;
+
+    @Label("Tunnel")
+    boolean tunnel;
+
+    void end(String highwayClass, boolean link, boolean bridge, boolean tunnel) {
+      if (shouldCommit()) {
+        this.highwayClass = highwayClass;
+        this.link = link;
+        this.bridge = bridge;
+        this.tunnel = tunnel;
+        commit();
+      }
+    }
+  }
+
+  @Name(POST_PROCESS)
+  @Label("Post-process Highway Layer")
+  @Category("Single Highway Layer")
+  @Description("postProcessLayerFeatures for the highway layer of one tile")
+  static class PostProcess extends Event {
+
+    @Label("Zoom")
+    int zoom;
+
+    @Label("Features In")
+    int featuresIn;
+
+    @Label("Features Out")
+    int featuresOut;
+
+    void end(int zoom, int featuresIn, int featuresOut) {
+      if (shouldCommit()) {
+        this.zoom = zoom;
+        this.featuresIn = featuresIn;
+        this.featuresOut = featuresOut;
+        commit();
+      }
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package com.onthegomap.planetiler.examples;
+
+import com.onthegomap.planetiler.config.Arguments;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads a recording made with {@code --jfr} and logs the slowest highway post-processing calls, the time per zoom and
+ * the highway classes that took the most time in {@code processFeature}.
+ */
+public class HighwayJfrReport {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HighwayJfrReport.class);
+
+  record PostProcess(int zoom, int featuresIn, int featuresOut, long nanos, String thread) {}
+
+  static class Totals {
+    long count;
+    long nanos;
+    long maxNanos;
+
+    void add(long eventNanos) {
+      count++;
+      nanos += eventNanos;
+      maxNanos = Math.max(maxNanos, eventNanos);
+    }
+  }
+
+  private final int top;
+  private final PriorityQueue<PostProcess> slowest =
+    new PriorityQueue<>(Comparator.comparingLong(PostProcess::nanos));
+  private final Map<Integer, Totals> zooms = new TreeMap<>();
+  private final Map<String, Totals> classes = new HashMap<>();
+  private final Totals bridges = new Totals();
+  private final Totals tunnels = new Totals();
+
+  HighwayJfrReport(int top) {
+    this.top = top;
+  }
+
+  void read(Path input) throws IOException {
+    try (RecordingFile file = new RecordingFile(input)) {
+      while (file.hasMoreEvents()) {
+        add(file.readEvent());
+      }
+    }
+  }
+
+  private void add(RecordedEvent event) {
+    String type = event.getEventType().getName();
+    long nanos = event.getDuration().toNanos();
+    if (HighwayEvents.POST_PROCESS.equals(type)) {
+      PostProcess postProcess = new PostProcess(event.getInt("zoom"), event.getInt("featuresIn"),
+        event.getInt("featuresOut"), nanos, event.getThread() == null ? "" : event.getThread().getJavaName());
+      zooms.computeIfAbsent(postProcess.zoom(), zoom -> new Totals()).add(nanos);
+      slowest.add(postProcess);
+      if (slowest.size() > top) {
+        slowest.poll();
+      }
+    } else if (HighwayEvents.PROCESS_FEATURE.equals(type)) {
+      classes.computeIfAbsent(event.getString("highwayClass"), highwayClass -> new Totals()).add(nanos);
+      if (event.getBoolean("bridge")) {
+        bridges.add(nanos);
+      }
+      if (event.getBoolean("tunnel")) {
+        tunnels.add(nanos);
+      }
+    }
+  }
+
+  void log() {
+    List<PostProcess> tiles = new ArrayList<>(slowest);
+    tiles.sort(Comparator.comparingLong(PostProcess::nanos).reversed());
+    LOGGER.info("Slowest {} highway layer post-processing calls:", tiles.size());
+    for (PostProcess tile : tiles) {
+      LOGGER.info("  z{} {} ms, {} -> {} features, thread {}", tile.zoom(), millis(tile.nanos()),
+        tile.featuresIn(), tile.featuresOut(), tile.thread());
+    }
+    LOGGER.info("Post-processing per zoom:");
+    zooms.forEach((zoom, totals) -> LOGGER.info("  z{} {} tiles, {} ms total, {} ms max", zoom, totals.count,
+      millis(totals.nanos), millis(totals.maxNanos)));
+
+    List<Map.Entry<String, Totals>> hottest = new ArrayList<>(classes.entrySet());
+    hottest.sort(Comparator.comparingLong((Map.Entry<String, Totals> entry) -> entry.getValue().nanos).reversed());
+    LOGGER.info("Hottest highway classes in processFeature:");
+    for (Map.Entry<String, Totals> entry : hottest.subList(0, Math.min(top, hottest.size()))) {
+      Totals totals = entry.getValue();
+      LOGGER.info("  {} {} ways, {} ms total, {} us mean", entry.getKey(), totals.count, millis(totals.nanos),
+        String.format("%.2f", totals.nanos / 1e3 / totals.count));
+    }
+    LOGGER.info("  bridges {} ways, {} ms total; tunnels {} ways, {} ms total", bridges.count, millis(bridges.nanos),
+      tunnels.count, millis(tunnels.nanos));
+  }
+
+  private static String millis(long nanos) {
+    return String.format("%.1f", nanos / 1e6);
+  }
+
+  public static void main(String[] args) throws Exception {
+    run(Arguments.fromArgsOrConfigFile(args));
+  }
+
+  static void run(Arguments args) throws Exception {
+    Path input = args.file("input", "recording written with --jfr", Path.of("data", "single-highway-layer.jfr"));
+    int top = args.getInteger("top", "number of tiles and classes to list", 20);
+    HighwayJfrReport report = new HighwayJfrReport(top);
+    report.read(input);
+    report.log();
+  }
+}
@@ -0,0 +1,151 @@
+package com.onthegomap.planetiler.examples;
+
+import com.onthegomap.planetiler.FeatureMerge;
+import com.onthegomap.planetiler.VectorTile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+
+/**
+ * Merges the highway lines of a tile with per-zoom parameters and keeps per-zoom counts and timings.
+ * {@link FeatureMerge#mergeLineStrings} already merges the features sharing the same attributes group by group, so
+ * tiles are only split into attribute buckets here to merge the buckets of oversized tiles in parallel.
+ */
+class HighwayLineMerger {
+
+  record MergeParameters(double minLength, double tolerance, double buffer) {}
+
+  static class ZoomStats {
+    final LongAdder tiles = new LongAdder();
+    final LongAdder featuresIn = new LongAdder();
+    final LongAdder featuresOut = new LongAdder();
+    final LongAdder nanos = new LongAdder();
+    final LongAdder parallelTiles = new LongAdder();
+  }
+
+  private final MergeParameters[] parameters;
+  private final int parallelThreshold;
+  private final ZoomStats[] zoomStats;
+
+  HighwayLineMerger(MergeParameters[] parameters, int parallelThreshold) {
+    this.parameters = parameters.clone();
+    this.parallelThreshold = parallelThreshold;
+    this.zoomStats = new ZoomStats[parameters.length];
+    for (int zoom = 0; zoom < zoomStats.length; zoom++) {
+      zoomStats[zoom] = new ZoomStats();
+    }
+  }
+
+  /** Returns a merger with the same parameters and fresh statistics. */
+  HighwayLineMerger withEmptyStats() {
+    return new HighwayLineMerger(parameters, parallelThreshold);
+  }
+
+  static MergeParameters[] defaultParameters(int maxZoom) {
+    MergeParameters[] result = new MergeParameters[maxZoom + 1];
+    for (int zoom = 0; zoom <= maxZoom; zoom++) {
+      result[zoom] = new MergeParameters(0.5, zoom < 13 ? 0.5 : 0.1, 4);
+    }
+    return result;
+  }
+
+  /**
+   * Applies overrides like {@code "12:0.5:0.5:4,13:0.5:0.1:4"} where each {@code zoom:minLength:tolerance:buffer}
+   * entry holds from its zoom up to the next entry.
+   */
+  static MergeParameters[] parseParameters(String spec, MergeParameters[] defaults) {
+    MergeParameters[] result = defaults.clone();
+    if (spec == null || spec.isBlank()) {
+      return result;
+    }
+    for (String entry : spec.split(",")) {
+      String[] parts = entry.trim().split(":");
+      if (parts.length != 4) {
+        throw new IllegalArgumentException("Expected zoom:minLength:tolerance:buffer but got " + entry);
+      }
+      int fromZoom = Integer.parseInt(parts[0].trim());
+      MergeParameters parameters = new MergeParameters(
+        Double.parseDouble(parts[1].trim()),
+        Double.parseDouble(parts[2].trim()),
+        Double.parseDouble(parts[3].trim())
+      );
+      Arrays.fill(result, Math.max(0, fromZoom), result.length, parameters);
+    }
+    return result;
+  }
+
+  MergeParameters parameters(int zoom) {
+    return parameters[Math.min(zoom, parameters.length - 1)];
+  }
+
+  List<VectorTile.Feature> merge(int zoom, List<VectorTile.Feature> items) {
+    long start = System.nanoTime();
+    MergeParameters params = parameters(zoom);
+
+    List<VectorTile.Feature> result = null;
+    if (items.size() >= parallelThreshold) {
+      Map<Map<String, Object>, List<VectorTile.Feature>> buckets = new LinkedHashMap<>();
+      for (VectorTile.Feature item : items) {
+        buckets.computeIfAbsent(item.attrs(), attrs -> new ArrayList<>()).add(item);
+      }
+      if (buckets.size() > 1) {
+        // the buckets in first-seen order, as mergeLineStrings groups them
+        List<List<VectorTile.Feature>> merged =
+          buckets.values().parallelStream().map(bucket -> mergeBucket(bucket, params)).toList();
+        result = new ArrayList<>(items.size());
+        for (List<VectorTile.Feature> bucket : merged) {
+          result.addAll(bucket);
+        }
+      }
+    }
+    boolean parallel = result != null;
+    if (!parallel) {
+      result = mergeBucket(items, params);
+    }
+
+    ZoomStats stats = zoomStats[Math.min(zoom, zoomStats.length - 1)];
+    stats.tiles.increment();
+    stats.featuresIn.add(items.size());
+    stats.featuresOut.add(result.size());
+    stats.nanos.add(System.nanoTime() - start);
+    if (parallel) {
+      stats.parallelTiles.increment();
+    }
+    return result;
+  }
+
+  /** Merges {@code items} again with other parameters, without recording statistics. */
+  List<VectorTile.Feature> remerge(List<VectorTile.Feature> items, MergeParameters params) {
+    return mergeBucket(items, params);
+  }
+
+  private static List<VectorTile.Feature> mergeBucket(List<VectorTile.Feature> bucket, MergeParameters params) {
+    return FeatureMerge.mergeLineStrings(bucket, params.minLength(), params.tolerance(), params.buffer());
+  }
+
+  ZoomStats stats(int zoom) {
+    return zoomStats[zoom];
+  }
+
+  int maxZoom() {
+    return zoomStats.length - 1;
+  }
+
+  void logStats(Logger logger) {
+    for (int zoom = 0; zoom < zoomStats.length; zoom++) {
+      ZoomStats stats = zoomStats[zoom];
+      long tiles = stats.tiles.sum();
+      if (tiles == 0) {
+        continue;
+      }
+      logger.info("z{} merge: {} tiles ({} parallel), {} -> {} features, {} ms", zoom, tiles,
+        stats.parallelTiles.sum(), stats.featuresIn.sum(), stats.featuresOut.sum(),
+        TimeUnit.NANOSECONDS.toMillis(stats.nanos.sum()));
+    }
+  }
+}
@@ -0,0 +1,190 @@
+package com.onthegomap.planetiler.examples;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Profile-level build telemetry in the Prometheus text format: matched highways per class, links, bridges, tunnels,
+ * malformed layers, features in and out of {@code postProcessLayerFeatures} per zoom and the merge latency. Counters
+ * are {@link LongAdder}s, which stripe concurrent increments over cells, so the worker threads do not contend.
+ */
+class HighwayMetrics {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HighwayMetrics.class);
+  private static final String PREFIX = "single_highway_layer_";
+
+  private final List<String> categories;
+  private final LongAdder[] features;
+  private final LongAdder bridges = new LongAdder();
+  private final LongAdder tunnels = new LongAdder();
+  private final LongAdder malformedLayers = new LongAdder();
+  private final LongAdder[] tiles;
+  private final LongAdder[] featuresIn;
+  private final LongAdder[] featuresOut;
+  private final LatencyHistogram[] mergeLatency;
+
+  HighwayMetrics(List<String> categories, int maxZoom) {
+    this.categories = List.copyOf(categories);
+    this.features = adders(categories.size() * 2);
+    this.tiles = adders(maxZoom + 1);
+    this.featuresIn = adders(maxZoom + 1);
+    this.featuresOut = adders(maxZoom + 1);
+    this.mergeLatency = new LatencyHistogram[maxZoom + 1];
+    for (int zoom = 0; zoom <= maxZoom; zoom++) {
+      mergeLatency[zoom] = new LatencyHistogram();
+    }
+  }
+
+  private static LongAdder[] adders(int count) {
+    LongAdder[] result = new LongAdder[count];
+    for (int i = 0; i < count; i++) {
+      result[i] = new LongAdder();
+    }
+    return result;
+  }
+
+  void matched(int categoryIndex, boolean isLink, boolean isBridge, boolean isTunnel) {
+    features[categoryIndex * 2 + (isLink ? 1 : 0)].increment();
+    if (isBridge) {
+      bridges.increment();
+    }
+    if (isTunnel) {
+      tunnels.increment();
+    }
+  }
+
+  void malformedLayer() {
+    malformedLayers.increment();
+  }
+
+  void postProcessed(int zoom, int in, int out, long mergeNanos) {
+    int index = Math.min(zoom, tiles.length - 1);
+    tiles[index].increment();
+    featuresIn[index].add(in);
+    featuresOut[index].add(out);
+    mergeLatency[index].record(mergeNanos);
+  }
+
+  String toPrometheus() {
+    StringBuilder out = new StringBuilder();
+    header(out, "features_total", "Highway ways matched by processFeature", "counter");
+    for (int categoryIndex = 0; categoryIndex < categories.size(); categoryIndex++) {
+      for (int link = 0; link < 2; link++) {
+        out.append(PREFIX).append("features_total{class=\"").append(categories.get(categoryIndex))
+          .append("\",link=\"").append(link == 1).append("\"} ").append(features[categoryIndex * 2 + link].sum())
+          .append('\n');
+      }
+    }
+    counter(out, "bridges_total", "Matched highways tagged as bridges", bridges.sum());
+    counter(out, "tunnels_total", "Matched highways tagged as tunnels or covered", tunnels.sum());
+    counter(out, "malformed_layers_total", "Matched highways with a layer tag that is not an integer",
+      malformedLayers.sum());
+    perZoom(out, "post_process_tiles_total", "Tiles passed through postProcessLayerFeatures", tiles);
+    perZoom(out, "post_process_features_in_total", "Features into postProcessLayerFeatures", featuresIn);
+    perZoom(out, "post_process_features_out_total", "Features out of postProcessLayerFeatures", featuresOut);
+    header(out, "merge_seconds", "Time merging the lines of one tile", "histogram");
+    for (int zoom = 0; zoom < mergeLatency.length; zoom++) {
+      if (mergeLatency[zoom].count() > 0) {
+        mergeLatency[zoom].writePrometheusSamples(out, PREFIX + "merge_seconds", "zoom=\"" + zoom + "\"");
+      }
+    }
+    return out.toString();
+  }
+
+  private static void header(StringBuilder out, String name, String help, String type) {
+    out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n')
+      .append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void counter(StringBuilder out, String name, String help, long value) {
+    header(out, name, help, "counter");
+    out.append(PREFIX).append(name).append(' ').append(value).append('\n');
+  }
+
+  private static void perZoom(StringBuilder out, String name, String help, LongAdder[] values) {
+    header(out, name, help, "counter");
+    for (int zoom = 0; zoom < values.length; zoom++) {
+      out.append(PREFIX).append(name).append("{zoom=\"").append(zoom).append("\"} ").append(values[zoom].sum())
+        .append('\n');
+    }
+  }
+
+  /**
+   * Serves {@code /metrics} on {@code port} of the loopback address when it is positive and pushes to
+   * {@code pushUrl}, a Prometheus push gateway job URL, every {@code pushSeconds} when it is not empty. Closing pushes
+   * a final time.
+   */
+  AutoCloseable publish(int port, String pushUrl, int pushSeconds) throws IOException {
+    HttpServer server = null;
+    if (port > 0) {
+      server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+      server.createContext("/metrics", exchange -> {
+        byte[] body = toPrometheus().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+          out.write(body);
+        }
+      });
+      server.start();
+      LOGGER.info("Serving build metrics on http://localhost:{}/metrics", port);
+    }
+    ScheduledExecutorService pusher = null;
+    HttpClient client = null;
+    if (!pushUrl.isBlank()) {
+      client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+      HttpClient pushClient = client;
+      pusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "metrics-push");
+        thread.setDaemon(true);
+        return thread;
+      });
+      pusher.scheduleAtFixedRate(() -> push(pushClient, pushUrl), pushSeconds, pushSeconds, TimeUnit.SECONDS);
+    }
+    HttpServer finalServer = server;
+    ScheduledExecutorService finalPusher = pusher;
+    HttpClient finalClient = client;
+    return () -> {
+      if (finalPusher != null) {
+        finalPusher.shutdownNow();
+        push(finalClient, pushUrl);
+      }
+      if (finalServer != null) {
+        finalServer.stop(0);
+      }
+    };
+  }
+
+  private void push(HttpClient client, String pushUrl) {
+    try {
+      HttpResponse<Void> response = client.send(HttpRequest.newBuilder(URI.create(pushUrl))
+        .timeout(Duration.ofSeconds(10))
+        .header("Content-Type", "text/plain; version=0.0.4")
+        .PUT(HttpRequest.BodyPublishers.ofString(toPrometheus()))
+        .build(), HttpResponse.BodyHandlers.discarding());
+      if (response.statusCode() >= 300) {
+        LOGGER.warn("Pushing metrics to {} failed with status {}", pushUrl, response.statusCode());
+      }
+    } catch (IOException e) {
+      LOGGER.warn("Pushing metrics to {} failed: {}", pushUrl, e.toString());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
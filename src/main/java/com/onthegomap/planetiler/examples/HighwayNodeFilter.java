@@ -0,0 +1,212 @@
+package com.onthegomap.planetiler.examples;
+
+import com.onthegomap.planetiler.config.Arguments;
+import com.onthegomap.planetiler.stats.Stats;
+import com.onthegomap.planetiler.util.Format;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pre-pass that shrinks an {@code .osm.pbf} file to what {@link SingleHighwayLayer} reads: the ways with a handled
+ * {@code highway} class and the nodes they reference. The first pass collects the referenced node ids into a
+ * {@link LongBitmap}, the second writes the matching nodes without tags and the matching ways with only the tags the
+ * profile looks at. Planetiler then only stores the locations of highway nodes.
+ */
+public class HighwayNodeFilter {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HighwayNodeFilter.class);
+
+  /** Tags kept on filtered ways. */
+  static final Set<String> KEPT_KEYS = Set.of("highway", "bridge", "tunnel", "covered", "layer");
+  /** Rough bytes Planetiler's node location storage needs per node. */
+  static final int NODE_LOCATION_BYTES = 8;
+  /** Planet node ids are below 2^34 for the foreseeable future. */
+  static final long MAX_NODE_ID = 1L << 34;
+  private static final byte[] HIGHWAY = "highway".getBytes(StandardCharsets.UTF_8);
+
+  record Result(long inputNodes, long keptNodes, long inputWays, long keptWays, long droppedRelations,
+    long inputBytes, long outputBytes, long bitmapBytes, long millis) {
+
+    void log(Logger logger) {
+      logger.info("Kept {} of {} nodes ({}%) and {} of {} ways, dropped {} relations in {} ms",
+        keptNodes, inputNodes, percent(keptNodes, inputNodes), keptWays, inputWays, droppedRelations, millis);
+      Format format = Format.defaultInstance();
+      logger.info("Node locations: ~{}B instead of ~{}B at {} bytes per node, node id bitmap {}B",
+        format.storage(keptNodes * NODE_LOCATION_BYTES), format.storage(inputNodes * NODE_LOCATION_BYTES),
+        NODE_LOCATION_BYTES, format.storage(bitmapBytes));
+      logger.info("Input {}B -> filtered {}B ({}%), so Planetiler's OSM passes read that much less",
+        format.storage(inputBytes), format.storage(outputBytes), percent(outputBytes, inputBytes));
+    }
+
+    private static long percent(long part, long whole) {
+      return whole == 0 ? 0 : part * 100 / whole;
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    run(Arguments.fromArgsOrConfigFile(args));
+  }
+
+  static void run(Arguments args) throws Exception {
+    Path input = args.inputFile("input", "osm.pbf file to filter", Path.of("data", "sources", "monaco.osm.pbf"));
+    Path output = args.file("output", "filtered osm.pbf file",
+      Path.of("data", "sources", "monaco.highways.osm.pbf"));
+    SingleHighwayLayer profile = new SingleHighwayLayer(SingleHighwayLayer.styles(args), args, Stats.inMemory());
+    filter(input, output, profile::isHighwayClass, args.threads()).log(LOGGER);
+  }
+
+  /** Returns the name of the filtered file that {@code input} is written to by a build with {@code --filter_nodes}. */
+  static Path filteredPath(Path input) {
+    String name = input.getFileName().toString();
+    String base = name.endsWith(".osm.pbf") ? name.substring(0, name.length() - ".osm.pbf".length()) : name;
+    return input.resolveSibling(base + ".highways.osm.pbf");
+  }
+
+  static Result filter(Path input, Path output, Predicate<String> isHighway, int threads) throws Exception {
+    long start = System.nanoTime();
+    LongBitmap nodes = new LongBitmap(MAX_NODE_ID);
+    LongAdder inputNodes = new LongAdder();
+    LongAdder inputWays = new LongAdder();
+    LongAdder keptNodes = new LongAdder();
+    LongAdder keptWays = new LongAdder();
+    LongAdder relations = new LongAdder();
+
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+    try {
+      forEachBlock(input, executor, threads, block -> {
+        if (!OsmPbf.DATA.equals(block.type())) {
+          return null;
+        }
+        OsmPbf.Block decoded = OsmPbf.decode(block.data(), false);
+        for (OsmPbf.Way way : decoded.ways) {
+          if (isHighway(decoded, way, isHighway)) {
+            for (long ref : way.refs()) {
+              nodes.set(ref);
+            }
+          }
+        }
+        return null;
+      }, result -> {});
+      LOGGER.info("Collected highway node ids in {} ms", (System.nanoTime() - start) / 1_000_000);
+
+      Path tmp = output.resolveSibling(output.getFileName() + ".tmp");
+      try (OsmPbf.Writer writer = new OsmPbf.Writer(tmp)) {
+        forEachBlock(input, executor, threads, block -> {
+          if (OsmPbf.HEADER.equals(block.type())) {
+            return block;
+          }
+          if (!OsmPbf.DATA.equals(block.type())) {
+            return null;
+          }
+          OsmPbf.Block decoded = OsmPbf.decode(block.data(), true);
+          OsmPbf.Block filtered = new OsmPbf.Block();
+          filtered.strings = decoded.strings;
+          filtered.granularity = decoded.granularity;
+          filtered.latOffset = decoded.latOffset;
+          filtered.lonOffset = decoded.lonOffset;
+          for (int i = 0; i < decoded.nodeCount; i++) {
+            if (nodes.contains(decoded.nodeIds[i])) {
+              filtered.addNode(decoded.nodeIds[i], decoded.nodeLats[i], decoded.nodeLons[i]);
+            }
+          }
+          for (OsmPbf.Way way : decoded.ways) {
+            if (isHighway(decoded, way, isHighway)) {
+              filtered.ways.add(keptTags(decoded, way));
+            }
+          }
+          inputNodes.add(decoded.nodeCount);
+          inputWays.add(decoded.ways.size());
+          relations.add(decoded.relationCount);
+          keptNodes.add(filtered.nodeCount);
+          keptWays.add(filtered.ways.size());
+          return filtered.nodeCount == 0 && filtered.ways.isEmpty() ? null :
+            new OsmPbf.FileBlock(OsmPbf.DATA, OsmPbf.compress(OsmPbf.encode(filtered)));
+        }, block -> {
+          if (block != null) {
+            writer.writeBlob(block.type(), block.blob());
+          }
+        });
+      }
+      Files.move(tmp, output, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      executor.shutdown();
+    }
+    return new Result(inputNodes.sum(), keptNodes.sum(), inputWays.sum(), keptWays.sum(), relations.sum(),
+      Files.size(input), Files.size(output), nodes.bytes(), (System.nanoTime() - start) / 1_000_000);
+  }
+
+  private static boolean isHighway(OsmPbf.Block block, OsmPbf.Way way, Predicate<String> isHighway) {
+    if (way.refs().length < 2) {
+      return false;
+    }
+    for (int i = 0; i < way.keys().length; i++) {
+      if (Arrays.equals(block.strings[way.keys()[i]], HIGHWAY)) {
+        return isHighway.test(block.string(way.values()[i]));
+      }
+    }
+    return false;
+  }
+
+  private static OsmPbf.Way keptTags(OsmPbf.Block block, OsmPbf.Way way) {
+    int count = 0;
+    int[] keys = new int[way.keys().length];
+    int[] values = new int[way.keys().length];
+    for (int i = 0; i < way.keys().length; i++) {
+      if (KEPT_KEYS.contains(block.string(way.keys()[i]))) {
+        keys[count] = way.keys()[i];
+        values[count] = way.values()[i];
+        count++;
+      }
+    }
+    return new OsmPbf.Way(way.id(), Arrays.copyOf(keys, count), Arrays.copyOf(values, count),
+      way.refs());
+  }
+
+  interface BlockFunction<T> {
+    T apply(OsmPbf.FileBlock block) throws Exception;
+  }
+
+  interface BlockConsumer<T> {
+    void accept(T result) throws Exception;
+  }
+
+  /**
+   * Reads the file blocks of {@code input} on the calling thread, maps them on {@code executor} and hands the results
+   * to {@code consumer} in file order, with at most a few blocks per thread in flight.
+   */
+  static <T> void forEachBlock(Path input, ExecutorService executor, int threads, BlockFunction<T> function,
+    BlockConsumer<T> consumer) throws Exception {
+    int maxInFlight = Math.max(2, threads * 4);
+    Deque<Future<T>> inFlight = new ArrayDeque<>();
+    try (OsmPbf.Reader reader = new OsmPbf.Reader(input)) {
+      OsmPbf.FileBlock block;
+      while ((block = reader.next()) != null) {
+        OsmPbf.FileBlock next = block;
+        inFlight.add(executor.submit(() -> function.apply(next)));
+        if (inFlight.size() >= maxInFlight) {
+          consumer.accept(inFlight.remove().get());
+        }
+      }
+      while (!inFlight.isEmpty()) {
+        consumer.accept(inFlight.remove().get());
+      }
+    } finally {
+      for (Future<T> future : inFlight) {
+        future.cancel(true);
+      }
+    }
+  }
+}
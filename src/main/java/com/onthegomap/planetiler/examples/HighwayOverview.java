@@ -0,0 +1,546 @@
+package com.onthegomap.planetiler.examples;
+
+import com.onthegomap.planetiler.VectorTile;
+import com.onthegomap.planetiler.geo.GeoUtils;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+import org.slf4j.Logger;
+
+/**
+ * Generalizes the major highway classes into one road network per overview zoom instead of feeding every way to the
+ * tile merge. Lines are densified and snapped to a pixel grid, which makes both carriageways of a dual carriageway
+ * fall onto the same grid edges. The resulting graph loses short spurs and is stitched into continuous chains between
+ * junctions, then simplified. Tiles at overview zooms are also capped in feature count and estimated size.
+ */
+class HighwayOverview {
+
+  /** A line in world coordinates, stored as {@code x0, y0, x1, y1, ...} floats to keep planet inputs small. */
+  record Line(int categoryIndex, float[] xy) {
+
+    LineString worldGeometry() {
+      Coordinate[] coordinates = new Coordinate[xy.length / 2];
+      for (int i = 0; i < coordinates.length; i++) {
+        coordinates[i] = new Coordinate(xy[2 * i], xy[2 * i + 1]);
+      }
+      return GeoUtils.JTS_FACTORY.createLineString(coordinates);
+    }
+  }
+
+  record Limits(int maxFeatures, int maxBytes) {}
+
+  /**
+   * An undirected edge between two grid cells, with {@code a <= b}. Neighboring cells differ in few bits, so the
+   * record hash would put many edges into one bucket; it is comparable so that such buckets, and with them the
+   * iteration order of the generalized network, are the same in every run.
+   */
+  private record Edge(long a, long b) implements Comparable<Edge> {
+
+    static Edge of(long a, long b) {
+      return a <= b ? new Edge(a, b) : new Edge(b, a);
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(a * 0x9E3779B97F4A7C15L + b);
+    }
+
+    @Override
+    public int compareTo(Edge other) {
+      int result = Long.compare(a, other.a);
+      return result != 0 ? result : Long.compare(b, other.b);
+    }
+  }
+
+  record Parameters(double snapPixels, double minSpurPixels, double tolerancePixels) {}
+
+  static class ZoomStats {
+    final LongAdder linesIn = new LongAdder();
+    final LongAdder edges = new LongAdder();
+    final LongAdder prunedEdges = new LongAdder();
+    final LongAdder chains = new LongAdder();
+    final LongAdder nanos = new LongAdder();
+    final LongAdder cappedTiles = new LongAdder();
+    final LongAdder cappedFeatures = new LongAdder();
+  }
+
+  private static final double TILE_PIXELS = 256;
+  /** Heap of a collected line besides its coordinates: the record, the array header and the queue node. */
+  private static final long LINE_OVERHEAD_BYTES = 64;
+  /**
+   * Approximate heap of one grid edge while a zoom is generalized: the boxed edge and its map entry, plus the boxed
+   * cells and adjacency sets of the graph.
+   */
+  private static final long EDGE_BYTES = 250;
+
+  private final int maxZoom;
+  private final int[] categoryMinZooms;
+  private final Parameters parameters;
+  private final Limits[] limits;
+  private final ZoomStats[] zoomStats;
+
+  HighwayOverview(int maxZoom, int[] categoryMinZooms, Parameters parameters, Limits[] limits) {
+    this.maxZoom = maxZoom;
+    this.categoryMinZooms = categoryMinZooms.clone();
+    this.parameters = parameters;
+    this.limits = limits.clone();
+    this.zoomStats = new ZoomStats[maxZoom + 1];
+    for (int zoom = 0; zoom <= maxZoom; zoom++) {
+      zoomStats[zoom] = new ZoomStats();
+    }
+  }
+
+  /** Returns an overview with the same settings and fresh statistics. */
+  HighwayOverview withEmptyStats() {
+    return new HighwayOverview(maxZoom, categoryMinZooms, parameters, limits);
+  }
+
+  static Limits[] defaultLimits(int maxZoom) {
+    Limits[] result = new Limits[maxZoom + 1];
+    Arrays.fill(result, new Limits(5_000, 200_000));
+    return result;
+  }
+
+  /**
+   * Applies overrides like {@code "6:2000:100000,7:4000:200000"} where each {@code zoom:maxFeatures:maxBytes} entry
+   * holds from its zoom up to the next entry.
+   */
+  static Limits[] parseLimits(String spec, Limits[] defaults) {
+    Limits[] result = defaults.clone();
+    if (spec == null || spec.isBlank()) {
+      return result;
+    }
+    for (String entry : spec.split(",")) {
+      String[] parts = entry.trim().split(":");
+      if (parts.length != 3) {
+        throw new IllegalArgumentException("Expected zoom:maxFeatures:maxBytes but got " + entry);
+      }
+      int fromZoom = Integer.parseInt(parts[0].trim());
+      if (fromZoom < result.length) {
+        Arrays.fill(result, Math.max(0, fromZoom), result.length,
+          new Limits(Integer.parseInt(parts[1].trim()), Integer.parseInt(parts[2].trim())));
+      }
+    }
+    return result;
+  }
+
+  int maxZoom() {
+    return maxZoom;
+  }
+
+  /** Returns the lowest zoom at which any category of the overview is drawn. */
+  int minZoom() {
+    int result = maxZoom;
+    for (int minZoom : categoryMinZooms) {
+      if (minZoom >= 0) {
+        result = Math.min(result, minZoom);
+      }
+    }
+    return result;
+  }
+
+  /** Returns whether highways of {@code categoryIndex} are drawn from the overview network up to {@link #maxZoom}. */
+  boolean covers(int categoryIndex) {
+    return categoryIndex < categoryMinZooms.length && categoryMinZooms[categoryIndex] >= 0 &&
+      categoryMinZooms[categoryIndex] <= maxZoom;
+  }
+
+  /** Thread-safe collection of the overview lines seen while processing a source. */
+  class Collector {
+    private final Queue<Line> lines = new ConcurrentLinkedQueue<>();
+    private final LongAdder lineCount = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    /** Adds a world coordinate line, already simplified at half a pixel of the highest overview zoom. */
+    void add(int categoryIndex, LineString worldLine) {
+      int count = worldLine.getNumPoints();
+      double[] xy = new double[count * 2];
+      for (int i = 0; i < count; i++) {
+        Coordinate coordinate = worldLine.getCoordinateN(i);
+        xy[2 * i] = coordinate.x;
+        xy[2 * i + 1] = coordinate.y;
+      }
+      float[] simplified = toFloats(simplify(xy, 0.5 / pixels(maxZoom)));
+      lines.add(new Line(categoryIndex, simplified));
+      lineCount.increment();
+      bytes.add(LINE_OVERHEAD_BYTES + 4L * simplified.length);
+    }
+
+    /**
+     * Returns the collected lines in a fixed order, since the order they were processed in depends on thread timing
+     * and would change how chains are stitched and merged.
+     */
+    List<Line> lines() {
+      List<Line> result = new ArrayList<>(lines);
+      result.sort(Comparator.comparingInt(Line::categoryIndex).thenComparing(Line::xy, Arrays::compare));
+      return result;
+    }
+
+    /**
+     * Logs the heap held by the collected lines and the estimated peak of generalizing them, which happens on one
+     * thread after the source has been processed, and warns when that peak gets close to the maximum heap.
+     */
+    void logMemory(Logger logger) {
+      long collected = bytes.sum();
+      long graph = EDGE_BYTES * estimateEdges();
+      long maxHeap = Runtime.getRuntime().maxMemory();
+      logger.info("Overview holds {} lines in ~{} MB, generalizing them needs ~{} MB more", lineCount.sum(),
+        collected >> 20, graph >> 20);
+      if (collected + graph > maxHeap / 4) {
+        logger.warn("The overview needs ~{} MB of the {} MB maximum heap, disable it with --overview_max_zoom=-1 or " +
+          "raise -Xmx if the build runs out of memory", (collected + graph) >> 20, maxHeap >> 20);
+      }
+    }
+
+    /** Upper bound of the grid edges at {@link #maxZoom}: every line segment spans at most its length in cells. */
+    private long estimateEdges() {
+      double cells = pixels(maxZoom) / parameters.snapPixels();
+      long result = 0;
+      for (Line line : lines) {
+        float[] xy = line.xy();
+        for (int i = 2; i + 1 < xy.length; i += 2) {
+          result += 1 + (long) (Math.hypot(xy[i] - xy[i - 2], xy[i + 1] - xy[i - 1]) * cells);
+        }
+      }
+      return result;
+    }
+  }
+
+  Collector collector() {
+    return new Collector();
+  }
+
+  /** Returns the generalized network of {@code lines} at {@code zoom}, leaving out categories not drawn yet. */
+  List<Line> generalize(int zoom, Collection<Line> lines) {
+    long start = System.nanoTime();
+    ZoomStats stats = zoomStats[zoom];
+    double pixel = 1 / pixels(zoom);
+    double grid = parameters.snapPixels() * pixel;
+
+    // category indexes grow with importance, so an edge shared by two classes is drawn as the more important one
+    Map<Edge, Integer> edgeCategories = new HashMap<>();
+    for (Line line : lines) {
+      int minZoom = categoryMinZooms[line.categoryIndex()];
+      if (minZoom < 0 || minZoom > zoom) {
+        continue;
+      }
+      stats.linesIn.increment();
+      long previous = Long.MIN_VALUE;
+      float[] xy = line.xy();
+      for (int i = 0; i < xy.length / 2; i++) {
+        double x = xy[2 * i];
+        double y = xy[2 * i + 1];
+        int steps = 1;
+        double dx = 0;
+        double dy = 0;
+        if (i > 0) {
+          dx = x - xy[2 * i - 2];
+          dy = y - xy[2 * i - 1];
+          steps = Math.max(1, (int) Math.ceil(Math.hypot(dx, dy) / grid));
+        }
+        for (int step = 1; step <= steps; step++) {
+          double fraction = (double) step / steps;
+          long cell = cell(x - dx * (1 - fraction), y - dy * (1 - fraction), grid);
+          if (previous != Long.MIN_VALUE && cell != previous) {
+            edgeCategories.merge(Edge.of(previous, cell), line.categoryIndex(), Math::max);
+          }
+          previous = cell;
+        }
+      }
+    }
+
+    Map<Long, Set<Long>> graph = new HashMap<>();
+    for (Edge edge : edgeCategories.keySet()) {
+      graph.computeIfAbsent(edge.a(), node -> new HashSet<>(4)).add(edge.b());
+      graph.computeIfAbsent(edge.b(), node -> new HashSet<>(4)).add(edge.a());
+    }
+    stats.edges.add(edgeCategories.size());
+    stats.prunedEdges.add(pruneSpurs(graph, edgeCategories, parameters.minSpurPixels() / parameters.snapPixels()));
+
+    List<Line> result = new ArrayList<>();
+    Set<Edge> visited = new HashSet<>();
+    for (var entry : graph.entrySet()) {
+      if (entry.getValue().size() != 2) {
+        for (long next : entry.getValue()) {
+          walk(entry.getKey(), next, graph, edgeCategories, visited, grid, pixel, result);
+        }
+      }
+    }
+    for (Edge edge : edgeCategories.keySet()) {
+      if (!visited.contains(edge)) {
+        walk(edge.a(), edge.b(), graph, edgeCategories, visited, grid, pixel, result);
+      }
+    }
+    stats.chains.add(result.size());
+    stats.nanos.add(System.nanoTime() - start);
+    return result;
+  }
+
+  /**
+   * Removes chains that hang off a junction or stand alone and are shorter than {@code minCells} grid cells, and
+   * returns the number of removed edges.
+   */
+  private static long pruneSpurs(Map<Long, Set<Long>> graph, Map<Edge, Integer> edgeCategories, double minCells) {
+    long removed = 0;
+    Deque<Long> ends = new ArrayDeque<>();
+    for (var entry : graph.entrySet()) {
+      if (entry.getValue().size() == 1) {
+        ends.add(entry.getKey());
+      }
+    }
+    while (!ends.isEmpty()) {
+      long end = ends.poll();
+      Set<Long> neighbors = graph.get(end);
+      if (neighbors == null || neighbors.size() != 1) {
+        continue;
+      }
+      List<Long> chain = new ArrayList<>();
+      chain.add(end);
+      long previous = end;
+      long current = neighbors.iterator().next();
+      while (graph.get(current).size() == 2 && current != end) {
+        chain.add(current);
+        long next = otherNeighbor(graph.get(current), previous);
+        previous = current;
+        current = next;
+      }
+      chain.add(current);
+      if (chain.size() - 1 >= minCells) {
+        continue;
+      }
+      for (int i = 0; i + 1 < chain.size(); i++) {
+        long a = chain.get(i);
+        long b = chain.get(i + 1);
+        graph.get(a).remove(b);
+        graph.get(b).remove(a);
+        edgeCategories.remove(Edge.of(a, b));
+        removed++;
+      }
+      for (long node : chain) {
+        Set<Long> remaining = graph.get(node);
+        if (remaining != null && remaining.isEmpty()) {
+          graph.remove(node);
+        }
+      }
+      Set<Long> junction = graph.get(current);
+      if (junction != null && junction.size() == 1) {
+        ends.add(current);
+      }
+    }
+    return removed;
+  }
+
+  /** Follows unvisited edges from {@code from} through {@code next} while nodes only join two edges of one class. */
+  private void walk(long from, long next, Map<Long, Set<Long>> graph, Map<Edge, Integer> edgeCategories,
+    Set<Edge> visited, double grid, double pixel, List<Line> result) {
+    Edge firstEdge = Edge.of(from, next);
+    if (!visited.add(firstEdge)) {
+      return;
+    }
+    int categoryIndex = edgeCategories.get(firstEdge);
+    List<Long> nodes = new ArrayList<>();
+    nodes.add(from);
+    long previous = from;
+    long current = next;
+    while (true) {
+      nodes.add(current);
+      Set<Long> neighbors = graph.get(current);
+      if (neighbors.size() != 2 || current == from) {
+        break;
+      }
+      long following = otherNeighbor(neighbors, previous);
+      Edge edge = Edge.of(current, following);
+      if (edgeCategories.get(edge) != categoryIndex || !visited.add(edge)) {
+        break;
+      }
+      previous = current;
+      current = following;
+    }
+    double[] xy = new double[nodes.size() * 2];
+    for (int i = 0; i < nodes.size(); i++) {
+      long cell = nodes.get(i);
+      xy[2 * i] = ((int) (cell >> 32) + 0.5) * grid;
+      xy[2 * i + 1] = ((int) cell + 0.5) * grid;
+    }
+    result.add(new Line(categoryIndex, toFloats(simplify(xy, parameters.tolerancePixels() * pixel))));
+  }
+
+  /**
+   * Drops the shortest features of a tile at an overview zoom until it has at most the zoom's feature count and
+   * estimated encoded size.
+   */
+  List<VectorTile.Feature> limit(int zoom, List<VectorTile.Feature> features) {
+    if (zoom > maxZoom) {
+      return features;
+    }
+    Limits zoomLimits = limits[zoom];
+    long bytes = 0;
+    for (VectorTile.Feature feature : features) {
+      bytes += estimateBytes(feature);
+    }
+    if (features.size() <= zoomLimits.maxFeatures() && bytes <= zoomLimits.maxBytes()) {
+      return features;
+    }
+    List<VectorTile.Feature> byLength = new ArrayList<>(features);
+    byLength.sort(Comparator.comparingLong(HighwayOverview::length));
+    Set<VectorTile.Feature> dropped = Collections.newSetFromMap(new IdentityHashMap<>());
+    int count = features.size();
+    for (VectorTile.Feature feature : byLength) {
+      if (count <= zoomLimits.maxFeatures() && bytes <= zoomLimits.maxBytes()) {
+        break;
+      }
+      dropped.add(feature);
+      count--;
+      bytes -= estimateBytes(feature);
+    }
+    List<VectorTile.Feature> result = new ArrayList<>(count);
+    for (VectorTile.Feature feature : features) {
+      if (!dropped.contains(feature)) {
+        result.add(feature);
+      }
+    }
+    zoomStats[zoom].cappedTiles.increment();
+    zoomStats[zoom].cappedFeatures.add(dropped.size());
+    return result;
+  }
+
+  /** Rough encoded size of a feature: mostly one or two byte varints per geometry command plus its tags. */
+  static long estimateBytes(VectorTile.Feature feature) {
+    return 2L * feature.geometry().commands().length + 2L * feature.attrs().size() + 4;
+  }
+
+  /** Sum of the absolute tile coordinate steps of a line's geometry commands. */
+  static long length(VectorTile.Feature feature) {
+    int[] commands = feature.geometry().commands();
+    long result = 0;
+    int i = 0;
+    while (i < commands.length) {
+      int command = commands[i] & 7;
+      int count = commands[i] >>> 3;
+      i++;
+      if (command == 7) {
+        continue;
+      }
+      for (int n = 0; n < count && i + 1 < commands.length; n++) {
+        if (command == 2) {
+          result += Math.abs(zigzagDecode(commands[i])) + Math.abs(zigzagDecode(commands[i + 1]));
+        }
+        i += 2;
+      }
+    }
+    return result;
+  }
+
+  private static int zigzagDecode(int value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  void logStats(Logger logger) {
+    for (int zoom = 0; zoom <= maxZoom; zoom++) {
+      ZoomStats stats = zoomStats[zoom];
+      if (stats.linesIn.sum() == 0 && stats.cappedTiles.sum() == 0) {
+        continue;
+      }
+      logger.info("z{} overview: {} lines -> {} grid edges (~{} MB, {} pruned) -> {} chains in {} ms, {} tiles " +
+          "capped by dropping {} features", zoom, stats.linesIn.sum(), stats.edges.sum(),
+        (stats.edges.sum() * EDGE_BYTES) >> 20, stats.prunedEdges.sum(), stats.chains.sum(),
+        TimeUnit.NANOSECONDS.toMillis(stats.nanos.sum()), stats.cappedTiles.sum(), stats.cappedFeatures.sum());
+    }
+  }
+
+  private static double pixels(int zoom) {
+    return TILE_PIXELS * (1L << zoom);
+  }
+
+  private static long cell(double x, double y, double grid) {
+    return ((long) (int) Math.floor(x / grid) << 32) | ((int) Math.floor(y / grid) & 0xFFFFFFFFL);
+  }
+
+  private static long otherNeighbor(Set<Long> neighbors, long previous) {
+    for (long neighbor : neighbors) {
+      if (neighbor != previous) {
+        return neighbor;
+      }
+    }
+    return previous;
+  }
+
+  private static float[] toFloats(double[] xy) {
+    float[] result = new float[xy.length];
+    for (int i = 0; i < xy.length; i++) {
+      result[i] = (float) xy[i];
+    }
+    return result;
+  }
+
+  /** Douglas-Peucker simplification of interleaved {@code x, y} coordinates. */
+  static double[] simplify(double[] xy, double tolerance) {
+    int count = xy.length / 2;
+    if (count <= 2) {
+      return xy;
+    }
+    boolean[] keep = new boolean[count];
+    keep[0] = true;
+    keep[count - 1] = true;
+    Deque<int[]> ranges = new ArrayDeque<>();
+    ranges.push(new int[]{0, count - 1});
+    double toleranceSquared = tolerance * tolerance;
+    while (!ranges.isEmpty()) {
+      int[] range = ranges.pop();
+      int farthest = -1;
+      double farthestDistance = toleranceSquared;
+      for (int i = range[0] + 1; i < range[1]; i++) {
+        double distance = segmentDistanceSquared(xy, i, range[0], range[1]);
+        if (distance > farthestDistance) {
+          farthest = i;
+          farthestDistance = distance;
+        }
+      }
+      if (farthest >= 0) {
+        keep[farthest] = true;
+        ranges.push(new int[]{range[0], farthest});
+        ranges.push(new int[]{farthest, range[1]});
+      }
+    }
+    int kept = 0;
+    double[] result = new double[xy.length];
+    for (int i = 0; i < count; i++) {
+      if (keep[i]) {
+        result[2 * kept] = xy[2 * i];
+        result[2 * kept + 1] = xy[2 * i + 1];
+        kept++;
+      }
+    }
+    return Arrays.copyOf(result, kept * 2);
+  }
+
+  private static double segmentDistanceSquared(double[] xy, int point, int start, int end) {
+    double px = xy[2 * point];
+    double py = xy[2 * point + 1];
+    double ax = xy[2 * start];
+    double ay = xy[2 * start + 1];
+    double dx = xy[2 * end] - ax;
+    double dy = xy[2 * end + 1] - ay;
+    double lengthSquared = dx * dx + dy * dy;
+    double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lengthSquared));
+    double ex = ax + t * dx - px;
+    double ey = ay + t * dy - py;
+    return ex * ex + ey * ey;
+  }
+}
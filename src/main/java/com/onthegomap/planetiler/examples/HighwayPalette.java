@@ -0,0 +1,271 @@
+package com.onthegomap.planetiler.examples;
+
+import com.onthegomap.planetiler.util.ZoomFunction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import org.slf4j.Logger;
+
+/**
+ * Assigns a small integer id to every distinct combination of line color, width and sort key the profile can
+ * produce, so tiles only need to carry a {@value #STYLE_ID} attribute per feature.
+ */
+class HighwayPalette {
+
+  static final String STYLE_ID = "style-id";
+  static final int MAX_CACHED_STYLE_IDS = 4096;
+
+  record Entry(String lineColor, Number lineWidth, Number lineWidthZ20, Number lineSortKey, String casingColor) {}
+
+  private final Map<Entry, Integer> ids = new ConcurrentHashMap<>();
+  private final List<Entry> entries = new ArrayList<>();
+  private final List<BitSet> idsByZoom = new ArrayList<>();
+  private final Map<ZoomFunction<Number>, StyleId> styleIds = new ConcurrentHashMap<>();
+
+  static class StyleId implements ZoomFunction<Number> {
+    private final Integer[] ids;
+
+    StyleId(Integer[] ids) {
+      this.ids = ids;
+    }
+
+    @Override
+    public Number apply(int value) {
+      return value < ids.length ? ids[value] : null;
+    }
+  }
+
+  StyleId cached(ZoomFunction<Number> lineSortKey) {
+    return styleIds.get(lineSortKey);
+  }
+
+  StyleId register(ZoomFunction<Number> lineSortKey, ZoomFunction<String> lineColor, ZoomFunction<Number> lineWidth,
+    Number lineWidthZ20, ZoomFunction<String> casingColor, int minZoom, int maxZoom) {
+    Integer[] zoomIds = new Integer[maxZoom + 1];
+    for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+      zoomIds[zoom] = id(new Entry(
+        lineColor.apply(zoom),
+        lineWidth.apply(zoom),
+        lineWidthZ20,
+        lineSortKey.apply(zoom),
+        casingColor == null ? null : casingColor.apply(zoom)
+      ), zoom);
+    }
+    StyleId result = new StyleId(zoomIds);
+    if (styleIds.size() < MAX_CACHED_STYLE_IDS) {
+      StyleId existing = styleIds.putIfAbsent(lineSortKey, result);
+      if (existing != null) {
+        result = existing;
+      }
+    }
+    return result;
+  }
+
+  private int id(Entry entry, int zoom) {
+    Integer id = ids.get(entry);
+    if (id == null) {
+      synchronized (this) {
+        id = ids.get(entry);
+        if (id == null) {
+          id = entries.size();
+          entries.add(entry);
+          ids.put(entry, id);
+        }
+      }
+    }
+    synchronized (idsByZoom) {
+      while (idsByZoom.size() <= zoom) {
+        idsByZoom.add(new BitSet());
+      }
+      idsByZoom.get(zoom).set(id);
+    }
+    return id;
+  }
+
+  /** Returns the line sort key of a style id, or {@code null} for unknown ids. */
+  synchronized Number lineSortKey(int id) {
+    return id >= 0 && id < entries.size() ? entries.get(id).lineSortKey() : null;
+  }
+
+  synchronized List<Entry> entries() {
+    return List.copyOf(entries);
+  }
+
+  private boolean hasCasingColor() {
+    return entries().stream().anyMatch(entry -> entry.casingColor() != null);
+  }
+
+  String toMetadataJson() {
+    StringBuilder json = new StringBuilder("{\"attribute\":").append(Json.string(STYLE_ID)).append(",\"entries\":[");
+    List<Entry> all = entries();
+    for (int id = 0; id < all.size(); id++) {
+      Entry entry = all.get(id);
+      if (id > 0) {
+        json.append(',');
+      }
+      json.append("{\"id\":").append(id)
+        .append(",\"line-color\":").append(Json.string(entry.lineColor()))
+        .append(",\"line-width\":").append(entry.lineWidth())
+        .append(",\"line-width-z20\":").append(entry.lineWidthZ20())
+        .append(",\"line-sort-key\":").append(entry.lineSortKey());
+      if (entry.casingColor() != null) {
+        json.append(",\"casing-color\":").append(Json.string(entry.casingColor()));
+      }
+      json.append('}');
+    }
+    return json.append("]}").toString();
+  }
+
+  String toStyleJson(String tilesUrl) {
+    boolean singleFeature = hasCasingColor();
+    StringBuilder style = new StringBuilder();
+    style.append("{\n");
+    style.append("    \"version\": 8,\n");
+    style.append("    \"name\": \"single highway layer (style palette)\",\n");
+    style.append("    \"sources\": {\n");
+    style.append("      \"single-highway-layer\":{\n");
+    style.append("        \"type\": \"vector\",\n");
+    style.append("        \"tiles\": [").append(Json.string(tilesUrl)).append("],\n");
+    style.append("        \"maxzoom\": 14\n");
+    style.append("      }\n");
+    style.append("    },\n");
+    style.append("    \"layers\": [\n");
+    if (singleFeature) {
+      appendLayer(style, "highway-casing", Entry::casingColor, 2);
+      style.append(",\n");
+    }
+    appendLayer(style, "highway", Entry::lineColor, 0);
+    style.append("\n    ],\n");
+    style.append("    \"id\": \"single-highway-layer-palette\"\n");
+    style.append("  }\n");
+    return style.toString();
+  }
+
+  private void appendLayer(StringBuilder style, String id, Function<Entry, Object> color, double extraWidth) {
+    style.append("      {\n");
+    style.append("        \"id\": ").append(Json.string(id)).append(",\n");
+    style.append("        \"type\": \"line\",\n");
+    style.append("        \"source\": \"single-highway-layer\",\n");
+    style.append("        \"source-layer\": \"highway\",\n");
+    style.append("        \"layout\": {\n");
+    style.append("          \"line-join\": \"round\",\n");
+    style.append("          \"line-sort-key\": ").append(match(Entry::lineSortKey, 0)).append('\n');
+    style.append("        },\n");
+    style.append("        \"paint\": {\n");
+    style.append("          \"line-color\": ").append(match(color, 0)).append(",\n");
+    style.append("          \"line-width\": [\n");
+    style.append("            \"interpolate\",\n");
+    style.append("            [\"linear\"],\n");
+    style.append("            [\"zoom\"],\n");
+    style.append("            14,\n");
+    style.append("            ").append(match(Entry::lineWidth, extraWidth)).append(",\n");
+    style.append("            20,\n");
+    style.append("            ").append(match(Entry::lineWidthZ20, extraWidth)).append('\n');
+    style.append("          ]\n");
+    style.append("        }\n");
+    style.append("      }");
+  }
+
+  private String match(Function<Entry, Object> property, double extraWidth) {
+    Map<Object, List<Integer>> idsByValue = new LinkedHashMap<>();
+    List<Entry> all = entries();
+    for (int id = 0; id < all.size(); id++) {
+      Object value = property.apply(all.get(id));
+      if (value instanceof Number number && extraWidth != 0) {
+        value = number.doubleValue() + extraWidth;
+      }
+      idsByValue.computeIfAbsent(value, v -> new ArrayList<>()).add(id);
+    }
+    Object fallback = idsByValue.keySet().stream().findFirst().orElse(0);
+    if (idsByValue.size() <= 1) {
+      return Json.value(fallback);
+    }
+    StringBuilder match = new StringBuilder("[\"match\", [\"get\", ").append(Json.string(STYLE_ID)).append("]");
+    for (var entry : idsByValue.entrySet()) {
+      match.append(", ").append(entry.getValue()).append(", ").append(Json.value(entry.getKey()));
+    }
+    return match.append(", ").append(Json.value(fallback)).append(']').toString();
+  }
+
+  void logAttributeBytes(Logger logger, boolean singleFeature) {
+    List<Entry> all = entries();
+    List<String> classicKeys = new ArrayList<>(List.of("line-sort-key", "line-color", "line-width", "line-width-z20"));
+    if (singleFeature) {
+      classicKeys.add("casing-color");
+    }
+    List<BitSet> zooms;
+    synchronized (idsByZoom) {
+      zooms = idsByZoom.stream().map(bits -> (BitSet) bits.clone()).toList();
+    }
+    for (int zoom = 0; zoom < zooms.size(); zoom++) {
+      BitSet used = zooms.get(zoom);
+      if (used.isEmpty()) {
+        continue;
+      }
+      List<Set<Object>> classicValues = new ArrayList<>();
+      for (int i = 0; i < classicKeys.size(); i++) {
+        classicValues.add(new LinkedHashSet<>());
+      }
+      for (int id = used.nextSetBit(0); id >= 0; id = used.nextSetBit(id + 1)) {
+        Entry entry = all.get(id);
+        classicValues.get(0).add(entry.lineSortKey());
+        classicValues.get(1).add(entry.lineColor());
+        classicValues.get(2).add(entry.lineWidth());
+        classicValues.get(3).add(entry.lineWidthZ20());
+        if (singleFeature) {
+          classicValues.get(4).add(entry.casingColor());
+        }
+      }
+      long classicDictionary = 0;
+      long classicTags = 0;
+      int valueIndex = 0;
+      for (int i = 0; i < classicKeys.size(); i++) {
+        classicDictionary += keyBytes(classicKeys.get(i));
+        for (Object value : classicValues.get(i)) {
+          classicDictionary += valueBytes(value);
+        }
+        valueIndex += classicValues.get(i).size();
+        classicTags += varintSize(i) + varintSize(valueIndex - 1);
+      }
+      long paletteDictionary = keyBytes(STYLE_ID);
+      for (int id = used.nextSetBit(0); id >= 0; id = used.nextSetBit(id + 1)) {
+        paletteDictionary += valueBytes(id);
+      }
+      long paletteTags = varintSize(0) + varintSize(used.cardinality() - 1);
+      logger.info("z{} {} styles: per-tile key/value tables {} -> {} bytes, per-feature tags {} -> {} bytes",
+        zoom, used.cardinality(), classicDictionary, paletteDictionary, classicTags, paletteTags);
+    }
+  }
+
+  private static long keyBytes(String key) {
+    int length = key.getBytes(StandardCharsets.UTF_8).length;
+    return 1 + varintSize(length) + length;
+  }
+
+  private static long valueBytes(Object value) {
+    int content;
+    if (value instanceof String string) {
+      int length = string.getBytes(StandardCharsets.UTF_8).length;
+      content = 1 + varintSize(length) + length;
+    } else if (value instanceof Double) {
+      content = 1 + 8;
+    } else if (value instanceof Number number) {
+      long zigzag = (number.longValue() << 1) ^ (number.longValue() >> 63);
+      content = 1 + varintSize(zigzag);
+    } else {
+      content = 0;
+    }
+    return 1 + varintSize(content) + content;
+  }
+
+  private static int varintSize(long value) {
+    return ProtobufReader.varintSize(value);
+  }
+}
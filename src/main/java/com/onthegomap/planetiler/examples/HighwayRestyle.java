@@ -0,0 +1,72 @@
+package com.onthegomap.planetiler.examples;
+
+import com.onthegomap.planetiler.config.Arguments;
+import com.onthegomap.planetiler.config.PlanetilerConfig;
+import com.onthegomap.planetiler.stats.Stats;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rebuilds all tiles of a tileset from the highway store of an earlier build with {@code --highway_store}, so that a
+ * style change only re-runs attribute computation, {@code postProcessLayerFeatures} and encoding instead of reading
+ * the OSM input again.
+ */
+public class HighwayRestyle {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HighwayRestyle.class);
+
+  public static void main(String[] args) throws Exception {
+    run(Arguments.fromArgsOrConfigFile(args));
+  }
+
+  static void run(Arguments args) throws Exception {
+    Path store = args.inputFile("highway_store", "highway store written by the initial build",
+      Path.of("data", "single-highway-layer.store"));
+    Path mbtiles = args.inputFile("mbtiles", "mbtiles file whose tiles are replaced",
+      Path.of("data", "single-highway-layer.mbtiles"));
+    String pmtiles = args.getString("pmtiles", "pmtiles file to rewrite after restyling, empty to skip",
+      Path.of("data", "single-highway-layer.pmtiles").toString());
+    int partitionZoom = args.getInteger("partition_zoom",
+      "zoom whose tiles are rendered as one unit of work for all higher zooms", 8);
+    Stats stats = Stats.inMemory();
+    SingleHighwayLayer profile = new SingleHighwayLayer(SingleHighwayLayer.styles(args), args, stats);
+    long start = System.nanoTime();
+    List<HighwayStore.Way> ways = HighwayStore.read(store);
+    LOGGER.info("Loaded {} ways in {} ms", ways.size(), (System.nanoTime() - start) / 1_000_000);
+    restyle(args, profile, stats, ways, mbtiles, partitionZoom);
+    profile.writePalette(args.file("palette_style", "style.json generated for the style palette",
+      Path.of("style-palette.json")), mbtiles, SingleHighwayLayer.tilesUrl(
+      pmtiles.isBlank() ? SingleHighwayLayer.DEFAULT_PMTILES : Path.of(pmtiles)));
+
+    if (!pmtiles.isBlank()) {
+      PmtilesWriter.convert(mbtiles, Path.of(pmtiles), TileCodec.fromArguments(args, mbtiles));
+    }
+  }
+
+  /** Replaces all tiles of {@code mbtiles} with tiles rendered from {@code ways} through {@code profile}. */
+  static void restyle(Arguments args, SingleHighwayLayer profile, Stats stats, Collection<HighwayStore.Way> ways,
+    Path mbtiles, int partitionZoom) throws Exception {
+    PlanetilerConfig config = PlanetilerConfig.from(args);
+    long start = System.nanoTime();
+    AtomicLong tiles = new AtomicLong();
+    AtomicLong bytes = new AtomicLong();
+    try (MbtilesArchive archive = MbtilesArchive.open(mbtiles)) {
+      archive.beginTransaction();
+      archive.deleteAllTiles();
+      new HighwayTileRenderer(profile, config, stats).withOverview(ways).renderAll(ways, config.maxzoom(), partitionZoom,
+        args.threads(), (tile, data) -> {
+          archive.putTile(tile.z(), tile.x(), tile.y(), data);
+          tiles.incrementAndGet();
+          bytes.addAndGet(data.length);
+        });
+      archive.commit();
+    }
+    profile.lineMerger().logStats(LOGGER);
+    LOGGER.info("Rendered {} ways into {} tiles ({} bytes) of {} in {} ms", ways.size(), tiles.get(), bytes.get(),
+      mbtiles, (System.nanoTime() - start) / 1_000_000);
+  }
+}
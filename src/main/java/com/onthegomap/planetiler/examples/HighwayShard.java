@@ -0,0 +1,155 @@
+package com.onthegomap.planetiler.examples;
+
+import com.onthegomap.planetiler.config.Arguments;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One of {@code count} processes of a sharded build. Every shard reads the same input but only renders the tiles
+ * intersecting its bounds, which by default are an equal-width longitude stripe of the build bounds with edges on z14
+ * tile columns. {@link HighwayShardMerge} combines the shard outputs.
+ */
+record HighwayShard(int index, int count, Bounds bounds) {
+
+  static final int SNAP_ZOOM = 14;
+  static final Bounds WORLD = new Bounds(-180, -85.0511287798066, 180, 85.0511287798066);
+  /** Build arguments that change how the features of a boundary tile are merged and sorted. */
+  static final List<String> MERGE_ARGUMENTS =
+    List.of("style_file", "style_palette", "single_feature", "presort", "merge_parameters");
+  static final String ARGUMENT_PREFIX = "shard_argument_";
+
+  record Bounds(double minLon, double minLat, double maxLon, double maxLat) {
+
+    static Bounds parse(String bounds) {
+      if (bounds.isBlank() || "world".equals(bounds) || "planet".equals(bounds)) {
+        return WORLD;
+      }
+      String[] parts = bounds.split(",");
+      if (parts.length != 4) {
+        throw new IllegalArgumentException("Expected minLon,minLat,maxLon,maxLat but got " + bounds);
+      }
+      return new Bounds(Double.parseDouble(parts[0].strip()), Double.parseDouble(parts[1].strip()),
+        Double.parseDouble(parts[2].strip()), Double.parseDouble(parts[3].strip()));
+    }
+
+    /** Returns the tile columns {@code [min, max]} at {@code zoom} that these bounds intersect. */
+    int[] columns(int zoom) {
+      int tiles = 1 << zoom;
+      int min = (int) Math.floor((minLon + 180) / 360 * tiles);
+      int max = (int) Math.ceil((maxLon + 180) / 360 * tiles) - 1;
+      return new int[]{Math.max(0, min), Math.min(tiles - 1, Math.max(min, max))};
+    }
+
+    /** Returns the tile rows {@code [min, max]} at {@code zoom} that these bounds intersect. */
+    int[] rows(int zoom) {
+      int tiles = 1 << zoom;
+      int min = (int) Math.floor(latToY(maxLat) * tiles);
+      int max = (int) Math.ceil(latToY(minLat) * tiles) - 1;
+      return new int[]{Math.max(0, min), Math.min(tiles - 1, Math.max(min, max))};
+    }
+
+    boolean intersectsTile(int z, int x, int y) {
+      int[] columns = columns(z);
+      int[] rows = rows(z);
+      return x >= columns[0] && x <= columns[1] && y >= rows[0] && y <= rows[1];
+    }
+
+    Bounds union(Bounds other) {
+      return new Bounds(Math.min(minLon, other.minLon), Math.min(minLat, other.minLat),
+        Math.max(maxLon, other.maxLon), Math.max(maxLat, other.maxLat));
+    }
+
+    private static double latToY(double lat) {
+      double sin = Math.sin(Math.toRadians(lat));
+      return 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+    }
+
+    @Override
+    public String toString() {
+      return minLon + "," + minLat + "," + maxLon + "," + maxLat;
+    }
+  }
+
+  /**
+   * Parses {@code shard} as {@code index/count} with a zero-based index. {@code shardBounds} lists explicit bounds per
+   * shard separated by semicolons, for example to balance dense and empty regions; when it is empty the stripes of
+   * {@code bounds} are used.
+   */
+  static HighwayShard parse(String shard, String shardBounds, String bounds) {
+    String[] parts = shard.split("/");
+    if (parts.length != 2) {
+      throw new IllegalArgumentException("Expected --shard=index/count but got " + shard);
+    }
+    int index = Integer.parseInt(parts[0].strip());
+    int count = Integer.parseInt(parts[1].strip());
+    if (count < 1 || index < 0 || index >= count) {
+      throw new IllegalArgumentException("Shard index must be in [0, " + count + ") but got " + index);
+    }
+    if (!shardBounds.isBlank()) {
+      String[] list = shardBounds.split(";");
+      if (list.length != count) {
+        throw new IllegalArgumentException("--shard_bounds lists " + list.length + " bounds for " + count + " shards");
+      }
+      return new HighwayShard(index, count, Bounds.parse(list[index]));
+    }
+    return new HighwayShard(index, count, stripe(Bounds.parse(bounds), index, count));
+  }
+
+  private static Bounds stripe(Bounds bounds, int index, int count) {
+    int[] columns = bounds.columns(SNAP_ZOOM);
+    int width = columns[1] - columns[0] + 1;
+    int first = columns[0] + (int) ((long) width * index / count);
+    int last = columns[0] + (int) ((long) width * (index + 1) / count);
+    double tiles = 1 << SNAP_ZOOM;
+    return new Bounds(
+      index == 0 ? bounds.minLon() : first / tiles * 360 - 180,
+      bounds.minLat(),
+      index == count - 1 ? bounds.maxLon() : last / tiles * 360 - 180,
+      bounds.maxLat());
+  }
+
+  /** Returns the output of this shard next to {@code output}, e.g. {@code planet.shard-2-of-8.mbtiles}. */
+  Path output(Path output) {
+    String name = output.getFileName().toString();
+    int dot = name.lastIndexOf('.');
+    String suffix = ".shard-" + index + "-of-" + count;
+    return output.resolveSibling(dot < 0 ? name + suffix : name.substring(0, dot) + suffix + name.substring(dot));
+  }
+
+  /** Returns {@code args} limited to the bounds of this shard, with its own temporary directory. */
+  Arguments apply(Arguments args, Path output) {
+    return Arguments.of(Map.of(
+      "bounds", bounds.toString(),
+      "mbtiles", output.toString(),
+      "tmpdir", args.getString("tmpdir", "temp directory", Path.of("data", "tmp").toString()) + "/shard-" + index
+    )).orElse(args);
+  }
+
+  /**
+   * Metadata written into the shard output, read back by {@link HighwayShardMerge}, including the
+   * {@link #MERGE_ARGUMENTS} that the shard was built with.
+   */
+  Map<String, String> metadata(double buildSeconds, Arguments args) {
+    Map<String, String> result = new LinkedHashMap<>();
+    result.put("shard_index", Integer.toString(index));
+    result.put("shard_count", Integer.toString(count));
+    result.put("shard_bounds", bounds.toString());
+    result.put("shard_build_seconds", Double.toString(Math.round(buildSeconds * 10) / 10.0));
+    args.subset(MERGE_ARGUMENTS.toArray(String[]::new)).toMap()
+      .forEach((key, value) -> result.put(ARGUMENT_PREFIX + key, value));
+    return result;
+  }
+
+  /** Returns the {@link #MERGE_ARGUMENTS} stored in the metadata of a shard output. */
+  static Map<String, String> buildArguments(Map<String, String> metadata) {
+    Map<String, String> result = new LinkedHashMap<>();
+    for (var entry : metadata.entrySet()) {
+      if (entry.getKey().startsWith(ARGUMENT_PREFIX)) {
+        result.put(entry.getKey().substring(ARGUMENT_PREFIX.length()), entry.getValue());
+      }
+    }
+    return result;
+  }
+}
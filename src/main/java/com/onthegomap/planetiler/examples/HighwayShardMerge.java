@@ -0,0 +1,203 @@
+package com.onthegomap.planetiler.examples;
+
+import com.onthegomap.planetiler.VectorTile;
+import com.onthegomap.planetiler.config.Arguments;
+import com.onthegomap.planetiler.stats.Stats;
+import com.onthegomap.planetiler.util.Gzip;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Combines the outputs of a sharded build ({@code SingleHighwayLayer --shard=index/count}) into one tileset. Tiles
+ * inside a single shard are copied. A tile on a shard boundary is written by every shard it intersects: the copies
+ * are identical when all shards read the same input, and one is kept. Otherwise, their features are combined, and the
+ * highway lines split at the boundary are merged and sorted again with the build arguments stored in the shard
+ * metadata. The overview cap and the tile budget are not applied again.
+ */
+public class HighwayShardMerge {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HighwayShardMerge.class);
+  private static final List<String> SHARD_KEYS =
+    List.of("shard_index", "shard_count", "shard_bounds", "shard_build_seconds");
+
+  private record Shard(Path path, MbtilesArchive archive, HighwayShard.Bounds bounds) {}
+
+  private SingleHighwayLayer profile;
+  private long copied;
+  private long identical;
+  private long combined;
+
+  void merge(List<Path> inputs, Path output) throws Exception {
+    List<Shard> shards = new ArrayList<>();
+    try {
+      for (Path input : inputs) {
+        MbtilesArchive archive = MbtilesArchive.open(input);
+        String bounds = archive.getMetadata("shard_bounds");
+        if (bounds == null) {
+          archive.close();
+          throw new IllegalArgumentException(input + " is not the output of a --shard build");
+        }
+        shards.add(new Shard(input, archive, HighwayShard.Bounds.parse(bounds)));
+      }
+      profile = profile(shards);
+      mergeShards(shards, output);
+    } finally {
+      for (Shard shard : shards) {
+        shard.archive().close();
+      }
+    }
+  }
+
+  /** Returns a profile with the build arguments that all shards were built with. */
+  private static SingleHighwayLayer profile(List<Shard> shards) throws Exception {
+    Map<String, String> buildArguments = HighwayShard.buildArguments(shards.get(0).archive().metadata());
+    for (Shard shard : shards) {
+      Map<String, String> other = HighwayShard.buildArguments(shard.archive().metadata());
+      if (!other.equals(buildArguments)) {
+        throw new IllegalArgumentException(
+          shard.path() + " was built with " + other + " but " + shards.get(0).path() + " with " + buildArguments);
+      }
+    }
+    LOGGER.info("Merging boundary tiles with the shard build arguments {}", buildArguments);
+    Arguments args = Arguments.of(buildArguments).silence();
+    return new SingleHighwayLayer(SingleHighwayLayer.styles(args), args, Stats.inMemory());
+  }
+
+  private void mergeShards(List<Shard> shards, Path output) throws Exception {
+    Map<String, String> metadata = new LinkedHashMap<>(shards.get(0).archive().metadata());
+    SHARD_KEYS.forEach(metadata::remove);
+    metadata.keySet().removeIf(key -> key.startsWith(HighwayShard.ARGUMENT_PREFIX));
+    HighwayShard.Bounds bounds = shards.get(0).bounds();
+    for (Shard shard : shards) {
+      bounds = bounds.union(shard.bounds());
+    }
+    metadata.put("bounds", bounds.toString());
+    try (MbtilesArchive merged = MbtilesArchive.create(output, metadata)) {
+      merged.beginTransaction();
+      for (int i = 0; i < shards.size(); i++) {
+        int index = i;
+        shards.get(i).archive().forEachTile(tile -> {
+          byte[] data = tileData(shards, index, tile);
+          if (data != null) {
+            merged.putTile(tile.z(), tile.x(), tile.y(), data);
+          }
+        });
+        LOGGER.info("Merged {}", shards.get(i).path());
+      }
+      merged.commit();
+    }
+  }
+
+  /**
+   * Returns the data to write for {@code tile} of shard {@code index}, or {@code null} when an earlier shard that
+   * also has the tile writes it.
+   */
+  private byte[] tileData(List<Shard> shards, int index, MbtilesArchive.Tile tile) throws Exception {
+    List<byte[]> copies = new ArrayList<>();
+    copies.add(tile.data());
+    for (int other = 0; other < shards.size(); other++) {
+      Shard shard = shards.get(other);
+      if (other == index || !shard.bounds().intersectsTile(tile.z(), tile.x(), tile.y())) {
+        continue;
+      }
+      byte[] copy = shard.archive().getTile(tile.z(), tile.x(), tile.y());
+      if (copy != null) {
+        if (other < index) {
+          return null;
+        }
+        copies.add(copy);
+      }
+    }
+    if (copies.size() == 1) {
+      copied++;
+      return tile.data();
+    }
+    byte[] first = MbtilesArchive.gunzipIfNeeded(copies.get(0));
+    boolean same = true;
+    for (int i = 1; i < copies.size() && same; i++) {
+      same = Arrays.equals(first, MbtilesArchive.gunzipIfNeeded(copies.get(i)));
+    }
+    if (same) {
+      identical++;
+      return tile.data();
+    }
+    combined++;
+    return combine(tile.z(), copies);
+  }
+
+  private byte[] combine(int zoom, List<byte[]> copies) throws Exception {
+    Map<String, Map<String, VectorTile.Feature>> layers = new TreeMap<>();
+    for (byte[] copy : copies) {
+      for (VectorTile.Feature feature : VectorTile.decode(MbtilesArchive.gunzipIfNeeded(copy))) {
+        // the same feature drawn by two shards only appears once
+        String key = Arrays.toString(feature.geometry().commands()) + feature.attrs();
+        layers.computeIfAbsent(feature.layer(), layer -> new LinkedHashMap<>()).putIfAbsent(key, feature);
+      }
+    }
+    VectorTile encoder = new VectorTile();
+    for (var entry : layers.entrySet()) {
+      List<VectorTile.Feature> features = new ArrayList<>(entry.getValue().values());
+      encoder.addLayerFeatures(entry.getKey(),
+        "highway".equals(entry.getKey()) ? profile.mergeAndSort(zoom, features) : features);
+    }
+    return Gzip.gzip(encoder.encode());
+  }
+
+  void logStats(List<Path> inputs, Path output, double mergeSeconds, double singleBuildSeconds) throws Exception {
+    LOGGER.info("Wrote {}: {} tiles from one shard, {} identical boundary tiles, {} combined boundary tiles", output,
+      copied, identical, combined);
+    double slowest = 0;
+    double total = 0;
+    for (Path input : inputs) {
+      try (MbtilesArchive archive = MbtilesArchive.open(input)) {
+        String seconds = archive.getMetadata("shard_build_seconds");
+        double shardSeconds = seconds == null ? 0 : Double.parseDouble(seconds);
+        LOGGER.info("  {} built in {} s", input, shardSeconds);
+        slowest = Math.max(slowest, shardSeconds);
+        total += shardSeconds;
+      }
+    }
+    double wall = slowest + mergeSeconds;
+    LOGGER.info("{} shards: slowest shard {} s, all shards {} s, merge {} s, {} s end to end", inputs.size(),
+      String.format("%.1f", slowest), String.format("%.1f", total), String.format("%.1f", mergeSeconds),
+      String.format("%.1f", wall));
+    if (singleBuildSeconds > 0) {
+      LOGGER.info("Speedup over the single build of {} s: {}x on {} shards ({}% efficiency)",
+        String.format("%.1f", singleBuildSeconds), String.format("%.2f", singleBuildSeconds / wall), inputs.size(),
+        Math.round(singleBuildSeconds / wall / inputs.size() * 100));
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    run(Arguments.fromArgsOrConfigFile(args));
+  }
+
+  static void run(Arguments args) throws Exception {
+    List<Path> inputs = args.getList("shards", "shard mbtiles files to merge", List.of()).stream()
+      .map(Path::of)
+      .toList();
+    if (inputs.isEmpty()) {
+      throw new IllegalArgumentException("--shards must list the shard mbtiles files");
+    }
+    Path output = args.file("mbtiles", "merged mbtiles output file", Path.of("data", "single-highway-layer.mbtiles"));
+    String pmtiles = args.getString("pmtiles", "pmtiles output file, empty to skip",
+      SingleHighwayLayer.DEFAULT_PMTILES.toString());
+    double singleBuildSeconds = args.getDouble("single_build_seconds",
+      "wall time of the same build in one process, to report the speedup", 0);
+
+    long start = System.nanoTime();
+    HighwayShardMerge merge = new HighwayShardMerge();
+    merge.merge(inputs, output);
+    if (!pmtiles.isBlank()) {
+      PmtilesWriter.convert(output, Path.of(pmtiles), TileCodec.fromArguments(args, output));
+    }
+    merge.logStats(inputs, output, (System.nanoTime() - start) / 1e9, singleBuildSeconds);
+  }
+}
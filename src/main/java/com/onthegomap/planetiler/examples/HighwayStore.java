@@ -0,0 +1,318 @@
+package com.onthegomap.planetiler.examples;
+
+import com.onthegomap.planetiler.geo.GeoUtils;
+import com.onthegomap.planetiler.geo.GeometryException;
+import com.onthegomap.planetiler.reader.SimpleFeature;
+import com.onthegomap.planetiler.reader.SourceFeature;
+import com.onthegomap.planetiler.reader.osm.OsmElement;
+import com.onthegomap.planetiler.reader.osm.OsmSourceFeature;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+
+/**
+ * Compact file of the classified highway ways seen by a build: the tags that decide their style, their node ids and
+ * node locations as Planetiler stores them ({@link GeoUtils#encodeFlatLocation}). Lets later runs re-render tiles
+ * without reading the OSM input again, from exactly the coordinates the build saw.
+ */
+class HighwayStore {
+
+  private static final int MAGIC = 0x48575932; // HWY2
+  /** The quantization of {@link GeoUtils#encodeFlatLocation}: world coordinates plus one, times 2^30. */
+  private static final double HALF_QUANTIZED_WORLD_SIZE = 1 << 30;
+
+  record Way(long id, String highway, boolean isBridge, boolean isTunnel, int layer, long[] nodes, long[] locations) {
+
+    Map<String, Object> tags() {
+      Map<String, Object> tags = new HashMap<>(8);
+      tags.put("highway", highway);
+      if (isBridge) {
+        tags.put("bridge", "yes");
+      }
+      if (isTunnel) {
+        tags.put("tunnel", "yes");
+      }
+      if (layer != HighwayTags.NO_LAYER) {
+        tags.put("layer", Integer.toString(layer));
+      }
+      return tags;
+    }
+
+    LineString worldGeometry() {
+      Coordinate[] coordinates = new Coordinate[locations.length];
+      for (int i = 0; i < coordinates.length; i++) {
+        coordinates[i] = new Coordinate(GeoUtils.decodeWorldX(locations[i]), GeoUtils.decodeWorldY(locations[i]));
+      }
+      return GeoUtils.JTS_FACTORY.createLineString(coordinates);
+    }
+
+    SourceFeature toSourceFeature() {
+      return new WayFeature(this);
+    }
+
+    Envelope worldEnvelope() {
+      Envelope envelope = new Envelope();
+      for (long location : locations) {
+        double x = GeoUtils.decodeWorldX(location);
+        double y = GeoUtils.decodeWorldY(location);
+        envelope.expandToInclude(x, y);
+      }
+      return envelope;
+    }
+  }
+
+  /**
+   * A stored way as a line feature in world coordinates, like the OSM way features of a Planetiler run.
+   * {@link SimpleFeature} only takes latitude and longitude, whose projection back to world coordinates is not exact.
+   */
+  private static class WayFeature extends SourceFeature {
+
+    private final LineString worldGeometry;
+
+    WayFeature(Way way) {
+      super(way.tags(), "osm", null, null, way.id());
+      this.worldGeometry = way.worldGeometry();
+    }
+
+    @Override
+    public Geometry worldGeometry() {
+      return worldGeometry;
+    }
+
+    @Override
+    public Geometry latLonGeometry() {
+      return GeoUtils.worldToLatLonCoords(worldGeometry);
+    }
+
+    @Override
+    public boolean isPoint() {
+      return false;
+    }
+
+    @Override
+    public boolean canBePolygon() {
+      return false;
+    }
+
+    @Override
+    public boolean canBeLine() {
+      return true;
+    }
+  }
+
+  /** Returns the location of {@link GeoUtils#encodeFlatLocation} that Planetiler decoded to these world coordinates. */
+  static long encodeWorldLocation(double worldX, double worldY) {
+    long x = Math.round((worldX + 1) * HALF_QUANTIZED_WORLD_SIZE);
+    long y = Math.round((worldY + 1) * HALF_QUANTIZED_WORLD_SIZE);
+    return (x << 32) | (y & 0xFFFFFFFFL);
+  }
+
+  /** Returns the stored form of a highway way, or {@code null} when the source is not an OSM way. */
+  static Way fromSource(SourceFeature sourceFeature, String highway, boolean isBridge, boolean isTunnel, int layer)
+    throws GeometryException {
+    if (!(sourceFeature instanceof OsmSourceFeature osmFeature) ||
+      !(osmFeature.originalElement() instanceof OsmElement.Way way)) {
+      return null;
+    }
+    Geometry line = sourceFeature.line();
+    Coordinate[] coordinates = line.getCoordinates();
+    if (coordinates.length != way.nodes().size()) {
+      return null;
+    }
+    long[] locations = new long[coordinates.length];
+    for (int i = 0; i < coordinates.length; i++) {
+      locations[i] = encodeWorldLocation(coordinates[i].getX(), coordinates[i].getY());
+    }
+    return new Way(way.id(), highway, isBridge, isTunnel, layer, way.nodes().toArray(), locations);
+  }
+
+  /**
+   * Appends ways from any number of threads; each way is serialized outside the lock. The ways go to a temporary file
+   * that replaces {@code path} on {@link #commit()}, so closing the writer without a commit, for example after a failed
+   * build, leaves the previous store in place.
+   */
+  static class Writer implements AutoCloseable {
+
+    private final Path path;
+    private final Path temp;
+    private final DataOutputStream out;
+    private long count = 0;
+    private boolean committed = false;
+
+    Writer(Path path) throws IOException {
+      this.path = path;
+      this.temp = path.resolveSibling(path.getFileName() + ".tmp");
+      Files.createDirectories(temp.toAbsolutePath().getParent());
+      OutputStream file = Files.newOutputStream(temp);
+      this.out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(file, 1 << 16), 1 << 16));
+      out.writeInt(MAGIC);
+    }
+
+    void write(Way way) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + way.nodes.length * 12);
+      try {
+        writeWay(new DataOutputStream(bytes), way);
+        synchronized (this) {
+          bytes.writeTo(out);
+          count++;
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    long count() {
+      return count;
+    }
+
+    /** Finishes the file and moves it to {@code path}. */
+    void commit() throws IOException {
+      out.close();
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+      committed = true;
+    }
+
+    /** Discards the written ways unless {@link #commit()} was called. */
+    @Override
+    public void close() throws IOException {
+      if (!committed) {
+        try {
+          out.close();
+        } finally {
+          Files.deleteIfExists(temp);
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads all ways in file order. Callers that render arbitrary tiles index them in memory; callers that only visit
+   * each way once should use {@link #forEach} instead.
+   */
+  static List<Way> read(Path path) throws IOException {
+    List<Way> result = new ArrayList<>();
+    forEach(path, result::add);
+    return result;
+  }
+
+  /**
+   * Passes every way to {@code consumer} in file order, without holding more than one way in memory. Fails when the
+   * file ends inside a way, so that a truncated store is not read as one with fewer ways.
+   */
+  static void forEach(Path path, Consumer<Way> consumer) throws IOException {
+    try (
+      InputStream file = Files.newInputStream(path);
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(file, 1 << 16), 1 << 16))
+    ) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException(path + " is not a highway store");
+      }
+      while (true) {
+        in.mark(1);
+        if (in.read() < 0) {
+          break;
+        }
+        in.reset();
+        Way way;
+        try {
+          way = readWay(in);
+        } catch (EOFException e) {
+          throw new IOException(path + " is truncated", e);
+        }
+        consumer.accept(way);
+      }
+    }
+  }
+
+  private static void writeWay(DataOutputStream out, Way way) throws IOException {
+    out.writeLong(way.id);
+    out.writeUTF(way.highway);
+    out.writeByte((way.isBridge ? 1 : 0) | (way.isTunnel ? 2 : 0));
+    out.writeInt(way.layer);
+    writeVarint(out, way.nodes.length);
+    long lastNode = 0;
+    long lastX = 0;
+    long lastY = 0;
+    for (int i = 0; i < way.nodes.length; i++) {
+      long x = way.locations[i] >>> 32;
+      long y = way.locations[i] & 0xFFFFFFFFL;
+      writeSignedVarint(out, way.nodes[i] - lastNode);
+      writeSignedVarint(out, x - lastX);
+      writeSignedVarint(out, y - lastY);
+      lastNode = way.nodes[i];
+      lastX = x;
+      lastY = y;
+    }
+  }
+
+  private static Way readWay(DataInputStream in) throws IOException {
+    long id = in.readLong();
+    String highway = in.readUTF();
+    int flags = in.readByte();
+    int layer = in.readInt();
+    int count = (int) readVarint(in);
+    long[] nodes = new long[count];
+    long[] locations = new long[count];
+    long node = 0;
+    long x = 0;
+    long y = 0;
+    for (int i = 0; i < count; i++) {
+      node += readSignedVarint(in);
+      x += readSignedVarint(in);
+      y += readSignedVarint(in);
+      nodes[i] = node;
+      locations[i] = (x << 32) | y;
+    }
+    return new Way(id, highway, (flags & 1) != 0, (flags & 2) != 0, layer, nodes, locations);
+  }
+
+  private static void writeVarint(DataOutputStream out, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.writeByte((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.writeByte((int) value);
+  }
+
+  private static void writeSignedVarint(DataOutputStream out, long value) throws IOException {
+    writeVarint(out, (value << 1) ^ (value >> 63));
+  }
+
+  private static long readVarint(DataInputStream in) throws IOException {
+    long result = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = in.readUnsignedByte();
+      result |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return result;
+      }
+    }
+    throw new IOException("Malformed varint");
+  }
+
+  private static long readSignedVarint(DataInputStream in) throws IOException {
+    long value = readVarint(in);
+    return (value >>> 1) ^ -(value & 1);
+  }
+}
@@ -0,0 +1,412 @@
+package com.onthegomap.planetiler.examples;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+public class HighwayStyle {
+
+  static final int ZOOM_LEVELS = 15;
+  static final int NO_LINKS = -1;
+  static final int LINK_MIN_ZOOM = 11;
+
+  final String category;
+  final int minZoom;
+  final int linkMinZoom;
+  final double[] lineWidthLevels;
+  final String[] casingLineColorLevels;
+  final String[] lineColorLevels;
+
+  public HighwayStyle(String category, int minZoom, int linkMinZoom, double[] lineWidthLevels,
+    String[] casingLineColorLevels, String[] lineColorLevels) {
+    this.category = category;
+    this.minZoom = minZoom;
+    this.linkMinZoom = linkMinZoom;
+    this.lineWidthLevels = lineWidthLevels.clone();
+    this.casingLineColorLevels = casingLineColorLevels.clone();
+    this.lineColorLevels = lineColorLevels.clone();
+  }
+
+  boolean hasLinks() {
+    return linkMinZoom != NO_LINKS;
+  }
+
+  /**
+   * Reads overrides of the default styles from a properties file with keys like {@code motorway.line_color},
+   * {@code motorway.casing_color} and {@code motorway.line_width} holding one comma separated value per zoom, and
+   * {@code motorway.min_zoom} and {@code motorway.link_min_zoom}.
+   */
+  static List<HighwayStyle> load(Path path) throws IOException {
+    Properties properties = new Properties();
+    try (Reader reader = Files.newBufferedReader(path)) {
+      properties.load(reader);
+    }
+    List<HighwayStyle> result = new ArrayList<>();
+    for (HighwayStyle style : defaults()) {
+      String prefix = style.category + ".";
+      String lineWidth = properties.getProperty(prefix + "line_width");
+      String casingColor = properties.getProperty(prefix + "casing_color");
+      String lineColor = properties.getProperty(prefix + "line_color");
+      result.add(new HighwayStyle(
+        style.category,
+        Integer.parseInt(properties.getProperty(prefix + "min_zoom", Integer.toString(style.minZoom)).trim()),
+        Integer.parseInt(properties.getProperty(prefix + "link_min_zoom", Integer.toString(style.linkMinZoom)).trim()),
+        lineWidth == null ? style.lineWidthLevels : parseWidths(path, prefix + "line_width", lineWidth),
+        casingColor == null ? style.casingLineColorLevels : parseColors(path, prefix + "casing_color", casingColor),
+        lineColor == null ? style.lineColorLevels : parseColors(path, prefix + "line_color", lineColor)
+      ));
+    }
+    return result;
+  }
+
+  /** Returns the styles of {@code path}, or the defaults when it is {@code null}. */
+  static List<HighwayStyle> loadOrDefaults(Path path) throws IOException {
+    return path == null ? defaults() : load(path);
+  }
+
+  private static double[] parseWidths(Path path, String key, String value) {
+    String[] parts = split(path, key, value);
+    double[] result = new double[parts.length];
+    for (int i = 0; i < parts.length; i++) {
+      result[i] = Double.parseDouble(parts[i]);
+    }
+    return result;
+  }
+
+  private static String[] parseColors(Path path, String key, String value) {
+    return split(path, key, value);
+  }
+
+  private static String[] split(Path path, String key, String value) {
+    String[] parts = value.split(",", -1);
+    if (parts.length != ZOOM_LEVELS) {
+      throw new IllegalArgumentException(
+        path + ": " + key + " needs " + ZOOM_LEVELS + " values but has " + parts.length);
+    }
+    for (int i = 0; i < parts.length; i++) {
+      parts[i] = parts[i].trim();
+    }
+    return parts;
+  }
+
+  static List<HighwayStyle> defaults() {
+    return List.of(
+      new HighwayStyle("unclassified", 12, NO_LINKS,
+        new double[]{
+          0.0, // z0
+          0.0, // z1
+          0.0, // z2
+          0.0, // z3
+          0.0, // z4
+          0.0, // z5
+          0.0, // z6
+          0.0, // z7
+          0.0, // z8
+          0.0, // z9
+          0.0, // z10
+          0.0, // z11
+          1.0, // z12
+          1.5, // z13
+          2.0, // z14
+        },
+        new String[]{
+          "", // z0
+          "", // z1
+          "", // z2
+          "", // z3
+          "", // z4
+          "", // z5
+          "", // z6
+          "", // z7
+          "", // z8
+          "", // z9
+          "", // z10
+          "", // z11
+          "#ccc", // z12
+          "#ccc", // z13
+          "#ccc", // z14
+        },
+        new String[]{
+          "", // z0
+          "", // z1
+          "", // z2
+          "", // z3
+          "", // z4
+          "", // z5
+          "", // z6
+          "", // z7
+          "", // z8
+          "", // z9
+          "", // z10
+          "", // z11
+          "white", // z12
+          "white", // z13
+          "white", // z14
+        }),
+      new HighwayStyle("tertiary", 10, 14,
+        new double[]{
+          0.0, // z0
+          0.0, // z1
+          0.0, // z2
+          0.0, // z3
+          0.0, // z4
+          0.0, // z5
+          0.0, // z6
+          0.0, // z7
+          0.0, // z8
+          0.0, // z9
+          1.0, // z10
+          1.0, // z11
+          2.0, // z12
+          2.5, // z13
+          3.0, // z14
+        },
+        new String[]{
+          "", // z0
+          "", // z1
+          "", // z2
+          "", // z3
+          "", // z4
+          "", // z5
+          "", // z6
+          "", // z7
+          "", // z8
+          "", // z9
+          "#ccc", // z10
+          "#ccc", // z11
+          "#bbb", // z12
+          "#bbb", // z13
+          "#bbb", // z14
+        },
+        new String[]{
+          "", // z0
+          "", // z1
+          "", // z2
+          "", // z3
+          "", // z4
+          "", // z5
+          "", // z6
+          "", // z7
+          "", // z8
+          "", // z9
+          "white", // z10
+          "white", // z11
+          "white", // z12
+          "white", // z13
+          "white", // z14
+        }),
+      new HighwayStyle("secondary", 9, LINK_MIN_ZOOM,
+        new double[]{
+          0.0, // z0
+          0.0, // z1
+          0.0, // z2
+          0.0, // z3
+          0.0, // z4
+          0.0, // z5
+          0.0, // z6
+          0.0, // z7
+          0.0, // z8
+          1.0, // z9
+          1.0, // z10
+          2.0, // z11
+          2.5, // z12
+          3.0, // z13
+          3.5, // z14
+        },
+        new String[]{
+          "", // z0
+          "", // z1
+          "", // z2
+          "", // z3
+          "", // z4
+          "", // z5
+          "", // z6
+          "", // z7
+          "", // z8
+          "#9b59b6", // z9
+          "#9b59b6", // z10
+          "#9b59b6", // z11
+          "#9b59b6", // z12
+          "#9b59b6", // z13
+          "#9b59b6", // z14
+        },
+        new String[]{
+          "", // z0
+          "", // z1
+          "", // z2
+          "", // z3
+          "", // z4
+          "", // z5
+          "", // z6
+          "", // z7
+          "", // z8
+          "white", // z9
+          "white", // z10
+          "white", // z11
+          "white", // z12
+          "white", // z13
+          "white", // z14
+        }),
+      new HighwayStyle("primary", 8, LINK_MIN_ZOOM,
+        new double[]{
+          0.0, // z0
+          0.0, // z1
+          0.0, // z2
+          0.0, // z3
+          0.0, // z4
+          0.0, // z5
+          0.0, // z6
+          0.0, // z7
+          1.0, // z8
+          1.0, // z9
+          1.0, // z10
+          2.0, // z11
+          2.5, // z12
+          3.0, // z13
+          3.5, // z14
+        },
+        new String[]{
+          "", // z0
+          "", // z1
+          "", // z2
+          "", // z3
+          "", // z4
+          "", // z5
+          "", // z6
+          "", // z7
+          "#3498db", // z8
+          "#3498db", // z9
+          "#3498db", // z10
+          "#3498db", // z11
+          "#3498db", // z12
+          "#3498db", // z13
+          "#3498db", // z14
+        },
+        new String[]{
+          "", // z0
+          "", // z1
+          "", // z2
+          "", // z3
+          "", // z4
+          "", // z5
+          "", // z6
+          "", // z7
+          "white", // z8
+          "white", // z9
+          "white", // z10
+          "white", // z11
+          "white", // z12
+          "white", // z13
+          "white", // z14
+        }),
+      new HighwayStyle("trunk", 7, LINK_MIN_ZOOM,
+        new double[]{
+          0.0, // z0
+          0.0, // z1
+          0.0, // z2
+          0.0, // z3
+          0.0, // z4
+          0.0, // z5
+          0.0, // z6
+          1.0, // z7
+          1.5, // z8
+          2.0, // z9
+          2.5, // z10
+          3.0, // z11
+          3.5, // z12
+          4.0, // z13
+          4.5, // z14
+        },
+        new String[]{
+          "", // z0
+          "", // z1
+          "", // z2
+          "", // z3
+          "", // z4
+          "", // z5
+          "", // z6
+          "#2ecc71", // z7
+          "#2ecc71", // z8
+          "#2ecc71", // z9
+          "#2ecc71", // z10
+          "#2ecc71", // z11
+          "#2ecc71", // z12
+          "#2ecc71", // z13
+          "#2ecc71", // z14
+        },
+        new String[]{
+          "", // z0
+          "", // z1
+          "", // z2
+          "", // z3
+          "", // z4
+          "", // z5
+          "", // z6
+          "white", // z7
+          "white", // z8
+          "white", // z9
+          "white", // z10
+          "white", // z11
+          "white", // z12
+          "white", // z13
+          "white", // z14
+        }),
+      new HighwayStyle("motorway", 6, LINK_MIN_ZOOM,
+        new double[]{
+          0.0, // z0
+          0.0, // z1
+          0.0, // z2
+          0.0, // z3
+          0.0, // z4
+          0.0, // z5
+          1.0, // z6
+          1.5, // z7
+          2.0, // z8
+          2.5, // z9
+          3.0, // z10
+          3.5, // z11
+          4.0, // z12
+          4.5, // z13
+          5.0, // z14
+        },
+        new String[]{
+          "", // z0
+          "", // z1
+          "", // z2
+          "", // z3
+          "", // z4
+          "", // z5
+          "#fab724", // z6
+          "#fab724", // z7
+          "#fab724", // z8
+          "#fab724", // z9
+          "#fab724", // z10
+          "#fab724", // z11
+          "#fab724", // z12
+          "#fab724", // z13
+          "#fab724", // z14
+        },
+        new String[]{
+          "", // z0
+          "", // z1
+          "", // z2
+          "", // z3
+          "", // z4
+          "", // z5
+          "#feefc3", // z6
+          "#feefc3", // z7
+          "#feefc3", // z8
+          "#feefc3", // z9
+          "#feefc3", // z10
+          "#feefc3", // z11
+          "#feefc3", // z12
+          "#feefc3", // z13
+          "#feefc3", // z14
+        })
+    );
+  }
+}
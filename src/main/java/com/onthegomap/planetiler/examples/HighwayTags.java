@@ -0,0 +1,82 @@
+package com.onthegomap.planetiler.examples;
+
+import com.onthegomap.planetiler.reader.WithTags;
+import com.onthegomap.planetiler.stats.Stats;
+
+/**
+ * Decodes the {@code layer}, {@code bridge}, {@code tunnel} and {@code covered} tags of a highway into primitives
+ * without allocating or throwing. Values that are not plain integers are reported as data errors.
+ */
+class HighwayTags {
+
+  static final int NO_LAYER = Integer.MIN_VALUE;
+  static final String MALFORMED_LAYER = "highway_malformed_layer";
+  private static final int MAX_LAYER = 1_000_000;
+
+  private HighwayTags() {}
+
+  static boolean isTunnel(WithTags tags) {
+    return tags.hasTag("tunnel", "yes", "building_passage") || tags.hasTag("covered", "yes");
+  }
+
+  static boolean isBridge(WithTags tags) {
+    return tags.hasTag("bridge");
+  }
+
+  static int layer(WithTags tags, Stats stats) {
+    Object value = tags.getTag("layer");
+    return value == null ? NO_LAYER : parseLayer(value, stats);
+  }
+
+  static int parseLayer(Object value, Stats stats) {
+    if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+      long number = ((Number) value).longValue();
+      if (number < -MAX_LAYER || number > MAX_LAYER) {
+        stats.dataError(MALFORMED_LAYER);
+        return NO_LAYER;
+      }
+      return (int) number;
+    }
+    if (!(value instanceof CharSequence chars)) {
+      stats.dataError(MALFORMED_LAYER);
+      return NO_LAYER;
+    }
+
+    int length = chars.length();
+    int start = 0;
+    while (start < length && Character.isWhitespace(chars.charAt(start))) {
+      start++;
+    }
+    int end = length;
+    while (end > start && Character.isWhitespace(chars.charAt(end - 1))) {
+      end--;
+    }
+
+    int i = start;
+    boolean negative = false;
+    if (i < end && (chars.charAt(i) == '-' || chars.charAt(i) == '+')) {
+      negative = chars.charAt(i) == '-';
+      i++;
+    }
+    int digitsStart = i;
+    int result = 0;
+    while (i < end && chars.charAt(i) >= '0' && chars.charAt(i) <= '9') {
+      result = result * 10 + (chars.charAt(i) - '0');
+      if (result > MAX_LAYER) {
+        stats.dataError(MALFORMED_LAYER);
+        return NO_LAYER;
+      }
+      i++;
+    }
+
+    if (i == digitsStart) {
+      stats.dataError(MALFORMED_LAYER);
+      return NO_LAYER;
+    }
+    if (start != 0 || end != length || i != end) {
+      // keep the leading integer of values like "-1;0", "1.5" or " 2"
+      stats.dataError(MALFORMED_LAYER);
+    }
+    return negative ? -result : result;
+  }
+}
@@ -0,0 +1,156 @@
+package com.onthegomap.planetiler.examples;
+
+import com.onthegomap.planetiler.VectorTile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps dense tiles within a byte and feature budget by stepping through degradation levels until the first one fits:
+ * a higher simplification tolerance, then dropping the configured highway classes one after another, then a more
+ * aggressive merge that also drops short lines. Each level builds on the previous one. Every degraded tile is logged,
+ * and the tile counts and bytes are summed per zoom and level.
+ */
+class HighwayTileBudget {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HighwayTileBudget.class);
+  private static final String LAYER = "highway";
+
+  private final int minZoom;
+  private final int maxZoom;
+  private final int maxBytes;
+  private final int maxFeatures;
+  private final List<String> dropClasses;
+  private final List<String> levelNames;
+  private final LongAdder[][] tilesByLevel;
+  private final LongAdder[][] bytesBeforeByLevel;
+  private final LongAdder[][] bytesAfterByLevel;
+  private final LongAdder[] overBudget;
+
+  HighwayTileBudget(int minZoom, int maxZoom, int maxBytes, int maxFeatures, List<String> dropClasses) {
+    this.minZoom = minZoom;
+    this.maxZoom = maxZoom;
+    this.maxBytes = maxBytes;
+    this.maxFeatures = maxFeatures;
+    this.dropClasses = List.copyOf(dropClasses);
+    List<String> names = new ArrayList<>();
+    names.add("simplify");
+    for (String dropClass : dropClasses) {
+      names.add("drop " + dropClass);
+    }
+    names.add("merge");
+    this.levelNames = List.copyOf(names);
+    this.tilesByLevel = new LongAdder[maxZoom + 1][levelNames.size()];
+    this.bytesBeforeByLevel = new LongAdder[maxZoom + 1][levelNames.size()];
+    this.bytesAfterByLevel = new LongAdder[maxZoom + 1][levelNames.size()];
+    this.overBudget = new LongAdder[maxZoom + 1];
+    for (int zoom = 0; zoom <= maxZoom; zoom++) {
+      for (int level = 0; level < levelNames.size(); level++) {
+        tilesByLevel[zoom][level] = new LongAdder();
+        bytesBeforeByLevel[zoom][level] = new LongAdder();
+        bytesAfterByLevel[zoom][level] = new LongAdder();
+      }
+      overBudget[zoom] = new LongAdder();
+    }
+  }
+
+  /** Returns a budget with the same settings and fresh statistics. */
+  HighwayTileBudget withEmptyStats() {
+    return new HighwayTileBudget(minZoom, maxZoom, maxBytes, maxFeatures, dropClasses);
+  }
+
+  /**
+   * Returns {@code features} when they fit the budget, or otherwise the output of the first degradation level that
+   * fits, or of the last level when none does. Tiles well below the byte budget are never encoded here, and every
+   * other tile is encoded once before degrading and once per level tried.
+   */
+  List<VectorTile.Feature> apply(int zoom, List<VectorTile.Feature> features, SingleHighwayLayer profile) {
+    if (zoom < minZoom || zoom > maxZoom || (features.size() <= maxFeatures && estimatedBytes(features) <= maxBytes / 2)) {
+      return features;
+    }
+    int bytesBefore = encodedBytes(features);
+    if (fits(features, bytesBefore)) {
+      return features;
+    }
+    HighwayLineMerger merger = profile.lineMerger();
+    HighwayLineMerger.MergeParameters params = merger.parameters(zoom);
+
+    List<VectorTile.Feature> result = merger.remerge(features, new HighwayLineMerger.MergeParameters(
+      params.minLength(), params.tolerance() * 4, params.buffer()));
+    int bytes = encodedBytes(result);
+    int level = 0;
+    while (!fits(result, bytes) && level < levelNames.size() - 1) {
+      level++;
+      if (level <= dropClasses.size()) {
+        String dropped = dropClasses.get(level - 1);
+        List<VectorTile.Feature> kept = new ArrayList<>(result.size());
+        for (VectorTile.Feature feature : result) {
+          if (!dropped.equals(profile.highwayClass(feature, zoom))) {
+            kept.add(feature);
+          }
+        }
+        result = kept;
+      } else {
+        result = merger.remerge(result, new HighwayLineMerger.MergeParameters(
+          params.minLength() * 4, params.tolerance() * 8, params.buffer() * 2));
+      }
+      bytes = encodedBytes(result);
+    }
+    boolean fits = fits(result, bytes);
+    tilesByLevel[zoom][level].increment();
+    bytesBeforeByLevel[zoom][level].add(bytesBefore);
+    bytesAfterByLevel[zoom][level].add(bytes);
+    if (!fits) {
+      overBudget[zoom].increment();
+    }
+    LOGGER.info("Degraded z{} tile to level {} ({}): {} -> {} features, {} -> {} bytes{}", zoom, level,
+      levelNames.get(level), features.size(), result.size(), bytesBefore, bytes, fits ? "" : ", still over budget");
+    return result;
+  }
+
+  private boolean fits(List<VectorTile.Feature> features, int encodedBytes) {
+    return features.size() <= maxFeatures && encodedBytes <= maxBytes;
+  }
+
+  private static long estimatedBytes(List<VectorTile.Feature> features) {
+    long estimate = 0;
+    for (VectorTile.Feature feature : features) {
+      estimate += HighwayOverview.estimateBytes(feature);
+    }
+    return estimate;
+  }
+
+  private static int encodedBytes(List<VectorTile.Feature> features) {
+    return new VectorTile().addLayerFeatures(LAYER, features).encode().length;
+  }
+
+  void logStats(Logger logger) {
+    for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+      long zoomTiles = 0;
+      long zoomBytesBefore = 0;
+      long zoomBytesAfter = 0;
+      for (int level = 0; level < levelNames.size(); level++) {
+        long tiles = tilesByLevel[zoom][level].sum();
+        if (tiles > 0) {
+          long bytesBefore = bytesBeforeByLevel[zoom][level].sum();
+          long bytesAfter = bytesAfterByLevel[zoom][level].sum();
+          logger.info("z{} tile budget level {} ({}): {} tiles, {} -> {} bytes", zoom, level, levelNames.get(level),
+            tiles, bytesBefore, bytesAfter);
+          zoomTiles += tiles;
+          zoomBytesBefore += bytesBefore;
+          zoomBytesAfter += bytesAfter;
+        }
+      }
+      if (zoomTiles > 0) {
+        logger.info("z{} tile budget: {} tiles degraded, {} -> {} bytes", zoom, zoomTiles, zoomBytesBefore,
+          zoomBytesAfter);
+      }
+      if (overBudget[zoom].sum() > 0) {
+        logger.warn("z{}: {} tiles are over the budget of {} bytes and {} features at every level", zoom,
+          overBudget[zoom].sum(), maxBytes, maxFeatures);
+      }
+    }
+  }
+}
@@ -0,0 +1,286 @@
+package com.onthegomap.planetiler.examples;
+
+import com.onthegomap.planetiler.FeatureCollector;
+import com.onthegomap.planetiler.Profile;
+import com.onthegomap.planetiler.VectorTile;
+import com.onthegomap.planetiler.config.PlanetilerConfig;
+import com.onthegomap.planetiler.geo.GeometryException;
+import com.onthegomap.planetiler.geo.TileCoord;
+import com.onthegomap.planetiler.reader.SourceFeature;
+import com.onthegomap.planetiler.render.FeatureRenderer;
+import com.onthegomap.planetiler.render.RenderedFeature;
+import com.onthegomap.planetiler.stats.Stats;
+import com.onthegomap.planetiler.util.Gzip;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.strtree.STRtree;
+
+/**
+ * Renders tiles from stored highway ways outside of a Planetiler run, using the same feature collector, renderer and
+ * {@code postProcessLayerFeatures} hook so the result matches the tiles of a full build.
+ */
+class HighwayTileRenderer {
+
+  /** Extra margin around a tile when looking up candidate ways, as a fraction of the tile size. */
+  private static final double QUERY_MARGIN = 1d / 8;
+
+  private final Profile profile;
+  private final PlanetilerConfig config;
+  private final Stats stats;
+  private final FeatureCollector.Factory featureCollectors;
+  private Map<TileCoord, List<RenderedFeature>> overviewTiles = Map.of();
+  private int overviewMaxZoom = -1;
+
+  HighwayTileRenderer(Profile profile, PlanetilerConfig config, Stats stats) {
+    this.profile = profile;
+    this.config = config;
+    this.stats = stats;
+    this.featureCollectors = new FeatureCollector.Factory(config, stats);
+  }
+
+  /**
+   * Renders the generalized network of major roads for overview zooms from all of {@code ways}, so that the tiles at
+   * those zooms match a full build. Does nothing unless the profile is a {@link SingleHighwayLayer} with an overview.
+   */
+  HighwayTileRenderer withOverview(Collection<HighwayStore.Way> ways) {
+    if (profile instanceof SingleHighwayLayer highwayLayer && highwayLayer.overview() != null) {
+      Map<TileCoord, List<RenderedFeature>> tiles = new TreeMap<>();
+      try (FeatureRenderer renderer = new FeatureRenderer(config,
+        rendered -> tiles.computeIfAbsent(rendered.tile(), tile -> new ArrayList<>()).add(rendered), stats)) {
+        highwayLayer.emitOverview(highwayLayer.overviewLines(ways), featureCollectors, renderer);
+      }
+      this.overviewTiles = tiles;
+      this.overviewMaxZoom = highwayLayer.overview().maxZoom();
+    }
+    return this;
+  }
+
+  /**
+   * Renders the overview of {@code before} and of {@code after} and returns the tiles whose overview features differ
+   * between the two. The overview of {@code after} stays in place for the following renders.
+   */
+  Set<TileCoord> changedOverviewTiles(Collection<HighwayStore.Way> before, Collection<HighwayStore.Way> after)
+    throws GeometryException, IOException {
+    Map<TileCoord, List<RenderedFeature>> previous = withOverview(before).overviewTiles;
+    Map<TileCoord, List<RenderedFeature>> current = withOverview(after).overviewTiles;
+    Set<TileCoord> result = new TreeSet<>();
+    Set<TileCoord> tiles = new TreeSet<>(previous.keySet());
+    tiles.addAll(current.keySet());
+    for (TileCoord tile : tiles) {
+      List<RenderedFeature> previousFeatures = previous.get(tile);
+      List<RenderedFeature> currentFeatures = current.get(tile);
+      if (previousFeatures == null || currentFeatures == null ||
+        !Arrays.equals(encode(tile, previousFeatures), encode(tile, currentFeatures))) {
+        result.add(tile);
+      }
+    }
+    return result;
+  }
+
+  /** Returns the tiles that hold overview features since the last {@link #withOverview} call. */
+  Set<TileCoord> overviewTiles() {
+    return overviewTiles.keySet();
+  }
+
+  /** Runs {@code processFeature} on a stored way and slices the resulting features into tiles. */
+  void render(HighwayStore.Way way, Consumer<RenderedFeature> consumer) {
+    render(way, 0, Integer.MAX_VALUE, consumer);
+  }
+
+  /** Like {@link #render(HighwayStore.Way, Consumer)} but only slices zooms {@code minZoom} to {@code maxZoom}. */
+  void render(HighwayStore.Way way, int minZoom, int maxZoom, Consumer<RenderedFeature> consumer) {
+    SourceFeature sourceFeature = way.toSourceFeature();
+    FeatureCollector features = featureCollectors.get(sourceFeature);
+    profile.processFeature(sourceFeature, features);
+    try (FeatureRenderer renderer = new FeatureRenderer(config, consumer, stats)) {
+      for (FeatureCollector.Feature feature : features) {
+        int featureMinZoom = Math.max(feature.getMinZoom(), minZoom);
+        int featureMaxZoom = Math.min(feature.getMaxZoom(), maxZoom);
+        if (featureMinZoom <= featureMaxZoom) {
+          renderer.accept(feature.setMinZoom(featureMinZoom).setMaxZoom(featureMaxZoom));
+        }
+      }
+    }
+  }
+
+  /** Returns the tiles that contain at least one feature rendered from {@code way}. */
+  Set<TileCoord> tiles(HighwayStore.Way way) {
+    Set<TileCoord> result = new HashSet<>();
+    render(way, rendered -> result.add(rendered.tile()));
+    return result;
+  }
+
+  /** Renders {@code ways} and groups the features that fall into tiles accepted by {@code tileFilter}. */
+  Map<TileCoord, List<RenderedFeature>> renderTiles(Collection<HighwayStore.Way> ways,
+    Predicate<TileCoord> tileFilter) {
+    return renderTiles(ways, 0, Integer.MAX_VALUE, tileFilter);
+  }
+
+  Map<TileCoord, List<RenderedFeature>> renderTiles(Collection<HighwayStore.Way> ways, int minZoom, int maxZoom,
+    Predicate<TileCoord> tileFilter) {
+    Map<TileCoord, List<RenderedFeature>> result = new TreeMap<>();
+    for (HighwayStore.Way way : ways) {
+      render(way, minZoom, maxZoom, rendered -> {
+        if (tileFilter.test(rendered.tile())) {
+          result.computeIfAbsent(rendered.tile(), tile -> new ArrayList<>()).add(rendered);
+        }
+      });
+    }
+    if (minZoom <= overviewMaxZoom) {
+      for (var entry : overviewTiles.entrySet()) {
+        TileCoord tile = entry.getKey();
+        if (tile.z() >= minZoom && tile.z() <= maxZoom && tileFilter.test(tile)) {
+          result.computeIfAbsent(tile, t -> new ArrayList<>()).addAll(entry.getValue());
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Sorts the features of one tile, runs {@code postProcessLayerFeatures} per layer and returns the gzipped tile, or
+   * {@code null} when nothing is left to draw.
+   */
+  byte[] encode(TileCoord tile, List<RenderedFeature> rendered) throws GeometryException, IOException {
+    List<RenderedFeature> sorted = new ArrayList<>(rendered);
+    sorted.sort(Comparator.comparingInt(RenderedFeature::sortKey));
+    Map<String, List<VectorTile.Feature>> layers = new TreeMap<>();
+    for (RenderedFeature feature : sorted) {
+      VectorTile.Feature vectorTileFeature = feature.vectorTileFeature();
+      layers.computeIfAbsent(vectorTileFeature.layer(), layer -> new ArrayList<>()).add(vectorTileFeature);
+    }
+    VectorTile encoder = new VectorTile();
+    boolean empty = true;
+    for (var entry : layers.entrySet()) {
+      List<VectorTile.Feature> features = entry.getValue();
+      List<VectorTile.Feature> processed = profile.postProcessLayerFeatures(entry.getKey(), tile.z(), features);
+      if (processed == null) {
+        processed = features;
+      }
+      if (!processed.isEmpty()) {
+        encoder.addLayerFeatures(entry.getKey(), processed);
+        empty = false;
+      }
+    }
+    return empty ? null : Gzip.gzip(encoder.encode());
+  }
+
+  interface TileSink {
+    void accept(TileCoord tile, byte[] data) throws Exception;
+  }
+
+  /**
+   * Renders every tile of {@code ways} up to {@code maxZoom} into {@code sink}, which is called from one thread at a
+   * time. Zooms up to {@code partitionZoom} are rendered one tile at a time, higher zooms one {@code partitionZoom}
+   * tile at a time, so memory is bounded by the densest partition and work grows with the number of output tiles.
+   */
+  void renderAll(Collection<HighwayStore.Way> ways, int maxZoom, int partitionZoom, int threads, TileSink sink)
+    throws Exception {
+    STRtree index = index(ways);
+    List<Envelope> envelopes = ways.stream().map(HighwayStore.Way::worldEnvelope).toList();
+    List<Callable<Void>> tasks = new ArrayList<>();
+    for (int zoom = 0; zoom <= Math.min(partitionZoom, maxZoom); zoom++) {
+      for (TileCoord partition : coveringTiles(envelopes, zoom)) {
+        tasks.add(() -> renderPartition(index, partition, partition.z(), partition.z(), sink));
+      }
+    }
+    if (maxZoom > partitionZoom) {
+      for (TileCoord partition : coveringTiles(envelopes, partitionZoom)) {
+        tasks.add(() -> renderPartition(index, partition, partitionZoom + 1, maxZoom, sink));
+      }
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+    try {
+      for (Future<Void> result : executor.invokeAll(tasks)) {
+        result.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private Void renderPartition(STRtree index, TileCoord partition, int minZoom, int maxZoom, TileSink sink)
+    throws Exception {
+    Collection<HighwayStore.Way> candidates = candidates(index, List.of(partition));
+    if (candidates.isEmpty()) {
+      return null;
+    }
+    Map<TileCoord, List<RenderedFeature>> tiles = renderTiles(candidates, minZoom, maxZoom,
+      tile -> tile.x() >> (tile.z() - partition.z()) == partition.x() &&
+        tile.y() >> (tile.z() - partition.z()) == partition.y());
+    for (var entry : tiles.entrySet()) {
+      byte[] data = encode(entry.getKey(), entry.getValue());
+      if (data != null) {
+        synchronized (sink) {
+          sink.accept(entry.getKey(), data);
+        }
+      }
+    }
+    return null;
+  }
+
+  /** Returns the tiles at {@code zoom} that come near at least one of {@code envelopes}. */
+  static Set<TileCoord> coveringTiles(Collection<Envelope> envelopes, int zoom) {
+    Set<TileCoord> result = new TreeSet<>();
+    int tiles = 1 << zoom;
+    for (Envelope envelope : envelopes) {
+      double margin = QUERY_MARGIN / tiles;
+      int minX = Math.max(0, (int) Math.floor((envelope.getMinX() - margin) * tiles));
+      int maxX = Math.min(tiles - 1, (int) Math.floor((envelope.getMaxX() + margin) * tiles));
+      int minY = Math.max(0, (int) Math.floor((envelope.getMinY() - margin) * tiles));
+      int maxY = Math.min(tiles - 1, (int) Math.floor((envelope.getMaxY() + margin) * tiles));
+      for (int x = minX; x <= maxX; x++) {
+        for (int y = minY; y <= maxY; y++) {
+          result.add(TileCoord.ofXYZ(x, y, zoom));
+        }
+      }
+    }
+    return result;
+  }
+
+  static Envelope tileEnvelope(TileCoord tile) {
+    double size = 1d / (1 << tile.z());
+    double margin = size * QUERY_MARGIN;
+    return new Envelope(
+      tile.x() * size - margin, (tile.x() + 1) * size + margin,
+      tile.y() * size - margin, (tile.y() + 1) * size + margin
+    );
+  }
+
+  static STRtree index(Collection<HighwayStore.Way> ways) {
+    STRtree index = new STRtree();
+    for (HighwayStore.Way way : ways) {
+      index.insert(way.worldEnvelope(), way);
+    }
+    index.build();
+    return index;
+  }
+
+  /** Returns the ways of {@code index} whose bounds come near any of {@code tiles}. */
+  @SuppressWarnings("unchecked")
+  static Collection<HighwayStore.Way> candidates(STRtree index, Collection<TileCoord> tiles) {
+    Map<Long, HighwayStore.Way> result = new TreeMap<>();
+    for (TileCoord tile : tiles) {
+      for (HighwayStore.Way way : (List<HighwayStore.Way>) index.query(tileEnvelope(tile))) {
+        result.put(way.id(), way);
+      }
+    }
+    return result.values();
+  }
+}
@@ -0,0 +1,383 @@
+package com.onthegomap.planetiler.examples;
+
+import com.onthegomap.planetiler.config.Arguments;
+import com.onthegomap.planetiler.config.PlanetilerConfig;
+import com.onthegomap.planetiler.geo.GeoUtils;
+import com.onthegomap.planetiler.geo.TileCoord;
+import com.onthegomap.planetiler.reader.SimpleFeature;
+import com.onthegomap.planetiler.reader.SourceFeature;
+import com.onthegomap.planetiler.render.RenderedFeature;
+import com.onthegomap.planetiler.stats.Stats;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.GZIPInputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies an OSM change file ({@code .osc} or {@code .osc.gz}) to a tileset built with {@code --highway_store}: works
+ * out the tiles touched by changed highway ways and moved nodes, re-renders only those tiles through
+ * {@link SingleHighwayLayer} and patches them into the mbtiles file.
+ * <p>
+ * Node locations come from the diff itself or from the highway store, so a way that turns into a highway while reusing
+ * nodes that neither the diff nor any stored highway mentions is skipped with a warning, and a stored way whose change
+ * refers to such nodes keeps its stored version.
+ * <p>
+ * The store is read sequentially, once to find the affected ways, once to find the unchanged ways near the touched
+ * tiles and once to rewrite it. Only the changed ways, those candidates and the ways of the overview network are
+ * held in memory.
+ */
+public class HighwayUpdate {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HighwayUpdate.class);
+
+  record NodeChange(long id, boolean deleted, long location) {}
+
+  record WayChange(long id, boolean deleted, long[] nodes, Map<String, Object> tags) {}
+
+  record Changes(Map<Long, NodeChange> nodes, Map<Long, WayChange> ways) {}
+
+  private final SingleHighwayLayer profile;
+  private final HighwayTileRenderer renderer;
+  private final Stats stats;
+  private final Path store;
+  /** The affected ways by id, in the order they are appended to the store, mapped to {@code null} when removed. */
+  private final Map<Long, HighwayStore.Way> changed = new LinkedHashMap<>();
+  private long skippedWays = 0;
+
+  HighwayUpdate(SingleHighwayLayer profile, HighwayTileRenderer renderer, Stats stats, Path store) {
+    this.profile = profile;
+    this.renderer = renderer;
+    this.stats = stats;
+    this.store = store;
+  }
+
+  public static void main(String[] args) throws Exception {
+    run(Arguments.fromArgsOrConfigFile(args));
+  }
+
+  static void run(Arguments args) throws Exception {
+    Path osc = args.inputFile("osc", "OSM change file to apply", Path.of("data", "changes.osc"));
+    Path store = args.inputFile("highway_store", "highway store written by the initial build",
+      Path.of("data", "single-highway-layer.store"));
+    Path mbtiles = args.inputFile("mbtiles", "mbtiles file to patch", Path.of("data", "single-highway-layer.mbtiles"));
+    String pmtiles = args.getString("pmtiles", "pmtiles file to rewrite after patching, empty to skip",
+      Path.of("data", "single-highway-layer.pmtiles").toString());
+
+    long start = System.nanoTime();
+    Stats stats = Stats.inMemory();
+    SingleHighwayLayer profile = new SingleHighwayLayer(SingleHighwayLayer.styles(args), args, stats);
+    HighwayTileRenderer renderer = new HighwayTileRenderer(profile, PlanetilerConfig.from(args), stats);
+    HighwayUpdate update = new HighwayUpdate(profile, renderer, stats, store);
+
+    Changes changes = parse(osc);
+    Set<TileCoord> touched = update.apply(changes);
+    LOGGER.info("{} node and {} way changes touch {} tiles ({} ways skipped)", changes.nodes().size(),
+      changes.ways().size(), touched.size(), update.skippedWays);
+
+    int written = 0;
+    int removed = 0;
+    try (MbtilesArchive archive = MbtilesArchive.open(mbtiles)) {
+      archive.beginTransaction();
+      for (var entry : update.render(touched).entrySet()) {
+        TileCoord tile = entry.getKey();
+        archive.putTile(tile.z(), tile.x(), tile.y(), entry.getValue());
+        if (entry.getValue() == null) {
+          removed++;
+        } else {
+          written++;
+        }
+      }
+      archive.deleteUnusedTileData();
+      archive.commit();
+    }
+    update.writeStore();
+    LOGGER.info("Patched {} tiles and removed {} empty tiles in {} ms", written, removed,
+      (System.nanoTime() - start) / 1_000_000);
+
+    if (!pmtiles.isBlank()) {
+      PmtilesWriter.convert(mbtiles, Path.of(pmtiles), TileCodec.fromArguments(args, mbtiles));
+    }
+  }
+
+  /**
+   * Works out the changed ways in one pass over the store and returns every tile that held or now holds one of them.
+   * When one of the major roads of the overview changed, this includes the overview tiles whose generalized roads
+   * differ after the change.
+   */
+  Set<TileCoord> apply(Changes changes) throws Exception {
+    Set<Long> needed = neededNodes(changes);
+    Map<Long, Long> locations = new HashMap<>();
+    Map<Long, HighwayStore.Way> old = new HashMap<>();
+    List<HighwayStore.Way> overviewBefore = new ArrayList<>();
+    HighwayStore.forEach(store, way -> {
+      boolean affected = changes.ways().containsKey(way.id());
+      long[] nodes = way.nodes();
+      for (int i = 0; i < nodes.length; i++) {
+        affected |= changes.nodes().containsKey(nodes[i]);
+        if (needed.contains(nodes[i])) {
+          locations.put(nodes[i], way.locations()[i]);
+        }
+      }
+      if (affected) {
+        old.put(way.id(), way);
+      }
+      if (profile.inOverview(way)) {
+        overviewBefore.add(way);
+      }
+    });
+
+    Set<Long> affected = new TreeSet<>(changes.ways().keySet());
+    affected.addAll(old.keySet());
+    Set<TileCoord> touched = new HashSet<>();
+    boolean overviewChanged = false;
+    for (long id : affected) {
+      HighwayStore.Way oldWay = old.get(id);
+      if (oldWay != null) {
+        touched.addAll(renderer.tiles(oldWay));
+      }
+      HighwayStore.Way updated = updatedWay(id, oldWay, changes, locations);
+      changed.put(id, updated);
+      if (updated != null) {
+        touched.addAll(renderer.tiles(updated));
+      }
+      if (updated != oldWay && (oldWay != null && profile.inOverview(oldWay) ||
+        updated != null && profile.inOverview(updated))) {
+        overviewChanged = true;
+      }
+    }
+
+    if (overviewChanged) {
+      List<HighwayStore.Way> overviewAfter = new ArrayList<>();
+      for (HighwayStore.Way way : overviewBefore) {
+        if (!changed.containsKey(way.id())) {
+          overviewAfter.add(way);
+        }
+      }
+      for (HighwayStore.Way way : changed.values()) {
+        if (way != null && profile.inOverview(way)) {
+          overviewAfter.add(way);
+        }
+      }
+      touched.addAll(renderer.changedOverviewTiles(overviewBefore, overviewAfter));
+    } else if (profile.overview() != null &&
+      touched.stream().anyMatch(tile -> tile.z() <= profile.overview().maxZoom())) {
+      // the overview is unchanged but still drawn into the touched overview tiles
+      renderer.withOverview(overviewBefore);
+    }
+    return touched;
+  }
+
+  /** Renders the current ways into {@code tiles}; tiles mapped to {@code null} are now empty. */
+  Map<TileCoord, byte[]> render(Set<TileCoord> tiles) throws Exception {
+    STRtree tileIndex = new STRtree();
+    for (TileCoord tile : tiles) {
+      tileIndex.insert(HighwayTileRenderer.tileEnvelope(tile), tile);
+    }
+    Map<Long, HighwayStore.Way> candidates = new TreeMap<>();
+    HighwayStore.forEach(store, way -> {
+      if (!changed.containsKey(way.id()) && drawnInto(tileIndex, way)) {
+        candidates.put(way.id(), way);
+      }
+    });
+    for (HighwayStore.Way way : changed.values()) {
+      if (way != null && drawnInto(tileIndex, way)) {
+        candidates.put(way.id(), way);
+      }
+    }
+    LOGGER.info("Rendering {} tiles from {} ways", tiles.size(), candidates.size());
+    Map<TileCoord, List<RenderedFeature>> rendered = renderer.renderTiles(candidates.values(), tiles::contains);
+    Map<TileCoord, byte[]> result = new LinkedHashMap<>();
+    for (TileCoord tile : new TreeSet<>(tiles)) {
+      List<RenderedFeature> features = rendered.get(tile);
+      result.put(tile, features == null ? null : renderer.encode(tile, features));
+    }
+    return result;
+  }
+
+  /**
+   * Returns whether {@code way} comes near one of the tiles of {@code tileIndex} at a zoom where it is drawn from its
+   * own geometry, leaving out the major roads at zooms that only draw the overview.
+   */
+  @SuppressWarnings("unchecked")
+  private boolean drawnInto(STRtree tileIndex, HighwayStore.Way way) {
+    int minZoom = profile.rawMinZoom(way);
+    for (TileCoord tile : (List<TileCoord>) tileIndex.query(way.worldEnvelope())) {
+      if (tile.z() >= minZoom) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Rewrites the store with the unchanged ways in their order, followed by the updated ways. */
+  void writeStore() throws IOException {
+    try (HighwayStore.Writer writer = new HighwayStore.Writer(store)) {
+      HighwayStore.forEach(store, way -> {
+        if (!changed.containsKey(way.id())) {
+          writer.write(way);
+        }
+      });
+      for (HighwayStore.Way way : changed.values()) {
+        if (way != null) {
+          writer.write(way);
+        }
+      }
+      writer.commit();
+    }
+  }
+
+  /**
+   * Returns the way after the change, {@code null} when it is no longer a highway, or {@code old} when the location of
+   * one of its nodes is unknown.
+   */
+  private HighwayStore.Way updatedWay(long id, HighwayStore.Way old, Changes changes, Map<Long, Long> locations) {
+    WayChange change = changes.ways().get(id);
+    if (change != null && change.deleted()) {
+      return null;
+    }
+    long[] nodes;
+    String highway;
+    boolean isBridge;
+    boolean isTunnel;
+    int layer;
+    if (change != null) {
+      Object value = change.tags().get("highway");
+      if (value == null || !profile.isHighwayClass(value.toString()) || change.nodes().length < 2) {
+        return null;
+      }
+      SourceFeature tags =
+        SimpleFeature.create(GeoUtils.JTS_FACTORY.createPoint(new Coordinate(0, 0)), change.tags());
+      nodes = change.nodes();
+      highway = value.toString();
+      isBridge = HighwayTags.isBridge(tags);
+      isTunnel = HighwayTags.isTunnel(tags);
+      layer = HighwayTags.layer(tags, stats);
+    } else {
+      nodes = old.nodes();
+      highway = old.highway();
+      isBridge = old.isBridge();
+      isTunnel = old.isTunnel();
+      layer = old.layer();
+    }
+
+    long[] nodeLocations = new long[nodes.length];
+    for (int i = 0; i < nodes.length; i++) {
+      NodeChange node = changes.nodes().get(nodes[i]);
+      if (node != null && !node.deleted()) {
+        nodeLocations[i] = node.location();
+        continue;
+      }
+      if (node == null && old != null && i < old.nodes().length && old.nodes()[i] == nodes[i]) {
+        nodeLocations[i] = old.locations()[i];
+        continue;
+      }
+      Long location = node == null ? locations.get(nodes[i]) : null;
+      if (location == null) {
+        LOGGER.warn("Skipping the change of way {}: location of node {} is unknown", id, nodes[i]);
+        skippedWays++;
+        return old;
+      }
+      nodeLocations[i] = location;
+    }
+    return new HighwayStore.Way(id, highway, isBridge, isTunnel, layer, nodes, nodeLocations);
+  }
+
+  /** Returns the nodes that changed ways refer to but the diff does not move, whose locations come from the store. */
+  private static Set<Long> neededNodes(Changes changes) {
+    Set<Long> needed = new HashSet<>();
+    for (WayChange change : changes.ways().values()) {
+      for (long node : change.nodes()) {
+        if (!changes.nodes().containsKey(node)) {
+          needed.add(node);
+        }
+      }
+    }
+    return needed;
+  }
+
+  static Changes parse(Path path) throws IOException, XMLStreamException {
+    try (InputStream file = new BufferedInputStream(Files.newInputStream(path), 1 << 16)) {
+      InputStream in = path.getFileName().toString().endsWith(".gz") ? new GZIPInputStream(file, 1 << 16) : file;
+      return parse(in);
+    }
+  }
+
+  static Changes parse(InputStream in) throws XMLStreamException {
+    Map<Long, NodeChange> nodes = new HashMap<>();
+    Map<Long, WayChange> ways = new HashMap<>();
+    XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(in);
+    try {
+      boolean deleted = false;
+      long wayId = 0;
+      List<Long> wayNodes = null;
+      Map<String, Object> wayTags = null;
+      while (reader.hasNext()) {
+        int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          switch (reader.getLocalName()) {
+            case "create", "modify" -> deleted = false;
+            case "delete" -> deleted = true;
+            case "node" -> {
+              long id = Long.parseLong(reader.getAttributeValue(null, "id"));
+              String lat = reader.getAttributeValue(null, "lat");
+              String lon = reader.getAttributeValue(null, "lon");
+              if (deleted || lat == null || lon == null) {
+                nodes.put(id, new NodeChange(id, true, 0));
+              } else {
+                nodes.put(id, new NodeChange(id, false,
+                  GeoUtils.encodeFlatLocation(Double.parseDouble(lon), Double.parseDouble(lat))));
+              }
+            }
+            case "way" -> {
+              wayId = Long.parseLong(reader.getAttributeValue(null, "id"));
+              wayNodes = new ArrayList<>();
+              wayTags = new HashMap<>();
+            }
+            case "nd" -> {
+              if (wayNodes != null) {
+                wayNodes.add(Long.parseLong(reader.getAttributeValue(null, "ref")));
+              }
+            }
+            case "tag" -> {
+              if (wayTags != null) {
+                wayTags.put(reader.getAttributeValue(null, "k"), reader.getAttributeValue(null, "v"));
+              }
+            }
+            default -> {
+            }
+          }
+        } else if (event == XMLStreamConstants.END_ELEMENT && "way".equals(reader.getLocalName())) {
+          long[] refs = new long[wayNodes.size()];
+          for (int i = 0; i < refs.length; i++) {
+            refs[i] = wayNodes.get(i);
+          }
+          ways.put(wayId, new WayChange(wayId, deleted, refs, wayTags));
+          wayNodes = null;
+          wayTags = null;
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    return new Changes(nodes, ways);
+  }
+}
@@ -0,0 +1,37 @@
+package com.onthegomap.planetiler.examples;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/** An extra tileset rendered from the same OSM read with its own style tables. */
+record HighwayVariant(String name, Path styleFile, Path mbtiles, Path pmtiles, Path style, Path paletteStyle) {
+
+  /**
+   * Parses {@code "dark:styles/dark.properties,high-contrast:styles/high-contrast.properties"} into variants whose
+   * outputs are named after the primary {@code mbtiles} file with the variant name appended.
+   */
+  static List<HighwayVariant> parse(String spec, Path mbtiles) {
+    List<HighwayVariant> result = new ArrayList<>();
+    if (spec == null || spec.isBlank()) {
+      return result;
+    }
+    String base = mbtiles.getFileName().toString().replaceFirst("\\.mbtiles$", "");
+    for (String entry : spec.split(",")) {
+      String[] parts = entry.trim().split(":", 2);
+      if (parts.length != 2 || parts[0].isBlank()) {
+        throw new IllegalArgumentException("Expected name:style.properties but got " + entry);
+      }
+      String name = parts[0].trim();
+      result.add(new HighwayVariant(
+        name,
+        Path.of(parts[1].trim()),
+        mbtiles.resolveSibling(base + "-" + name + ".mbtiles"),
+        mbtiles.resolveSibling(base + "-" + name + ".pmtiles"),
+        Path.of("style-" + name + ".json"),
+        Path.of("style-palette-" + name + ".json")
+      ));
+    }
+    return result;
+  }
+}
@@ -0,0 +1,165 @@
+package com.onthegomap.planetiler.examples;
+
+/** String helpers for the hand-written JSON this project emits. */
+class Json {
+
+  private Json() {}
+
+  static String string(String value) {
+    if (value == null) {
+      return "null";
+    }
+    StringBuilder result = new StringBuilder("\"");
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"' -> result.append("\\\"");
+        case '\\' -> result.append("\\\\");
+        case '\n' -> result.append("\\n");
+        default -> {
+          if (c < 0x20) {
+            result.append(String.format("\\u%04x", (int) c));
+          } else {
+            result.append(c);
+          }
+        }
+      }
+    }
+    return result.append('"').toString();
+  }
+
+  static String value(Object value) {
+    if (value == null) {
+      return "null";
+    }
+    return value instanceof Number || value instanceof Boolean ? value.toString() : string(value.toString());
+  }
+
+  /** Returns whether {@code json} is exactly one well-formed JSON value, e.g. before splicing it into other JSON. */
+  static boolean isValid(String json) {
+    if (json == null) {
+      return false;
+    }
+    Validator validator = new Validator(json);
+    try {
+      validator.value();
+      validator.skipWhitespace();
+      return validator.position == json.length();
+    } catch (IllegalArgumentException | StringIndexOutOfBoundsException e) {
+      return false;
+    }
+  }
+
+  private static class Validator {
+
+    private final String json;
+    private int position = 0;
+
+    Validator(String json) {
+      this.json = json;
+    }
+
+    void skipWhitespace() {
+      while (position < json.length() && " \t\r\n".indexOf(json.charAt(position)) >= 0) {
+        position++;
+      }
+    }
+
+    void expect(char c) {
+      skipWhitespace();
+      if (json.charAt(position++) != c) {
+        throw new IllegalArgumentException("Expected " + c + " at " + (position - 1));
+      }
+    }
+
+    void value() {
+      skipWhitespace();
+      char c = json.charAt(position);
+      switch (c) {
+        case '{' -> object();
+        case '[' -> array();
+        case '"' -> string();
+        case 't' -> literal("true");
+        case 'f' -> literal("false");
+        case 'n' -> literal("null");
+        default -> number();
+      }
+    }
+
+    private void object() {
+      expect('{');
+      skipWhitespace();
+      if (json.charAt(position) == '}') {
+        position++;
+        return;
+      }
+      do {
+        skipWhitespace();
+        string();
+        expect(':');
+        value();
+        skipWhitespace();
+      } while (json.charAt(position++) == ',');
+      if (json.charAt(position - 1) != '}') {
+        throw new IllegalArgumentException("Unterminated object");
+      }
+    }
+
+    private void array() {
+      expect('[');
+      skipWhitespace();
+      if (json.charAt(position) == ']') {
+        position++;
+        return;
+      }
+      do {
+        value();
+        skipWhitespace();
+      } while (json.charAt(position++) == ',');
+      if (json.charAt(position - 1) != ']') {
+        throw new IllegalArgumentException("Unterminated array");
+      }
+    }
+
+    private void string() {
+      if (json.charAt(position++) != '"') {
+        throw new IllegalArgumentException("Expected a string at " + (position - 1));
+      }
+      char c;
+      while ((c = json.charAt(position++)) != '"') {
+        if (c < 0x20) {
+          throw new IllegalArgumentException("Control character in string");
+        } else if (c == '\\') {
+          char escaped = json.charAt(position++);
+          if (escaped == 'u') {
+            for (int i = 0; i < 4; i++) {
+              if (Character.digit(json.charAt(position++), 16) < 0) {
+                throw new IllegalArgumentException("Malformed unicode escape");
+              }
+            }
+          } else if ("\"\\/bfnrt".indexOf(escaped) < 0) {
+            throw new IllegalArgumentException("Malformed escape");
+          }
+        }
+      }
+    }
+
+    private void literal(String literal) {
+      if (!json.startsWith(literal, position)) {
+        throw new IllegalArgumentException("Expected " + literal);
+      }
+      position += literal.length();
+    }
+
+    private void number() {
+      int start = position;
+      while (position < json.length() && "+-0123456789.eE".indexOf(json.charAt(position)) >= 0) {
+        position++;
+      }
+      String number = json.substring(start, position);
+      if (!number.matches("-?(0|[1-9][0-9]*)(\\.[0-9]+)?([eE][+-]?[0-9]+)?")) {
+        throw new IllegalArgumentException("Malformed number " + number);
+      }
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package com.onthegomap.planetiler.examples;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** Lock-free latency histogram with fixed buckets that renders in the Prometheus text format. */
+class LatencyHistogram {
+
+  static final double[] DEFAULT_BUCKETS_SECONDS = {
+    0.00005, 0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+  };
+
+  private final double[] bucketsSeconds;
+  private final long[] bucketsNanos;
+  private final LongAdder[] counts;
+  private final LongAdder sumNanos = new LongAdder();
+
+  LatencyHistogram() {
+    this(DEFAULT_BUCKETS_SECONDS);
+  }
+
+  LatencyHistogram(double[] bucketsSeconds) {
+    this.bucketsSeconds = bucketsSeconds.clone();
+    this.bucketsNanos = new long[bucketsSeconds.length];
+    this.counts = new LongAdder[bucketsSeconds.length + 1];
+    for (int i = 0; i < bucketsSeconds.length; i++) {
+      bucketsNanos[i] = (long) (bucketsSeconds[i] * 1e9);
+    }
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = new LongAdder();
+    }
+  }
+
+  void record(long nanos) {
+    int bucket = 0;
+    while (bucket < bucketsNanos.length && nanos > bucketsNanos[bucket]) {
+      bucket++;
+    }
+    counts[bucket].increment();
+    sumNanos.add(nanos);
+  }
+
+  long count() {
+    long result = 0;
+    for (LongAdder count : counts) {
+      result += count.sum();
+    }
+    return result;
+  }
+
+  /** Returns the upper bound in seconds of the bucket holding the {@code quantile}, or infinity past the last one. */
+  double quantileUpperBound(double quantile) {
+    long total = count();
+    long target = (long) Math.ceil(total * quantile);
+    long seen = 0;
+    for (int i = 0; i < bucketsSeconds.length; i++) {
+      seen += counts[i].sum();
+      if (seen >= target && total > 0) {
+        return bucketsSeconds[i];
+      }
+    }
+    return Double.POSITIVE_INFINITY;
+  }
+
+  void writePrometheus(StringBuilder out, String name, String help, String labels) {
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(name).append(" histogram\n");
+    writePrometheusSamples(out, name, labels);
+  }
+
+  /** Writes only the samples, for histograms that share one name and header across several label sets. */
+  void writePrometheusSamples(StringBuilder out, String name, String labels) {
+    String labelPrefix = labels == null || labels.isEmpty() ? "" : labels + ",";
+    String labelSet = labels == null || labels.isEmpty() ? "" : "{" + labels + "}";
+    long cumulative = 0;
+    for (int i = 0; i < bucketsSeconds.length; i++) {
+      cumulative += counts[i].sum();
+      out.append(name).append("_bucket{").append(labelPrefix).append("le=\"").append(bucketsSeconds[i])
+        .append("\"} ").append(cumulative).append('\n');
+    }
+    cumulative += counts[bucketsSeconds.length].sum();
+    out.append(name).append("_bucket{").append(labelPrefix).append("le=\"+Inf\"} ").append(cumulative).append('\n');
+    out.append(name).append("_sum").append(labelSet).append(' ').append(sumNanos.sum() / 1e9).append('\n');
+    out.append(name).append("_count").append(labelSet).append(' ').append(cumulative).append('\n');
+  }
+}
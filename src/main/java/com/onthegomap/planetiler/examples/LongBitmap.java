@@ -0,0 +1,64 @@
+package com.onthegomap.planetiler.examples;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Thread-safe set of non-negative longs stored as one bit each. Pages of 1M ids (128 kB) are allocated on first use,
+ * so a bitmap over OSM node ids only takes memory for the id ranges that are actually set. The node ids of a small
+ * extract are spread over the whole id range, so larger pages would cost far more than the ids they hold.
+ */
+class LongBitmap {
+
+  private static final int PAGE_BITS = 20;
+  private static final long PAGE_MASK = (1L << PAGE_BITS) - 1;
+  private static final int WORDS_PER_PAGE = 1 << (PAGE_BITS - 6);
+
+  private final AtomicReferenceArray<AtomicLongArray> pages;
+
+  LongBitmap(long maxValue) {
+    this.pages = new AtomicReferenceArray<>((int) (maxValue >>> PAGE_BITS) + 1);
+  }
+
+  void set(long value) {
+    AtomicLongArray page = page((int) (value >>> PAGE_BITS));
+    int word = (int) ((value & PAGE_MASK) >>> 6);
+    long bit = 1L << value;
+    long current = page.get(word);
+    while ((current & bit) == 0 && !page.weakCompareAndSetVolatile(word, current, current | bit)) {
+      current = page.get(word);
+    }
+  }
+
+  boolean contains(long value) {
+    int pageIndex = (int) (value >>> PAGE_BITS);
+    if (value < 0 || pageIndex >= pages.length()) {
+      return false;
+    }
+    AtomicLongArray page = pages.get(pageIndex);
+    return page != null && (page.get((int) ((value & PAGE_MASK) >>> 6)) & (1L << value)) != 0;
+  }
+
+  /** Returns the bytes held by allocated pages. */
+  long bytes() {
+    long result = 0;
+    for (int i = 0; i < pages.length(); i++) {
+      if (pages.get(i) != null) {
+        result += WORDS_PER_PAGE * 8L;
+      }
+    }
+    return result;
+  }
+
+  private AtomicLongArray page(int index) {
+    if (index >= pages.length()) {
+      throw new IllegalArgumentException("Value outside bitmap: page " + index + " of " + pages.length());
+    }
+    AtomicLongArray page = pages.get(index);
+    if (page == null) {
+      pages.compareAndSet(index, null, new AtomicLongArray(WORDS_PER_PAGE));
+      page = pages.get(index);
+    }
+    return page;
+  }
+}
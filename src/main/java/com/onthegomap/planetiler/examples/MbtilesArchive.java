@@ -0,0 +1,251 @@
+package com.onthegomap.planetiler.examples;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/** Minimal JDBC access to an mbtiles file written by Planetiler. Not thread-safe. */
+class MbtilesArchive implements AutoCloseable {
+
+  private final Connection connection;
+  private PreparedStatement getTileStatement;
+  private Boolean compact;
+  private long nextTileDataId = 0;
+
+  private MbtilesArchive(Connection connection) {
+    this.connection = connection;
+  }
+
+  static MbtilesArchive open(Path path) throws SQLException {
+    return new MbtilesArchive(DriverManager.getConnection("jdbc:sqlite:" + path.toAbsolutePath()));
+  }
+
+  /** Creates an empty mbtiles file at {@code path}, replacing any existing file, with the given metadata. */
+  static MbtilesArchive create(Path path, Map<String, String> metadata) throws SQLException, IOException {
+    Files.deleteIfExists(path);
+    MbtilesArchive archive = open(path);
+    try (Statement statement = archive.connection.createStatement()) {
+      statement.execute("CREATE TABLE metadata (name TEXT, value TEXT)");
+      statement.execute("CREATE UNIQUE INDEX name ON metadata (name)");
+      statement.execute(
+        "CREATE TABLE tiles (zoom_level INTEGER, tile_column INTEGER, tile_row INTEGER, tile_data BLOB)");
+      statement.execute("CREATE UNIQUE INDEX tile_index ON tiles (zoom_level, tile_column, tile_row)");
+    }
+    for (var entry : metadata.entrySet()) {
+      archive.setMetadata(entry.getKey(), entry.getValue());
+    }
+    return archive;
+  }
+
+  String getMetadata(String name) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement("SELECT value FROM metadata WHERE name = ?")) {
+      statement.setString(1, name);
+      try (ResultSet result = statement.executeQuery()) {
+        return result.next() ? result.getString(1) : null;
+      }
+    }
+  }
+
+  void setMetadata(String name, String value) throws SQLException {
+    try (PreparedStatement delete = connection.prepareStatement("DELETE FROM metadata WHERE name = ?")) {
+      delete.setString(1, name);
+      delete.execute();
+    }
+    try (PreparedStatement insert = connection.prepareStatement("INSERT INTO metadata (name, value) VALUES (?, ?)")) {
+      insert.setString(1, name);
+      insert.setString(2, value);
+      insert.execute();
+    }
+  }
+
+  Map<String, String> metadata() throws SQLException {
+    Map<String, String> result = new LinkedHashMap<>();
+    try (
+      PreparedStatement statement = connection.prepareStatement("SELECT name, value FROM metadata");
+      ResultSet rows = statement.executeQuery()
+    ) {
+      while (rows.next()) {
+        result.put(rows.getString(1), rows.getString(2));
+      }
+    }
+    return result;
+  }
+
+  record Tile(int z, int x, int y, byte[] data) {}
+
+  /** Returns the x and y of all tiles at {@code z}, packed as {@code x << 32 | y}. */
+  long[] tileCoordinates(int z) throws SQLException {
+    long[] result = new long[1024];
+    int count = 0;
+    try (PreparedStatement statement = connection.prepareStatement(
+      "SELECT tile_column, tile_row FROM tiles WHERE zoom_level = ?")) {
+      statement.setInt(1, z);
+      try (ResultSet rows = statement.executeQuery()) {
+        while (rows.next()) {
+          if (count == result.length) {
+            result = Arrays.copyOf(result, count * 2);
+          }
+          long x = rows.getInt(1);
+          long y = (1 << z) - 1 - rows.getInt(2);
+          result[count++] = (x << 32) | y;
+        }
+      }
+    }
+    return Arrays.copyOf(result, count);
+  }
+
+  interface TileConsumer {
+    void accept(Tile tile) throws Exception;
+  }
+
+  /** Streams all tiles in XYZ coordinates, flipping the TMS rows mbtiles stores. */
+  void forEachTile(TileConsumer consumer) throws Exception {
+    try (
+      PreparedStatement statement = connection.prepareStatement(
+        "SELECT zoom_level, tile_column, tile_row, tile_data FROM tiles");
+      ResultSet result = statement.executeQuery()
+    ) {
+      while (result.next()) {
+        int z = result.getInt(1);
+        int x = result.getInt(2);
+        int y = (1 << z) - 1 - result.getInt(3);
+        consumer.accept(new Tile(z, x, y, result.getBytes(4)));
+      }
+    }
+  }
+
+  byte[] getTile(int z, int x, int y) throws SQLException {
+    if (getTileStatement == null) {
+      getTileStatement = connection.prepareStatement(
+        "SELECT tile_data FROM tiles WHERE zoom_level = ? AND tile_column = ? AND tile_row = ?");
+    }
+    getTileStatement.setInt(1, z);
+    getTileStatement.setInt(2, x);
+    getTileStatement.setInt(3, (1 << z) - 1 - y);
+    try (ResultSet result = getTileStatement.executeQuery()) {
+      return result.next() ? result.getBytes(1) : null;
+    }
+  }
+
+  /** Replaces the tile at {@code z/x/y}, or removes it when {@code data} is {@code null}. */
+  void putTile(int z, int x, int y, byte[] data) throws SQLException {
+    int row = (1 << z) - 1 - y;
+    boolean compact = isCompact();
+    try (PreparedStatement delete = connection.prepareStatement(
+      "DELETE FROM " + (compact ? "tiles_shallow" : "tiles") +
+        " WHERE zoom_level = ? AND tile_column = ? AND tile_row = ?")) {
+      delete.setInt(1, z);
+      delete.setInt(2, x);
+      delete.setInt(3, row);
+      delete.execute();
+    }
+    if (data == null) {
+      return;
+    }
+    if (!compact) {
+      try (PreparedStatement insert = connection.prepareStatement(
+        "INSERT INTO tiles (zoom_level, tile_column, tile_row, tile_data) VALUES (?, ?, ?, ?)")) {
+        insert.setInt(1, z);
+        insert.setInt(2, x);
+        insert.setInt(3, row);
+        insert.setBytes(4, data);
+        insert.execute();
+      }
+      return;
+    }
+    if (nextTileDataId == 0) {
+      try (
+        PreparedStatement statement =
+          connection.prepareStatement("SELECT coalesce(max(tile_data_id), 0) + 1 FROM tiles_data");
+        ResultSet result = statement.executeQuery()
+      ) {
+        result.next();
+        nextTileDataId = result.getLong(1);
+      }
+    }
+    long dataId = nextTileDataId++;
+    try (PreparedStatement insert = connection.prepareStatement(
+      "INSERT INTO tiles_data (tile_data_id, tile_data) VALUES (?, ?)")) {
+      insert.setLong(1, dataId);
+      insert.setBytes(2, data);
+      insert.execute();
+    }
+    try (PreparedStatement insert = connection.prepareStatement(
+      "INSERT INTO tiles_shallow (zoom_level, tile_column, tile_row, tile_data_id) VALUES (?, ?, ?, ?)")) {
+      insert.setInt(1, z);
+      insert.setInt(2, x);
+      insert.setInt(3, row);
+      insert.setLong(4, dataId);
+      insert.execute();
+    }
+  }
+
+  void deleteAllTiles() throws SQLException {
+    for (String table : isCompact() ? new String[]{"tiles_shallow", "tiles_data"} : new String[]{"tiles"}) {
+      try (PreparedStatement delete = connection.prepareStatement("DELETE FROM " + table)) {
+        delete.execute();
+      }
+    }
+    nextTileDataId = 0;
+  }
+
+  /** Drops tile contents of a compact mbtiles file that no tile refers to anymore. */
+  void deleteUnusedTileData() throws SQLException {
+    if (isCompact()) {
+      try (PreparedStatement delete = connection.prepareStatement(
+        "DELETE FROM tiles_data WHERE tile_data_id NOT IN (SELECT tile_data_id FROM tiles_shallow)")) {
+        delete.execute();
+      }
+    }
+  }
+
+  private boolean isCompact() throws SQLException {
+    if (compact == null) {
+      try (
+        PreparedStatement statement = connection.prepareStatement(
+          "SELECT count(*) FROM sqlite_master WHERE type = 'table' AND name = 'tiles_shallow'");
+        ResultSet result = statement.executeQuery()
+      ) {
+        compact = result.next() && result.getInt(1) > 0;
+      }
+    }
+    return compact;
+  }
+
+  void beginTransaction() throws SQLException {
+    connection.setAutoCommit(false);
+  }
+
+  void commit() throws SQLException {
+    connection.commit();
+    connection.setAutoCommit(true);
+  }
+
+  static byte[] gunzipIfNeeded(byte[] data) throws IOException {
+    if (data.length < 2 || (data[0] & 0xFF) != 0x1F || (data[1] & 0xFF) != 0x8B) {
+      return data;
+    }
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+      return in.readAllBytes();
+    }
+  }
+
+  @Override
+  public void close() throws SQLException {
+    if (getTileStatement != null) {
+      getTileStatement.close();
+    }
+    connection.close();
+  }
+}
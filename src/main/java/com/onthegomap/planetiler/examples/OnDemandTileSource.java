@@ -0,0 +1,148 @@
+package com.onthegomap.planetiler.examples;
+
+import com.onthegomap.planetiler.config.PlanetilerConfig;
+import com.onthegomap.planetiler.geo.TileCoord;
+import com.onthegomap.planetiler.render.RenderedFeature;
+import com.onthegomap.planetiler.stats.Stats;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import org.locationtech.jts.index.strtree.STRtree;
+
+/**
+ * Renders tiles when they are first requested, from highway ways held in a spatial index, through the same
+ * {@code processFeature}, {@code postProcessLayerFeatures} and encoding steps as a full build. Rendered tiles are kept
+ * in a bounded cache and optionally written to an mbtiles file that later runs read before rendering. Concurrent
+ * requests for the same tile wait for one rendering.
+ */
+class OnDemandTileSource implements TileSource {
+
+  private static final ByteBuffer EMPTY = ByteBuffer.allocateDirect(0);
+
+  private final HighwayTileRenderer renderer;
+  private final STRtree index;
+  private final int minZoom;
+  private final int maxZoom;
+  private final TileCache rendered;
+  private final MbtilesArchive persisted;
+  private final Map<Long, CompletableFuture<ByteBuffer>> inFlight = new ConcurrentHashMap<>();
+  private final LongAdder renders = new LongAdder();
+  private final LongAdder renderNanos = new LongAdder();
+  private final LongAdder sharedRenders = new LongAdder();
+  private final LongAdder persistedHits = new LongAdder();
+
+  OnDemandTileSource(SingleHighwayLayer profile, PlanetilerConfig config, Stats stats,
+    Collection<HighwayStore.Way> ways, long cacheBytes, Path persist, Map<String, String> persistMetadata)
+    throws Exception {
+    this.renderer = new HighwayTileRenderer(profile, config, stats).withOverview(ways);
+    this.index = HighwayTileRenderer.index(ways);
+    this.minZoom = Math.max(config.minzoom(), profile.minZoom());
+    this.maxZoom = config.maxzoom();
+    this.rendered = new TileCache(cacheBytes);
+    if (persist == null) {
+      this.persisted = null;
+    } else if (Files.exists(persist)) {
+      this.persisted = MbtilesArchive.open(persist);
+    } else {
+      this.persisted = MbtilesArchive.create(persist, persistMetadata);
+    }
+  }
+
+  @Override
+  public ByteBuffer getTile(int z, int x, int y) throws Exception {
+    if (z < minZoom || z > maxZoom) {
+      return null;
+    }
+    long key = TileCache.key(z, x, y);
+    ByteBuffer cached = rendered.get(key);
+    if (cached != null) {
+      return cached.hasRemaining() ? cached : null;
+    }
+    CompletableFuture<ByteBuffer> created = new CompletableFuture<>();
+    CompletableFuture<ByteBuffer> existing = inFlight.putIfAbsent(key, created);
+    if (existing != null) {
+      sharedRenders.increment();
+      try {
+        ByteBuffer result = existing.get();
+        return result.hasRemaining() ? result.duplicate() : null;
+      } catch (ExecutionException e) {
+        throw e.getCause() instanceof Exception cause ? cause : e;
+      }
+    }
+    try {
+      // a renderer that finished between the cache lookup and putIfAbsent has already removed its future
+      ByteBuffer stored = rendered.peek(key);
+      if (stored != null) {
+        created.complete(stored);
+        return stored.hasRemaining() ? stored : null;
+      }
+      ByteBuffer result = load(z, x, y);
+      stored = rendered.put(key, result);
+      created.complete(stored);
+      return stored.hasRemaining() ? stored : null;
+    } catch (Exception e) {
+      created.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key, created);
+    }
+  }
+
+  private ByteBuffer load(int z, int x, int y) throws Exception {
+    if (persisted != null) {
+      byte[] data;
+      synchronized (persisted) {
+        data = persisted.getTile(z, x, y);
+      }
+      if (data != null) {
+        persistedHits.increment();
+        return ByteBuffer.wrap(data);
+      }
+    }
+    long start = System.nanoTime();
+    TileCoord tile = TileCoord.ofXYZ(x, y, z);
+    var candidates = HighwayTileRenderer.candidates(index, List.of(tile));
+    Map<TileCoord, List<RenderedFeature>> features = renderer.renderTiles(candidates, z, z, tile::equals);
+    byte[] data = features.containsKey(tile) ? renderer.encode(tile, features.get(tile)) : null;
+    renders.increment();
+    renderNanos.add(System.nanoTime() - start);
+    if (persisted != null && data != null) {
+      synchronized (persisted) {
+        persisted.putTile(z, x, y, data);
+      }
+    }
+    return data == null ? EMPTY : ByteBuffer.wrap(data);
+  }
+
+  long renders() {
+    return renders.sum();
+  }
+
+  long renderNanos() {
+    return renderNanos.sum();
+  }
+
+  long sharedRenders() {
+    return sharedRenders.sum();
+  }
+
+  long persistedHits() {
+    return persistedHits.sum();
+  }
+
+  @Override
+  public void close() throws Exception {
+    if (persisted != null) {
+      synchronized (persisted) {
+        persisted.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,453 @@
+package com.onthegomap.planetiler.examples;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Minimal reader and writer for the OSM PBF format: file blocks, zlib blobs, and the nodes and ways of primitive
+ * blocks. Relations, changesets and element metadata are skipped when reading and never written.
+ */
+class OsmPbf {
+
+  static final String HEADER = "OSMHeader";
+  static final String DATA = "OSMData";
+  private static final int MAX_HEADER_BYTES = 64 * 1024;
+  private static final int MAX_BLOB_BYTES = 32 * 1024 * 1024;
+
+  private OsmPbf() {}
+
+  /** A file block as stored: its type and the bytes of the still compressed {@code Blob} message. */
+  record FileBlock(String type, byte[] blob) {
+
+    byte[] data() throws IOException {
+      return OsmPbf.decompress(blob);
+    }
+  }
+
+  record Way(long id, int[] keys, int[] values, long[] refs) {}
+
+  /**
+   * Decoded primitive block. Coordinates stay in the block's own units, {@code offset + granularity * value}
+   * nanodegrees, so that a block can be re-encoded without rounding.
+   */
+  static final class Block {
+    byte[][] strings = {new byte[0]};
+    int granularity = 100;
+    long latOffset;
+    long lonOffset;
+    int nodeCount;
+    long[] nodeIds = new long[0];
+    long[] nodeLats = new long[0];
+    long[] nodeLons = new long[0];
+    final List<Way> ways = new ArrayList<>();
+    int relationCount;
+
+    String string(int index) {
+      return new String(strings[index], StandardCharsets.UTF_8);
+    }
+
+    void addNode(long id, long lat, long lon) {
+      if (nodeCount == nodeIds.length) {
+        int capacity = Math.max(64, nodeCount * 2);
+        nodeIds = Arrays.copyOf(nodeIds, capacity);
+        nodeLats = Arrays.copyOf(nodeLats, capacity);
+        nodeLons = Arrays.copyOf(nodeLons, capacity);
+      }
+      nodeIds[nodeCount] = id;
+      nodeLats[nodeCount] = lat;
+      nodeLons[nodeCount] = lon;
+      nodeCount++;
+    }
+
+    double lat(int node) {
+      return (latOffset + (long) granularity * nodeLats[node]) * 1e-9;
+    }
+
+    double lon(int node) {
+      return (lonOffset + (long) granularity * nodeLons[node]) * 1e-9;
+    }
+  }
+
+  /** Sequential reader of the file blocks of a {@code .osm.pbf} file. */
+  static final class Reader implements AutoCloseable {
+    private final DataInputStream in;
+
+    Reader(Path path) throws IOException {
+      this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+    }
+
+    /** Returns the next file block, or {@code null} at the end of the file. */
+    FileBlock next() throws IOException {
+      int headerLength;
+      try {
+        headerLength = in.readInt();
+      } catch (EOFException e) {
+        return null;
+      }
+      if (headerLength < 0 || headerLength > MAX_HEADER_BYTES) {
+        throw new IOException("Invalid blob header length " + headerLength);
+      }
+      byte[] header = new byte[headerLength];
+      in.readFully(header);
+      String type = null;
+      int dataSize = -1;
+      ProtobufReader reader = new ProtobufReader(header);
+      while (reader.hasMore()) {
+        int tag = reader.readTag();
+        switch (tag >>> 3) {
+          case 1 -> type = reader.readString();
+          case 3 -> dataSize = (int) reader.readVarint();
+          default -> reader.skip(tag & 7);
+        }
+      }
+      if (type == null || dataSize < 0 || dataSize > MAX_BLOB_BYTES) {
+        throw new IOException("Invalid blob header type=" + type + " size=" + dataSize);
+      }
+      byte[] blob = new byte[dataSize];
+      in.readFully(blob);
+      return new FileBlock(type, blob);
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  /** Sequential writer of file blocks, compressing data with zlib. */
+  static final class Writer implements AutoCloseable {
+    private final DataOutputStream out;
+    private long blocks;
+
+    Writer(Path path) throws IOException {
+      this(Files.newOutputStream(path));
+    }
+
+    Writer(OutputStream out) {
+      this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+    }
+
+    void write(String type, byte[] data) throws IOException {
+      writeBlob(type, compress(data));
+    }
+
+    /** Writes a block whose {@code Blob} message is already encoded, for example one copied from another file. */
+    void writeBlob(String type, byte[] blob) throws IOException {
+      byte[] header = new ProtobufWriter(32)
+        .stringField(1, type)
+        .varintField(3, blob.length)
+        .toByteArray();
+      out.writeInt(header.length);
+      out.write(header);
+      out.write(blob);
+      blocks++;
+    }
+
+    long blocks() {
+      return blocks;
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+  }
+
+  static byte[] compress(byte[] data) {
+    Deflater deflater = new Deflater();
+    try {
+      deflater.setInput(data);
+      deflater.finish();
+      byte[] buffer = new byte[Math.max(64, data.length / 2)];
+      int length = 0;
+      while (!deflater.finished()) {
+        if (length == buffer.length) {
+          buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        length += deflater.deflate(buffer, length, buffer.length - length);
+      }
+      return new ProtobufWriter(length + 16)
+        .varintField(2, data.length)
+        .bytesField(3, buffer, 0, length)
+        .toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  static byte[] decompress(byte[] blob) throws IOException {
+    ProtobufReader reader = new ProtobufReader(blob);
+    int rawSize = -1;
+    while (reader.hasMore()) {
+      int tag = reader.readTag();
+      switch (tag >>> 3) {
+        case 1 -> {
+          return reader.readBytes();
+        }
+        case 2 -> rawSize = (int) reader.readVarint();
+        case 3 -> {
+          int length = reader.readLength();
+          if (rawSize < 0 || rawSize > MAX_BLOB_BYTES) {
+            throw new IOException("Invalid raw blob size " + rawSize);
+          }
+          Inflater inflater = new Inflater();
+          try {
+            inflater.setInput(reader.bytes(), reader.position(), length);
+            byte[] result = new byte[rawSize];
+            int read = 0;
+            while (read < rawSize && !inflater.finished()) {
+              int count = inflater.inflate(result, read, rawSize - read);
+              if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                break;
+              }
+              read += count;
+            }
+            if (read != rawSize) {
+              throw new IOException("Blob inflated to " + read + " bytes instead of " + rawSize);
+            }
+            return result;
+          } catch (DataFormatException e) {
+            throw new IOException("Corrupt zlib blob", e);
+          } finally {
+            inflater.end();
+          }
+        }
+        case 4, 5, 6, 7 -> throw new IOException("Unsupported blob compression, field " + (tag >>> 3));
+        default -> reader.skip(tag & 7);
+      }
+    }
+    throw new IOException("Blob without data");
+  }
+
+  /** Decodes a primitive block, skipping nodes when {@code readNodes} is false. */
+  static Block decode(byte[] data, boolean readNodes) {
+    Block block = new Block();
+    List<ProtobufReader> groups = new ArrayList<>();
+    ProtobufReader reader = new ProtobufReader(data);
+    while (reader.hasMore()) {
+      int tag = reader.readTag();
+      switch (tag >>> 3) {
+        case 1 -> block.strings = readStrings(reader.readMessage());
+        case 2 -> groups.add(reader.readMessage());
+        case 17 -> block.granularity = (int) reader.readVarint();
+        case 19 -> block.latOffset = reader.readVarint();
+        case 20 -> block.lonOffset = reader.readVarint();
+        default -> reader.skip(tag & 7);
+      }
+    }
+    for (ProtobufReader group : groups) {
+      while (group.hasMore()) {
+        int tag = group.readTag();
+        switch (tag >>> 3) {
+          case 1 -> {
+            ProtobufReader node = group.readMessage();
+            if (readNodes) {
+              readNode(node, block);
+            }
+          }
+          case 2 -> {
+            ProtobufReader dense = group.readMessage();
+            if (readNodes) {
+              readDenseNodes(dense, block);
+            }
+          }
+          case 3 -> block.ways.add(readWay(group.readMessage()));
+          case 4 -> {
+            group.skip(tag & 7);
+            block.relationCount++;
+          }
+          default -> group.skip(tag & 7);
+        }
+      }
+    }
+    return block;
+  }
+
+  private static byte[][] readStrings(ProtobufReader reader) {
+    List<byte[]> strings = new ArrayList<>();
+    while (reader.hasMore()) {
+      int tag = reader.readTag();
+      if (tag >>> 3 == 1) {
+        strings.add(reader.readBytes());
+      } else {
+        reader.skip(tag & 7);
+      }
+    }
+    return strings.toArray(byte[][]::new);
+  }
+
+  private static void readNode(ProtobufReader reader, Block block) {
+    long id = 0;
+    long lat = 0;
+    long lon = 0;
+    while (reader.hasMore()) {
+      int tag = reader.readTag();
+      switch (tag >>> 3) {
+        case 1 -> id = reader.readSignedVarint();
+        case 8 -> lat = reader.readSignedVarint();
+        case 9 -> lon = reader.readSignedVarint();
+        default -> reader.skip(tag & 7);
+      }
+    }
+    block.addNode(id, lat, lon);
+  }
+
+  private static void readDenseNodes(ProtobufReader reader, Block block) {
+    long[] ids = null;
+    long[] lats = null;
+    long[] lons = null;
+    while (reader.hasMore()) {
+      int tag = reader.readTag();
+      switch (tag >>> 3) {
+        case 1 -> ids = readPackedDeltas(reader.readMessage());
+        case 8 -> lats = readPackedDeltas(reader.readMessage());
+        case 9 -> lons = readPackedDeltas(reader.readMessage());
+        default -> reader.skip(tag & 7);
+      }
+    }
+    if (ids == null || lats == null || lons == null || ids.length != lats.length || ids.length != lons.length) {
+      throw new IllegalStateException("Malformed dense nodes");
+    }
+    for (int i = 0; i < ids.length; i++) {
+      block.addNode(ids[i], lats[i], lons[i]);
+    }
+  }
+
+  private static Way readWay(ProtobufReader reader) {
+    long id = 0;
+    int[] keys = new int[0];
+    int[] values = new int[0];
+    long[] refs = new long[0];
+    while (reader.hasMore()) {
+      int tag = reader.readTag();
+      switch (tag >>> 3) {
+        case 1 -> id = reader.readVarint();
+        case 2 -> keys = readPackedInts(reader.readMessage());
+        case 3 -> values = readPackedInts(reader.readMessage());
+        case 8 -> refs = readPackedDeltas(reader.readMessage());
+        default -> reader.skip(tag & 7);
+      }
+    }
+    return new Way(id, keys, values, refs);
+  }
+
+  private static long[] readPackedDeltas(ProtobufReader reader) {
+    long[] result = new long[16];
+    int count = 0;
+    long value = 0;
+    while (reader.hasMore()) {
+      if (count == result.length) {
+        result = Arrays.copyOf(result, count * 2);
+      }
+      value += reader.readSignedVarint();
+      result[count++] = value;
+    }
+    return Arrays.copyOf(result, count);
+  }
+
+  private static int[] readPackedInts(ProtobufReader reader) {
+    int[] result = new int[8];
+    int count = 0;
+    while (reader.hasMore()) {
+      if (count == result.length) {
+        result = Arrays.copyOf(result, count * 2);
+      }
+      result[count++] = (int) reader.readVarint();
+    }
+    return Arrays.copyOf(result, count);
+  }
+
+  /**
+   * Encodes the nodes and ways of {@code block} as a primitive block. Nodes are written as untagged dense nodes and
+   * only the strings referenced by the ways are kept in the string table.
+   */
+  static byte[] encode(Block block) {
+    Map<Integer, Integer> remapped = new HashMap<>();
+    List<byte[]> strings = new ArrayList<>();
+    strings.add(new byte[0]);
+    ProtobufWriter ways = new ProtobufWriter();
+    for (Way way : block.ways) {
+      ProtobufWriter message = new ProtobufWriter(64 + way.refs().length * 4);
+      message.varintField(1, way.id());
+      if (way.keys().length > 0) {
+        message.messageField(2, packedStrings(way.keys(), block, remapped, strings));
+        message.messageField(3, packedStrings(way.values(), block, remapped, strings));
+      }
+      ProtobufWriter refs = new ProtobufWriter(way.refs().length * 4);
+      long last = 0;
+      for (long ref : way.refs()) {
+        refs.signedVarint(ref - last);
+        last = ref;
+      }
+      message.messageField(8, refs);
+      ways.messageField(3, message);
+    }
+
+    ProtobufWriter result = new ProtobufWriter(block.nodeCount * 12 + ways.size() + 256);
+    ProtobufWriter stringTable = new ProtobufWriter();
+    for (byte[] string : strings) {
+      stringTable.bytesField(1, string);
+    }
+    result.messageField(1, stringTable);
+    if (block.nodeCount > 0) {
+      ProtobufWriter dense = new ProtobufWriter(block.nodeCount * 12);
+      dense.messageField(1, packedDeltas(block.nodeIds, block.nodeCount));
+      dense.messageField(8, packedDeltas(block.nodeLats, block.nodeCount));
+      dense.messageField(9, packedDeltas(block.nodeLons, block.nodeCount));
+      ProtobufWriter keysVals = new ProtobufWriter(block.nodeCount);
+      for (int i = 0; i < block.nodeCount; i++) {
+        keysVals.varint(0);
+      }
+      dense.messageField(10, keysVals);
+      result.messageField(2, new ProtobufWriter(dense.size() + 8).messageField(2, dense));
+    }
+    if (ways.size() > 0) {
+      result.messageField(2, ways);
+    }
+    result.varintField(17, block.granularity);
+    result.varintField(19, block.latOffset);
+    result.varintField(20, block.lonOffset);
+    return result.toByteArray();
+  }
+
+  private static ProtobufWriter packedStrings(int[] indices, Block block, Map<Integer, Integer> remapped,
+    List<byte[]> strings) {
+    ProtobufWriter packed = new ProtobufWriter(indices.length * 2);
+    for (int index : indices) {
+      Integer newIndex = remapped.get(index);
+      if (newIndex == null) {
+        newIndex = strings.size();
+        strings.add(block.strings[index]);
+        remapped.put(index, newIndex);
+      }
+      packed.varint(newIndex);
+    }
+    return packed;
+  }
+
+  private static ProtobufWriter packedDeltas(long[] values, int count) {
+    ProtobufWriter packed = new ProtobufWriter(count * 4);
+    long last = 0;
+    for (int i = 0; i < count; i++) {
+      packed.signedVarint(values[i] - last);
+      last = values[i];
+    }
+    return packed;
+  }
+}
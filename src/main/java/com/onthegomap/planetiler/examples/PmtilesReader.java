@@ -0,0 +1,212 @@
+package com.onthegomap.planetiler.examples;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads tiles from a PMTiles v3 archive with positional reads, so one instance can be shared by many threads. Leaf
+ * directories are decoded once and kept.
+ */
+class PmtilesReader implements TileSource {
+
+  private static final int MAX_DEPTH = 4;
+  private static final Pattern DICTIONARY =
+    Pattern.compile("\"" + TileCodec.DICTIONARY_METADATA + "\"\\s*:\\s*\"([A-Za-z0-9+/=]*)\"");
+
+  record Directory(long[] tileIds, long[] offsets, int[] lengths, int[] runLengths) {
+
+    /** Returns the index of the last entry with a tile id at or before {@code tileId}, or -1. */
+    int find(long tileId) {
+      int low = 0;
+      int high = tileIds.length - 1;
+      int result = -1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        if (tileIds[mid] <= tileId) {
+          result = mid;
+          low = mid + 1;
+        } else {
+          high = mid - 1;
+        }
+      }
+      return result;
+    }
+  }
+
+  private final FileChannel channel;
+  private final byte internalCompression;
+  private final byte tileCompression;
+  private final long metadataOffset;
+  private final int metadataLength;
+  private final long leafDirectoryOffset;
+  private final long tileDataOffset;
+  private final int minZoom;
+  private final int maxZoom;
+  private final Directory root;
+  private final Map<Long, Directory> leaves = new ConcurrentHashMap<>();
+
+  private PmtilesReader(FileChannel channel) throws IOException {
+    this.channel = channel;
+    ByteBuffer header = read(0, PmtilesWriter.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    byte[] magic = new byte[7];
+    header.get(magic);
+    if (!"PMTiles".equals(new String(magic, StandardCharsets.US_ASCII)) || header.get() != 3) {
+      throw new IOException("Not a PMTiles v3 archive");
+    }
+    long rootOffset = header.getLong();
+    long rootLength = header.getLong();
+    this.metadataOffset = header.getLong();
+    this.metadataLength = (int) header.getLong();
+    this.leafDirectoryOffset = header.getLong();
+    header.getLong(); // leaf directories length
+    this.tileDataOffset = header.getLong();
+    header.position(97);
+    this.internalCompression = header.get();
+    this.tileCompression = header.get();
+    header.get(); // tile type
+    this.minZoom = header.get();
+    this.maxZoom = header.get();
+    this.root = directory(rootOffset, (int) rootLength);
+  }
+
+  static PmtilesReader open(Path path) throws IOException {
+    return new PmtilesReader(FileChannel.open(path, StandardOpenOption.READ));
+  }
+
+  byte tileCompression() {
+    return tileCompression;
+  }
+
+  /** Returns the codec of the tiles, with the dictionary from the metadata for {@code zstd_dict} archives. */
+  TileCodec codec() throws IOException {
+    Map<String, String> metadata = new HashMap<>();
+    if (tileCompression == PmtilesWriter.COMPRESSION_UNKNOWN) {
+      Matcher dictionary = DICTIONARY.matcher(metadataJson());
+      if (dictionary.find()) {
+        metadata.put(TileCodec.DICTIONARY_METADATA, dictionary.group(1));
+      }
+    }
+    return TileCodec.forPmtiles(tileCompression, metadata);
+  }
+
+  String metadataJson() throws IOException {
+    ByteBuffer compressed = read(metadataOffset, metadataLength);
+    byte[] bytes = new byte[metadataLength];
+    compressed.get(bytes);
+    if (internalCompression == PmtilesWriter.COMPRESSION_GZIP) {
+      bytes = MbtilesArchive.gunzipIfNeeded(bytes);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  int minZoom() {
+    return minZoom;
+  }
+
+  int maxZoom() {
+    return maxZoom;
+  }
+
+  @Override
+  public ByteBuffer getTile(int z, int x, int y) throws IOException {
+    if (z < minZoom || z > maxZoom || x < 0 || y < 0 || x >= (1 << z) || y >= (1 << z)) {
+      return null;
+    }
+    long tileId = PmtilesWriter.tileId(z, x, y);
+    Directory directory = root;
+    for (int depth = 0; depth < MAX_DEPTH; depth++) {
+      int index = directory.find(tileId);
+      if (index < 0) {
+        return null;
+      }
+      long offset = directory.offsets()[index];
+      int length = directory.lengths()[index];
+      int runLength = directory.runLengths()[index];
+      if (runLength > 0) {
+        return tileId < directory.tileIds()[index] + runLength ? read(tileDataOffset + offset, length) : null;
+      }
+      long leafOffset = leafDirectoryOffset + offset;
+      Directory leaf = leaves.get(leafOffset);
+      if (leaf == null) {
+        leaf = directory(leafOffset, length);
+        leaves.put(leafOffset, leaf);
+      }
+      directory = leaf;
+    }
+    return null;
+  }
+
+  private ByteBuffer read(long position, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of archive");
+      }
+    }
+    return buffer.flip();
+  }
+
+  private Directory directory(long position, int length) throws IOException {
+    ByteBuffer compressed = read(position, length);
+    byte[] bytes = new byte[length];
+    compressed.get(bytes);
+    if (internalCompression == PmtilesWriter.COMPRESSION_GZIP) {
+      try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+        bytes = in.readAllBytes();
+      }
+    } else if (internalCompression != PmtilesWriter.COMPRESSION_NONE) {
+      throw new IOException("Unsupported internal compression " + internalCompression);
+    }
+    ByteBuffer in = ByteBuffer.wrap(bytes);
+    int count = (int) readVarint(in);
+    long[] tileIds = new long[count];
+    long[] offsets = new long[count];
+    int[] lengths = new int[count];
+    int[] runLengths = new int[count];
+    long lastId = 0;
+    for (int i = 0; i < count; i++) {
+      lastId += readVarint(in);
+      tileIds[i] = lastId;
+    }
+    for (int i = 0; i < count; i++) {
+      runLengths[i] = (int) readVarint(in);
+    }
+    for (int i = 0; i < count; i++) {
+      lengths[i] = (int) readVarint(in);
+    }
+    for (int i = 0; i < count; i++) {
+      long value = readVarint(in);
+      offsets[i] = value == 0 && i > 0 ? offsets[i - 1] + lengths[i - 1] : value - 1;
+    }
+    return new Directory(tileIds, offsets, lengths, runLengths);
+  }
+
+  private static long readVarint(ByteBuffer in) throws IOException {
+    long result = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = in.get() & 0xFF;
+      result |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return result;
+      }
+    }
+    throw new IOException("Malformed varint");
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
@@ -0,0 +1,421 @@
+package com.onthegomap.planetiler.examples;
+
+import com.carrotsearch.hppc.LongLongHashMap;
+import com.carrotsearch.hppc.sorting.IndirectSort;
+import com.onthegomap.planetiler.collection.Hppc;
+import com.onthegomap.planetiler.util.Hashing;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes a clustered PMTiles v3 archive. Tiles may be added in any order, for example as they are read sequentially
+ * from an mbtiles file; they are appended to a temporary file and {@link #finish} copies them into the archive in
+ * increasing tile id (zoom, then Hilbert) order. Small tiles with identical content are stored once and consecutive
+ * repeats become a single run-length entry. Small tiles are looked up by a 64-bit FNV-1a hash of their content and
+ * compared with the stored bytes on a match, so only the hash and offset of each distinct small tile stay in memory.
+ */
+class PmtilesWriter implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PmtilesWriter.class);
+
+  static final int HEADER_BYTES = 127;
+  static final int MAX_ROOT_DIRECTORY_BYTES = 16_384 - HEADER_BYTES;
+  static final byte COMPRESSION_UNKNOWN = 0;
+  static final byte COMPRESSION_NONE = 1;
+  static final byte COMPRESSION_GZIP = 2;
+  static final byte COMPRESSION_BROTLI = 3;
+  static final byte COMPRESSION_ZSTD = 4;
+  static final byte TILE_TYPE_MVT = 1;
+  private static final int MAX_DEDUPLICATED_TILE_BYTES = 1024;
+
+  private final Path output;
+  private final Path tileDataFile;
+  private final OutputStream tileData;
+  private final FileChannel tileDataReader;
+  private final LongLongHashMap smallTileOffsets = Hppc.newLongLongHashMap();
+  private long tileDataLength = 0;
+  private long flushedLength = 0;
+  private long tileContents = 0;
+  private long hashCollisions = 0;
+  private int minZoom = Integer.MAX_VALUE;
+  private int maxZoom = Integer.MIN_VALUE;
+
+  /** The added tiles in the order they were added, pointing into the temporary tile data file. */
+  private long[] tileIds = new long[1024];
+  private long[] offsets = new long[1024];
+  private int[] lengths = new int[1024];
+  private int tiles = 0;
+
+  PmtilesWriter(Path output) throws IOException {
+    this.output = output;
+    this.tileDataFile = output.resolveSibling(output.getFileName() + ".tiles.tmp");
+    this.tileData = new BufferedOutputStream(Files.newOutputStream(tileDataFile), 1 << 20);
+    this.tileDataReader = FileChannel.open(tileDataFile, StandardOpenOption.READ);
+  }
+
+  static long tileId(int z, int x, int y) {
+    long id = ((1L << (2 * z)) - 1) / 3;
+    long n = 1L << z;
+    long tx = x;
+    long ty = y;
+    long d = 0;
+    for (long s = n / 2; s > 0; s /= 2) {
+      long rx = (tx & s) > 0 ? 1 : 0;
+      long ry = (ty & s) > 0 ? 1 : 0;
+      d += s * s * ((3 * rx) ^ ry);
+      if (ry == 0) {
+        if (rx == 1) {
+          tx = n - 1 - tx;
+          ty = n - 1 - ty;
+        }
+        long t = tx;
+        tx = ty;
+        ty = t;
+      }
+    }
+    return id + d;
+  }
+
+  /** Adds a tile; each tile may only be added once. */
+  void write(int z, int x, int y, byte[] data) throws IOException {
+    minZoom = Math.min(minZoom, z);
+    maxZoom = Math.max(maxZoom, z);
+
+    long offset = -1;
+    boolean small = data.length <= MAX_DEDUPLICATED_TILE_BYTES;
+    long hash = small ? Hashing.fnv1a64(data) : 0;
+    if (small && smallTileOffsets.containsKey(hash)) {
+      long existing = smallTileOffsets.get(hash);
+      if (Arrays.equals(data, read(existing, data.length))) {
+        offset = existing;
+      } else {
+        hashCollisions++;
+      }
+    }
+    if (offset < 0) {
+      offset = tileDataLength;
+      tileData.write(data);
+      tileDataLength += data.length;
+      tileContents++;
+      if (small && !smallTileOffsets.containsKey(hash)) {
+        smallTileOffsets.put(hash, offset);
+      }
+    }
+    if (tiles == tileIds.length) {
+      int size = tiles * 2;
+      tileIds = Arrays.copyOf(tileIds, size);
+      offsets = Arrays.copyOf(offsets, size);
+      lengths = Arrays.copyOf(lengths, size);
+    }
+    tileIds[tiles] = tileId(z, x, y);
+    offsets[tiles] = offset;
+    lengths[tiles] = data.length;
+    tiles++;
+  }
+
+  /** Reads back {@code length} bytes of tile data written at {@code offset}. */
+  private byte[] read(long offset, int length) throws IOException {
+    if (offset + length > flushedLength) {
+      tileData.flush();
+      flushedLength = tileDataLength;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (tileDataReader.read(buffer, offset + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of " + tileDataFile);
+      }
+    }
+    return buffer.array();
+  }
+
+  /**
+   * Writes the header, directories and metadata in front of the tile data.
+   *
+   * @param metadataJson tileset metadata as a JSON object
+   * @param bounds       {@code minLon, minLat, maxLon, maxLat}
+   * @param center       {@code lon, lat, zoom}
+   */
+  void finish(String metadataJson, double[] bounds, double[] center, byte tileCompression) throws IOException {
+    tileData.close();
+
+    // lay the tile data out in tile id order: every content goes where its first tile is, repeats become runs
+    int[] order = IndirectSort.mergesort(0, tiles, (a, b) -> Long.compare(tileIds[a], tileIds[b]));
+    LongLongHashMap clusteredOffsets = Hppc.newLongLongHashMap();
+    long[] entryIds = new long[tiles];
+    long[] entryOffsets = new long[tiles];
+    int[] entryLengths = new int[tiles];
+    int[] runLengths = new int[tiles];
+    long[] copyOffsets = new long[(int) tileContents];
+    int[] copyLengths = new int[(int) tileContents];
+    int entries = 0;
+    int copies = 0;
+    long clusteredLength = 0;
+    for (int tile : order) {
+      long offset = lengths[tile] <= MAX_DEDUPLICATED_TILE_BYTES ?
+        clusteredOffsets.getOrDefault(offsets[tile], -1) : -1;
+      if (offset < 0) {
+        offset = clusteredLength;
+        clusteredLength += lengths[tile];
+        copyOffsets[copies] = offsets[tile];
+        copyLengths[copies++] = lengths[tile];
+        if (lengths[tile] <= MAX_DEDUPLICATED_TILE_BYTES) {
+          clusteredOffsets.put(offsets[tile], offset);
+        }
+      }
+      int last = entries - 1;
+      if (last >= 0 && entryOffsets[last] == offset && entryIds[last] + runLengths[last] == tileIds[tile]) {
+        runLengths[last]++;
+      } else {
+        entryIds[entries] = tileIds[tile];
+        entryOffsets[entries] = offset;
+        entryLengths[entries] = lengths[tile];
+        runLengths[entries] = 1;
+        entries++;
+      }
+    }
+
+    ByteArrayOutputStream leaves = new ByteArrayOutputStream();
+    byte[] root = serializeDirectory(0, entries, entryIds, entryOffsets, entryLengths, runLengths);
+    if (root.length > MAX_ROOT_DIRECTORY_BYTES) {
+      int leafSize = Math.max(4096, entries / 1000);
+      while (true) {
+        leaves.reset();
+        int leafCount = (entries + leafSize - 1) / leafSize;
+        long[] rootIds = new long[leafCount];
+        long[] rootOffsets = new long[leafCount];
+        int[] rootLengths = new int[leafCount];
+        int[] rootRunLengths = new int[leafCount];
+        for (int leaf = 0; leaf < leafCount; leaf++) {
+          int start = leaf * leafSize;
+          int end = Math.min(entries, start + leafSize);
+          byte[] leafBytes = serializeDirectory(start, end, entryIds, entryOffsets, entryLengths, runLengths);
+          rootIds[leaf] = entryIds[start];
+          rootOffsets[leaf] = leaves.size();
+          rootLengths[leaf] = leafBytes.length;
+          leaves.write(leafBytes);
+        }
+        root = serializeDirectory(0, leafCount, rootIds, rootOffsets, rootLengths, rootRunLengths);
+        if (root.length <= MAX_ROOT_DIRECTORY_BYTES) {
+          break;
+        }
+        leafSize = (int) (leafSize * 1.2);
+      }
+    }
+    byte[] metadata = gzip(metadataJson.getBytes(StandardCharsets.UTF_8));
+
+    long rootOffset = HEADER_BYTES;
+    long metadataOffset = rootOffset + root.length;
+    long leavesOffset = metadataOffset + metadata.length;
+    long tileDataOffset = leavesOffset + leaves.size();
+
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    header.put("PMTiles".getBytes(StandardCharsets.US_ASCII));
+    header.put((byte) 3);
+    header.putLong(rootOffset);
+    header.putLong(root.length);
+    header.putLong(metadataOffset);
+    header.putLong(metadata.length);
+    header.putLong(leavesOffset);
+    header.putLong(leaves.size());
+    header.putLong(tileDataOffset);
+    header.putLong(tileDataLength);
+    header.putLong(tiles);
+    header.putLong(entries);
+    header.putLong(tileContents);
+    header.put((byte) 1); // clustered
+    header.put(COMPRESSION_GZIP); // internal compression
+    header.put(tileCompression);
+    header.put(TILE_TYPE_MVT);
+    header.put((byte) (entries == 0 ? 0 : minZoom));
+    header.put((byte) (entries == 0 ? 0 : maxZoom));
+    header.putInt(e7(bounds[0]));
+    header.putInt(e7(bounds[1]));
+    header.putInt(e7(bounds[2]));
+    header.putInt(e7(bounds[3]));
+    header.put((byte) center[2]);
+    header.putInt(e7(center[0]));
+    header.putInt(e7(center[1]));
+    header.flip();
+
+    try (FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+      StandardOpenOption.TRUNCATE_EXISTING)) {
+      writeFully(out, header);
+      writeFully(out, ByteBuffer.wrap(root));
+      writeFully(out, ByteBuffer.wrap(metadata));
+      writeFully(out, ByteBuffer.wrap(leaves.toByteArray()));
+      // copy the contents in their new order, joining contents that follow each other in the temporary file
+      for (int i = 0; i < copies; ) {
+        long position = copyOffsets[i];
+        long end = position + copyLengths[i++];
+        while (i < copies && copyOffsets[i] == end) {
+          end += copyLengths[i++];
+        }
+        while (position < end) {
+          position += tileDataReader.transferTo(position, end - position, out);
+        }
+      }
+    }
+    close();
+    LOGGER.info("Wrote {}: {} addressed tiles, {} entries, {} unique tiles, {} leaf directory bytes{}", output,
+      tiles, entries, tileContents, leaves.size(),
+      hashCollisions == 0 ? "" : ", " + hashCollisions + " tile hash collisions");
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private static int e7(double degrees) {
+    return (int) Math.round(degrees * 10_000_000);
+  }
+
+  static byte[] serializeDirectory(int start, int end, long[] tileIds, long[] offsets, int[] lengths,
+    int[] runLengths) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    writeVarint(bytes, end - start);
+    long lastId = 0;
+    for (int i = start; i < end; i++) {
+      writeVarint(bytes, tileIds[i] - lastId);
+      lastId = tileIds[i];
+    }
+    for (int i = start; i < end; i++) {
+      writeVarint(bytes, runLengths[i]);
+    }
+    for (int i = start; i < end; i++) {
+      writeVarint(bytes, lengths[i]);
+    }
+    for (int i = start; i < end; i++) {
+      if (i > start && offsets[i] == offsets[i - 1] + lengths[i - 1]) {
+        writeVarint(bytes, 0);
+      } else {
+        writeVarint(bytes, offsets[i] + 1);
+      }
+    }
+    return gzip(bytes.toByteArray());
+  }
+
+  private static void writeVarint(ByteArrayOutputStream out, long value) {
+    while ((value & ~0x7FL) != 0) {
+      out.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+  static byte[] gzip(byte[] data) throws IOException {
+    ByteArrayOutputStream result = new ByteArrayOutputStream();
+    try (GZIPOutputStream out = new GZIPOutputStream(result)) {
+      out.write(data);
+    }
+    return result.toByteArray();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      tileData.close();
+      tileDataReader.close();
+    } finally {
+      Files.deleteIfExists(tileDataFile);
+    }
+  }
+
+  /** Converts an mbtiles file written by Planetiler to PMTiles. */
+  static void convert(Path mbtiles, Path output) throws Exception {
+    convert(mbtiles, output, TileCodec.gzip());
+  }
+
+  /**
+   * Converts an mbtiles file written by Planetiler to PMTiles with tiles compressed by {@code codec}, reading the tiles
+   * in one sequential scan. Gzipped tiles are copied as they are when {@code codec} is gzip.
+   */
+  static void convert(Path mbtiles, Path output, TileCodec codec) throws Exception {
+    boolean recompress = !TileCodec.GZIP.equals(codec.name());
+    long[] storedBytes = {0};
+    long[] writtenBytes = {0};
+    try (
+      MbtilesArchive archive = MbtilesArchive.open(mbtiles);
+      PmtilesWriter writer = new PmtilesWriter(output)
+    ) {
+      Map<String, String> metadata = archive.metadata();
+      archive.forEachTile(tile -> {
+        byte[] data = tile.data();
+        storedBytes[0] += data.length;
+        if (recompress) {
+          data = codec.compress(MbtilesArchive.gunzipIfNeeded(data));
+        }
+        writtenBytes[0] += data.length;
+        writer.write(tile.z(), tile.x(), tile.y(), data);
+      });
+      if (codec.dictionary() != null) {
+        metadata.put(TileCodec.DICTIONARY_METADATA,
+          Json.string(Base64.getEncoder().encodeToString(codec.dictionary())));
+      }
+      writer.finish(metadataJson(metadata), parse(metadata.get("bounds"), new double[]{-180, -85, 180, 85}),
+        parse(metadata.get("center"), new double[]{0, 0, 0}), codec.pmtilesCompression());
+    }
+    if (recompress) {
+      LOGGER.info("Compressed tiles with {}: {} gzip bytes -> {} bytes{}", codec.name(), storedBytes[0],
+        writtenBytes[0], codec.dictionary() == null ? "" : " and a " + codec.dictionary().length + " byte dictionary");
+    }
+  }
+
+  static String metadataJson(Map<String, String> metadata) {
+    StringBuilder json = new StringBuilder("{");
+    for (String key : new String[]{"name", "description", "attribution", "version", "type"}) {
+      if (metadata.containsKey(key)) {
+        json.append(json.length() > 1 ? "," : "").append(Json.string(key)).append(':')
+          .append(Json.string(metadata.get(key)));
+      }
+    }
+    json.append(json.length() > 1 ? "," : "").append("\"format\":\"pbf\"");
+    for (var entry : metadata.entrySet()) {
+      if (entry.getKey().startsWith("highway_")) {
+        String value = entry.getValue();
+        if (!Json.isValid(value)) {
+          LOGGER.warn("Metadata {} is not valid JSON, storing it as a string", entry.getKey());
+          value = Json.string(value);
+        }
+        json.append(',').append(Json.string(entry.getKey())).append(':').append(value);
+      }
+    }
+    String layers = metadata.get("json");
+    if (layers != null && layers.trim().startsWith("{")) {
+      String inner = layers.trim();
+      inner = inner.substring(1, inner.length() - 1).trim();
+      if (!inner.isEmpty()) {
+        json.append(',').append(inner);
+      }
+    }
+    return json.append('}').toString();
+  }
+
+  private static double[] parse(String value, double[] defaults) {
+    if (value == null) {
+      return defaults;
+    }
+    String[] parts = value.split(",");
+    double[] result = defaults.clone();
+    for (int i = 0; i < Math.min(parts.length, result.length); i++) {
+      result[i] = Double.parseDouble(parts[i].trim());
+    }
+    return result;
+  }
+}
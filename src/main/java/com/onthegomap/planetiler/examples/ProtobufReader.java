@@ -0,0 +1,142 @@
+package com.onthegomap.planetiler.examples;
+
+/** Reads protobuf wire format fields from a byte array, without generated message classes. */
+class ProtobufReader {
+
+  static final int VARINT = 0;
+  static final int FIXED64 = 1;
+  static final int LENGTH_DELIMITED = 2;
+  static final int FIXED32 = 5;
+
+  private final byte[] bytes;
+  private int position;
+  private final int end;
+
+  ProtobufReader(byte[] bytes) {
+    this(bytes, 0, bytes.length);
+  }
+
+  ProtobufReader(byte[] bytes, int offset, int length) {
+    this.bytes = bytes;
+    this.position = offset;
+    this.end = offset + length;
+  }
+
+  boolean hasMore() {
+    return position < end;
+  }
+
+  int position() {
+    return position;
+  }
+
+  byte[] bytes() {
+    return bytes;
+  }
+
+  /** Returns the next field tag, {@code field << 3 | wireType}. */
+  int readTag() {
+    return (int) readVarint();
+  }
+
+  long readVarint() {
+    long result = 0;
+    int shift = 0;
+    while (true) {
+      if (position >= end) {
+        throw new IllegalStateException("Truncated varint");
+      }
+      byte b = bytes[position++];
+      result |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return result;
+      }
+      shift += 7;
+      if (shift >= 64) {
+        throw new IllegalStateException("Malformed varint");
+      }
+    }
+  }
+
+  long readSignedVarint() {
+    long value = readVarint();
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /** Returns the length of a length-delimited field and leaves the position at its first byte. */
+  int readLength() {
+    int length = (int) readVarint();
+    if (length < 0 || position + length > end) {
+      throw new IllegalStateException("Truncated field");
+    }
+    return length;
+  }
+
+  ProtobufReader readMessage() {
+    int length = readLength();
+    ProtobufReader message = new ProtobufReader(bytes, position, length);
+    position += length;
+    return message;
+  }
+
+  byte[] readBytes() {
+    int length = readLength();
+    byte[] result = new byte[length];
+    System.arraycopy(bytes, position, result, 0, length);
+    position += length;
+    return result;
+  }
+
+  String readString() {
+    int length = readLength();
+    String result = new String(bytes, position, length, java.nio.charset.StandardCharsets.UTF_8);
+    position += length;
+    return result;
+  }
+
+  double readDouble() {
+    return Double.longBitsToDouble(readFixed64());
+  }
+
+  float readFloat() {
+    return Float.intBitsToFloat((int) readFixed32());
+  }
+
+  long readFixed64() {
+    long result = 0;
+    for (int i = 0; i < 8; i++) {
+      result |= (long) (bytes[position++] & 0xFF) << (8 * i);
+    }
+    return result;
+  }
+
+  long readFixed32() {
+    long result = 0;
+    for (int i = 0; i < 4; i++) {
+      result |= (long) (bytes[position++] & 0xFF) << (8 * i);
+    }
+    return result;
+  }
+
+  void skip(int wireType) {
+    switch (wireType) {
+      case VARINT -> readVarint();
+      case FIXED64 -> position += 8;
+      case LENGTH_DELIMITED -> {
+        int length = readLength();
+        position += length;
+      }
+      case FIXED32 -> position += 4;
+      default -> throw new IllegalStateException("Unsupported wire type " + wireType);
+    }
+  }
+
+  static int varintSize(long value) {
+    int size = 1;
+    while ((value & ~0x7FL) != 0) {
+      value >>>= 7;
+      size++;
+    }
+    return size;
+  }
+}
@@ -0,0 +1,79 @@
+package com.onthegomap.planetiler.examples;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/** Writes protobuf wire format fields into a growable byte array, the counterpart of {@link ProtobufReader}. */
+class ProtobufWriter {
+
+  private byte[] bytes;
+  private int size;
+
+  ProtobufWriter() {
+    this(256);
+  }
+
+  ProtobufWriter(int capacity) {
+    this.bytes = new byte[Math.max(16, capacity)];
+  }
+
+  int size() {
+    return size;
+  }
+
+  byte[] toByteArray() {
+    return Arrays.copyOf(bytes, size);
+  }
+
+  ProtobufWriter tag(int field, int wireType) {
+    return varint((long) field << 3 | wireType);
+  }
+
+  ProtobufWriter varint(long value) {
+    ensure(10);
+    while ((value & ~0x7FL) != 0) {
+      bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    bytes[size++] = (byte) value;
+    return this;
+  }
+
+  ProtobufWriter signedVarint(long value) {
+    return varint((value << 1) ^ (value >> 63));
+  }
+
+  ProtobufWriter varintField(int field, long value) {
+    return tag(field, ProtobufReader.VARINT).varint(value);
+  }
+
+  ProtobufWriter signedVarintField(int field, long value) {
+    return tag(field, ProtobufReader.VARINT).signedVarint(value);
+  }
+
+  ProtobufWriter bytesField(int field, byte[] value) {
+    return bytesField(field, value, 0, value.length);
+  }
+
+  ProtobufWriter bytesField(int field, byte[] value, int offset, int length) {
+    tag(field, ProtobufReader.LENGTH_DELIMITED).varint(length);
+    ensure(length);
+    System.arraycopy(value, offset, bytes, size, length);
+    size += length;
+    return this;
+  }
+
+  ProtobufWriter stringField(int field, String value) {
+    return bytesField(field, value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  ProtobufWriter messageField(int field, ProtobufWriter message) {
+    return bytesField(field, message.bytes, 0, message.size);
+  }
+
+  private void ensure(int extra) {
+    if (size + extra > bytes.length) {
+      bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+    }
+  }
+}
@@ -1,42 +1,275 @@
 package com.onthegomap.planetiler.examples;
 
+import com.carrotsearch.hppc.sorting.IndirectSort;
 import com.onthegomap.planetiler.FeatureCollector;
-import com.onthegomap.planetiler.FeatureMerge;
 import com.onthegomap.planetiler.Planetiler;
 import com.onthegomap.planetiler.Profile;
 import com.onthegomap.planetiler.VectorTile;
 import com.onthegomap.planetiler.geo.GeometryException;
 import com.onthegomap.planetiler.config.Arguments;
+import com.onthegomap.planetiler.reader.SimpleFeature;
 import com.onthegomap.planetiler.reader.SourceFeature;
 import com.onthegomap.planetiler.reader.osm.OsmElement;
 import com.onthegomap.planetiler.reader.osm.OsmRelationInfo;
+import com.onthegomap.planetiler.stats.Stats;
 import com.onthegomap.planetiler.util.ZoomFunction;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.List;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import org.locationtech.jts.geom.LineString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class SingleHighwayLayer implements Profile {
 
-  private String[] highwayCategories = {
-    "unclassified",
-    "tertiary",
-    "secondary",
-    "primary",
-    "trunk",
-    "motorway",
-  };
+  private static final Logger LOGGER = LoggerFactory.getLogger(SingleHighwayLayer.class);
+
+  private final List<HighwayStyle> highwayStyles;
+  private final Map<String, HighwayClass> highwayClasses;
+  private final int categoryCount;
+  private final Stats stats;
+  private final boolean singleFeature;
+  private final boolean presort;
+  private final boolean jfrEvents;
+  private final boolean bufferStats;
+  private final HighwayPalette palette;
+  private final HighwayLineMerger lineMerger;
+  private final Map<Long, LineSortKey> unusualLineSortKeys;
+  private final HighwayOverview overview;
+  private final HighwayTileBudget tileBudget;
+  private final HighwayBuffer buffer;
+  private final HighwayMetrics metrics;
+  private HighwayStore.Writer highwayStore;
+  private HighwayOverview.Collector overviewLines;
+
+  static final int MAX_UNUSUAL_LINE_SORT_KEYS = 4096;
+  static final Path DEFAULT_PMTILES = Path.of("data", "single-highway-layer.pmtiles");
 
   int tunnelAndBridgeMinZoom = 14;
-  int linkMinZoom = 11;
   int globalMaxZoom = 14;
 
-  private boolean isTunnel(SourceFeature sourceFeature) {
-    return sourceFeature.hasTag("tunnel", "yes", "building_passage") || sourceFeature.hasTag("covered", "yes");
+  public SingleHighwayLayer() {
+    this(HighwayStyle.defaults(), Arguments.of(Map.of()), Stats.inMemory());
+  }
+
+  public SingleHighwayLayer(List<HighwayStyle> highwayStyles, Arguments args, Stats stats) {
+    this.highwayStyles = List.copyOf(highwayStyles);
+    this.stats = stats;
+    this.unusualLineSortKeys = new ConcurrentHashMap<>();
+    this.singleFeature = args.getBoolean("single_feature",
+      "emit one highway feature carrying both casing and fill attributes instead of two", false);
+    this.presort = args.getBoolean("presort",
+      "write the features of each tile in line-sort-key order so styles can leave out line-sort-key", true);
+    this.jfrEvents = !args.getString("jfr", "Java Flight Recorder file to record profile events to", "").isBlank();
+    this.bufferStats = args.getBoolean("buffer_stats",
+      "count the vertices that the tile buffer copies into neighboring tiles and log them after the build", false);
+    this.lineMerger = new HighwayLineMerger(
+      HighwayLineMerger.parseParameters(
+        args.getString("merge_parameters",
+          "per-zoom line merge overrides as zoom:minLength:tolerance:buffer entries separated by commas", ""),
+        HighwayLineMerger.defaultParameters(globalMaxZoom)),
+      args.getInteger("merge_parallel_threshold",
+        "merge the attribute buckets of tiles with at least this many highway features in parallel", 20_000)
+    );
+    this.categoryCount = this.highwayStyles.size();
+    Map<String, HighwayClass> classes = new HashMap<>();
+    for (int categoryIndex = 0; categoryIndex < categoryCount; categoryIndex++) {
+      HighwayStyle style = this.highwayStyles.get(categoryIndex);
+      classes.put(style.category, new HighwayClass(categoryIndex, false, style.minZoom, style, categoryCount));
+      if (style.hasLinks()) {
+        classes.put(style.category + "_link",
+          new HighwayClass(categoryIndex, true, style.linkMinZoom, style, categoryCount));
+      }
+    }
+    this.highwayClasses = Map.copyOf(classes);
+    this.metrics = new HighwayMetrics(this.highwayStyles.stream().map(style -> style.category).toList(),
+      globalMaxZoom);
+    if (args.getBoolean("width_buffer",
+      "size the tile buffer of each zoom from the widest casing line drawn at that zoom", true)) {
+      double[] maxCasingWidths = new double[globalMaxZoom + 1];
+      for (HighwayClass highwayClass : highwayClasses.values()) {
+        for (int zoom = Math.max(0, highwayClass.minZoom); zoom <= globalMaxZoom; zoom++) {
+          maxCasingWidths[zoom] = Math.max(maxCasingWidths[zoom],
+            highwayClass.casingLineWidth.apply(zoom).doubleValue());
+        }
+      }
+      this.buffer = HighwayBuffer.fromCasingWidths(maxCasingWidths, args.getDouble("width_buffer_margin",
+        "pixels added to the width-derived tile buffer for antialiasing and joins", 1));
+    } else {
+      this.buffer = HighwayBuffer.fixed(globalMaxZoom + 1);
+    }
+    int overviewMaxZoom = args.getInteger("overview_max_zoom",
+      "highest zoom at which major roads are drawn from a generalized network instead of raw ways, -1 to disable", 7);
+    if (overviewMaxZoom >= 0) {
+      int[] categoryMinZooms = new int[categoryCount];
+      for (int categoryIndex = 0; categoryIndex < categoryCount; categoryIndex++) {
+        int minZoom = this.highwayStyles.get(categoryIndex).minZoom;
+        categoryMinZooms[categoryIndex] = minZoom <= overviewMaxZoom ? minZoom : -1;
+      }
+      this.overview = new HighwayOverview(overviewMaxZoom, categoryMinZooms,
+        new HighwayOverview.Parameters(
+          args.getDouble("overview_snap_pixels", "grid size in pixels that overview road vertices are snapped to", 1),
+          args.getDouble("overview_min_spur_pixels", "overview road spurs shorter than this many pixels are pruned", 8),
+          1),
+        HighwayOverview.parseLimits(args.getString("overview_limits",
+          "per-zoom overview tile caps as zoom:maxFeatures:maxBytes entries separated by commas", ""),
+          HighwayOverview.defaultLimits(overviewMaxZoom)));
+    } else {
+      this.overview = null;
+    }
+    int budgetBytes = args.getInteger("tile_budget_bytes",
+      "encoded highway layer bytes above which dense tiles are degraded, 0 to disable", 0);
+    if (budgetBytes > 0) {
+      this.tileBudget = new HighwayTileBudget(
+        args.getInteger("tile_budget_min_zoom", "lowest zoom at which the tile budget applies", 12),
+        globalMaxZoom,
+        budgetBytes,
+        args.getInteger("tile_budget_features", "highway features above which dense tiles are degraded", 20_000),
+        args.getList("tile_budget_drop", "highway classes dropped one after another from tiles over the budget",
+          List.of(this.highwayStyles.get(0).category, this.highwayStyles.get(Math.min(1, categoryCount - 1)).category +
+            "_link")));
+    } else {
+      this.tileBudget = null;
+    }
+    if (args.getBoolean("style_palette",
+      "encode each highway as a single per-zoom style id that resolves to a palette in the tileset metadata",
+      false)) {
+      this.palette = new HighwayPalette();
+      registerPaletteStyles();
+    } else {
+      this.palette = null;
+    }
+  }
+
+  private SingleHighwayLayer(SingleHighwayLayer template, Stats stats) {
+    this.highwayStyles = template.highwayStyles;
+    this.highwayClasses = template.highwayClasses;
+    this.categoryCount = template.categoryCount;
+    this.stats = stats;
+    this.singleFeature = template.singleFeature;
+    this.presort = template.presort;
+    this.jfrEvents = template.jfrEvents;
+    this.bufferStats = template.bufferStats;
+    this.palette = template.palette;
+    this.lineMerger = template.lineMerger.withEmptyStats();
+    this.overview = template.overview == null ? null : template.overview.withEmptyStats();
+    this.tileBudget = template.tileBudget == null ? null : template.tileBudget.withEmptyStats();
+    this.buffer = template.buffer.withEmptyStats();
+    this.metrics = new HighwayMetrics(template.highwayStyles.stream().map(style -> style.category).toList(),
+      template.globalMaxZoom);
+    this.unusualLineSortKeys = template.unusualLineSortKeys;
+    this.tunnelAndBridgeMinZoom = template.tunnelAndBridgeMinZoom;
+    this.globalMaxZoom = template.globalMaxZoom;
   }
 
-  private boolean isBridge(SourceFeature sourceFeature) {
-    return sourceFeature.hasTag("bridge");
+  /**
+   * Returns a profile for another build that shares the precomputed highway classes, attribute flyweights and palette
+   * of this one, but reports to {@code stats} and keeps its own merge statistics.
+   */
+  SingleHighwayLayer forBuild(Stats stats) {
+    return new SingleHighwayLayer(this, stats);
+  }
+
+  static class HighwayClass {
+    static final int MIN_CACHED_LAYER = -5;
+    static final int MAX_CACHED_LAYER = 5;
+    private static final int LAYER_SLOTS = MAX_CACHED_LAYER - MIN_CACHED_LAYER + 2;
+
+    final int categoryIndex;
+    final boolean isLink;
+    final int minZoom;
+    final HighwayStyle style;
+    final Double casingLineWidthZ20;
+    final Double lineWidthZ20;
+    final LineWidth casingLineWidth;
+    final LineWidth lineWidth;
+    final LineColor casingLineColor;
+    final LineColor lineColor;
+    final LineColor tunnelCasingLineColor;
+    final LineColor tunnelLineColor;
+    private final LineSortKey[] lineSortKeys;
+
+    HighwayClass(int categoryIndex, boolean isLink, int minZoom, HighwayStyle style, int categoryCount) {
+      this.categoryIndex = categoryIndex;
+      this.isLink = isLink;
+      this.minZoom = minZoom;
+      this.style = style;
+      this.lineWidthZ20 = 5 * (style.lineWidthLevels[14] - (isLink ? 1.5 : 0));
+      this.casingLineWidthZ20 = lineWidthZ20 + 2;
+      this.casingLineWidth = new LineWidth(true, isLink, style.lineWidthLevels);
+      this.lineWidth = new LineWidth(false, isLink, style.lineWidthLevels);
+      this.casingLineColor = new LineColor(false, true, style.casingLineColorLevels);
+      this.lineColor = new LineColor(false, false, style.lineColorLevels);
+      this.tunnelCasingLineColor = new LineColor(true, true, style.casingLineColorLevels);
+      this.tunnelLineColor = new LineColor(true, false, style.lineColorLevels);
+      this.lineSortKeys = new LineSortKey[8 * LAYER_SLOTS];
+      for (int flags = 0; flags < 8; flags++) {
+        boolean isCasing = (flags & 4) != 0;
+        boolean isBridge = (flags & 2) != 0;
+        boolean isTunnel = (flags & 1) != 0;
+        for (int slot = 0; slot < LAYER_SLOTS; slot++) {
+          Integer layer = slot == 0 ? null : MIN_CACHED_LAYER + slot - 1;
+          lineSortKeys[flags * LAYER_SLOTS + slot] =
+            new LineSortKey(categoryIndex, isLink, isBridge, isTunnel, layer, isCasing, categoryCount);
+        }
+      }
+    }
+
+    LineColor lineColor(boolean isTunnel, boolean isCasing) {
+      if (isTunnel) {
+        return isCasing ? tunnelCasingLineColor : tunnelLineColor;
+      }
+      return isCasing ? casingLineColor : lineColor;
+    }
+
+    LineWidth lineWidth(boolean isCasing) {
+      return isCasing ? casingLineWidth : lineWidth;
+    }
+
+    LineSortKey lineSortKey(boolean isBridge, boolean isTunnel, int layer, boolean isCasing) {
+      int slot;
+      if ((!isBridge && !isTunnel) || layer == HighwayTags.NO_LAYER) {
+        slot = 0;
+      } else if (layer >= MIN_CACHED_LAYER && layer <= MAX_CACHED_LAYER) {
+        slot = layer - MIN_CACHED_LAYER + 1;
+      } else {
+        return null;
+      }
+      int flags = (isCasing ? 4 : 0) | (isBridge ? 2 : 0) | (isTunnel ? 1 : 0);
+      return lineSortKeys[flags * LAYER_SLOTS + slot];
+    }
+  }
+
+  private LineSortKey lineSortKey(HighwayClass highwayClass, boolean isBridge, boolean isTunnel, int layer,
+    boolean isCasing) {
+    LineSortKey cached = highwayClass.lineSortKey(isBridge, isTunnel, layer, isCasing);
+    if (cached != null) {
+      return cached;
+    }
+    long key = ((long) layer << 32) | ((long) highwayClass.categoryIndex << 4) | (highwayClass.isLink ? 8 : 0) |
+      (isBridge ? 4 : 0) | (isTunnel ? 2 : 0) | (isCasing ? 1 : 0);
+    LineSortKey result = unusualLineSortKeys.get(key);
+    if (result == null) {
+      result = new LineSortKey(highwayClass.categoryIndex, highwayClass.isLink, isBridge, isTunnel, layer, isCasing,
+        categoryCount);
+      if (unusualLineSortKeys.size() < MAX_UNUSUAL_LINE_SORT_KEYS) {
+        LineSortKey existing = unusualLineSortKeys.putIfAbsent(key, result);
+        if (existing != null) {
+          result = existing;
+        }
+      }
+    }
+    return result;
   }
 
   @Override
@@ -44,71 +277,103 @@ public class SingleHighwayLayer implements Profile {
     return null;
   }
 
-  class LineWidth implements ZoomFunction<Number> {
-    boolean isCasing;
-    boolean isLink;
-    double[] levels;
+  static class LineWidth implements ZoomFunction<Number> {
+    final boolean isCasing;
+    final boolean isLink;
+    private final Double[] values;
 
     public LineWidth(boolean isCasing, boolean isLink, double[] levels) {
       this.isCasing = isCasing;
       this.isLink = isLink;
-      this.levels = levels;
+      this.values = new Double[levels.length];
+      for (int zoom = 0; zoom < levels.length; zoom++) {
+        double width = levels[zoom];
+        if (isCasing) {
+          width += 2.0;
+        }
+        if (isLink) {
+          width -= 1.5;
+        }
+        values[zoom] = width;
+      }
     }
+
     @Override
     public Number apply(int value) {
-      double width = levels[value];
-      if (isCasing) {
-        width += 2.0;
-      }
-      if (isLink) {
-        width -= 1.5;
-      }
-      return width;
+      return values[value];
     }
   }
 
-  class LineSortKey implements ZoomFunction<Number> {
-    int categoryIndex;
-    boolean isLink;
-    boolean isBridge;
-    boolean isTunnel;
-    Integer layer;
-    boolean isCasing;
-
-    public LineSortKey(int categoryIndex, boolean isLink, boolean isBridge, boolean isTunnel, Integer layer, boolean isCasing) {
-      this.categoryIndex = categoryIndex; 
-      this.isLink = isLink; 
-      this.isBridge = isBridge; 
-      this.isTunnel = isTunnel; 
+  static class LineSortKey implements ZoomFunction<Number> {
+    final int categoryIndex;
+    final boolean isLink;
+    final boolean isBridge;
+    final boolean isTunnel;
+    final Integer layer;
+    final boolean isCasing;
+    final int categoryCount;
+    private final Integer[] values;
+
+    public LineSortKey(int categoryIndex, boolean isLink, boolean isBridge, boolean isTunnel, Integer layer,
+      boolean isCasing, int categoryCount) {
+      this.categoryIndex = categoryIndex;
+      this.isLink = isLink;
+      this.isBridge = isBridge;
+      this.isTunnel = isTunnel;
       this.layer = layer;
       this.isCasing = isCasing;
+      this.categoryCount = categoryCount;
+      this.values = new Integer[HighwayStyle.ZOOM_LEVELS];
+      for (int zoom = 0; zoom < values.length; zoom++) {
+        values[zoom] = compute(zoom);
+      }
     }
+
     @Override
     public Number apply(int value) {
+      return value < values.length ? values[value] : compute(value);
+    }
+
+    /** Returns the category index that produced {@code key} at {@code zoom}, the inverse of {@link #apply}. */
+    static int categoryIndex(int key, int zoom, int categoryCount) {
+      if (zoom < 14) {
+        return Math.floorMod(key, 2 * categoryCount) / 2;
+      }
+      return Math.floorMod(key, 4 * categoryCount) % categoryCount;
+    }
+
+    static boolean isLink(int key, int zoom, int categoryCount) {
+      if (zoom < 14) {
+        return Math.floorMod(key, 4 * categoryCount) < 2 * categoryCount;
+      }
+      return Math.floorMod(key, 4 * categoryCount) % (2 * categoryCount) < categoryCount;
+    }
+
+    private int compute(int value) {
       int result = 0;
       if (value < 14) {
-        result += 2 * categoryIndex + (isCasing ? 0 : 1) + (isLink ? 0 : 2 * highwayCategories.length);
+        result += 2 * categoryIndex + (isCasing ? 0 : 1) + (isLink ? 0 : 2 * categoryCount);
       }
       else {
-        result += categoryIndex + (isCasing ? 0 : 1) * 2 * highwayCategories.length + (isLink ? 0 : highwayCategories.length);
+        result += categoryIndex + (isCasing ? 0 : 1) * 2 * categoryCount + (isLink ? 0 : categoryCount);
       }
 
       if (14 <= value) {
         if (isBridge) {
-          result += (layer == null ? 1 : layer) * 4 * highwayCategories.length;
+          result += (layer == null ? 1 : layer) * 4 * categoryCount;
         }
         if (isTunnel) {
-          result += (layer == null ? -1 : layer) * 4 * highwayCategories.length;
+          result += (layer == null ? -1 : layer) * 4 * categoryCount;
         }
       }
       return result;
     }
   }
 
-  class LineColor implements ZoomFunction<String> {
-    boolean isTunnel;
-    boolean isCasing;
-    String[] levels;
+  static class LineColor implements ZoomFunction<String> {
+    final boolean isTunnel;
+    final boolean isCasing;
+    private final String[] levels;
 
     public LineColor(boolean isTunnel, boolean isCasing, String[] levels) {
       this.isTunnel = isTunnel;
@@ -134,505 +399,253 @@ public class SingleHighwayLayer implements Profile {
 
   @Override
   public void processFeature(SourceFeature sourceFeature, FeatureCollector features) {
+    Object highway = sourceFeature.getTag("highway");
+    if (highway == null) {
+      return;
+    }
+    HighwayClass highwayClass = highwayClasses.get(highway);
+    if (highwayClass == null || !sourceFeature.canBeLine()) {
+      return;
+    }
+    HighwayEvents.ProcessFeature event = null;
+    if (jfrEvents) {
+      event = new HighwayEvents.ProcessFeature();
+      event.begin();
+    }
+
+    boolean isTunnel = HighwayTags.isTunnel(sourceFeature);
+    boolean isBridge = HighwayTags.isBridge(sourceFeature);
+    int minZoom = highwayClass.minZoom;
+    int maxZoom = globalMaxZoom;
+    int layer = HighwayTags.layer(sourceFeature, stats);
+    metrics.matched(highwayClass.categoryIndex, highwayClass.isLink, isBridge, isTunnel);
+    if (layer == HighwayTags.NO_LAYER && sourceFeature.hasTag("layer")) {
+      metrics.malformedLayer();
+    }
+
+    if (overview != null && !highwayClass.isLink && overview.covers(highwayClass.categoryIndex)) {
+      minZoom = overview.maxZoom() + 1;
+      if (overviewLines != null) {
+        collectOverview(sourceFeature, highwayClass);
+      }
+    }
+
+    if (highwayStore != null) {
+      storeWay(sourceFeature, highway.toString(), isBridge, isTunnel, layer);
+    }
+    if (bufferStats) {
+      recordBuffer(sourceFeature, minZoom, maxZoom);
+    }
 
-    if (sourceFeature.canBeLine() && sourceFeature.hasTag("highway", "unclassified")) {
-      int categoryIndex = Arrays.asList(highwayCategories).indexOf("unclassified");
-      boolean isLink = false;
-      boolean isTunnel = isTunnel(sourceFeature);
-      boolean isBridge = isBridge(sourceFeature);
-      
-      int minZoom = 12;
-      int maxZoom = globalMaxZoom;
-      Integer layer = sourceFeature.hasTag("layer") ? Integer.parseInt(sourceFeature.getTag("layer").toString()) : null;
-
-      double[] lineWidthLevels = {
-        0.0, // z0
-        0.0, // z1
-        0.0, // z2
-        0.0, // z3
-        0.0, // z4
-        0.0, // z5
-        0.0, // z6
-        0.0, // z7
-        0.0, // z8
-        0.0, // z9
-        0.0, // z10
-        0.0, // z11
-        1.0, // z12
-        1.5, // z13
-        2.0, // z14
-      };
-
-      String[] casingLineColorLevels = {
-        "", // z0
-        "", // z1
-        "", // z2
-        "", // z3
-        "", // z4
-        "", // z5
-        "", // z6
-        "", // z7
-        "", // z8
-        "", // z9
-        "", // z10
-        "", // z11
-        "#ccc", // z12
-        "#ccc", // z13
-        "#ccc", // z14
-      };
-
-      String[] lineColorLevels = {
-        "", // z0
-        "", // z1
-        "", // z2
-        "", // z3
-        "", // z4
-        "", // z5
-        "", // z6
-        "", // z7
-        "", // z8
-        "", // z9
-        "", // z10
-        "", // z11
-        "white", // z12
-        "white", // z13
-        "white", // z14
-      };
-
-      features.line("highway")
-        .setMinPixelSize(0)
-        .setMinZoom(minZoom)
-        .setMaxZoom(maxZoom)
-        .setAttr("line-sort-key", new LineSortKey(categoryIndex, isLink, isBridge, isTunnel, layer, true))
-        .setAttr("line-color", new LineColor(isTunnel, true, casingLineColorLevels))
-        .setAttr("line-width", new LineWidth(true, isLink, lineWidthLevels))
-        .setAttr("line-width-z20", 5 * (lineWidthLevels[14] - (isLink ? 1.5 : 0)) + 2);
-      
-      features.line("highway")
-        .setMinPixelSize(0)
-        .setMinZoom(minZoom)
-        .setMaxZoom(maxZoom)
-        .setAttr("line-sort-key", new LineSortKey(categoryIndex, isLink, isBridge, isTunnel, layer, false))
-        .setAttr("line-color", new LineColor(isTunnel, false, lineColorLevels))
-        .setAttr("line-width", new LineWidth(false, isLink, lineWidthLevels))
-        .setAttr("line-width-z20", 5 * (lineWidthLevels[14] - (isLink ? 1.5 : 0)));
-    }
-
-    if (sourceFeature.canBeLine() && sourceFeature.hasTag("highway", "tertiary", "tertiary_link")) {
-
-      int categoryIndex = Arrays.asList(highwayCategories).indexOf("tertiary");
-      boolean isLink = sourceFeature.getTag("highway").toString().endsWith("_link");
-      boolean isTunnel = isTunnel(sourceFeature);
-      boolean isBridge = isBridge(sourceFeature);
-      int minZoom = isLink ? 14 : 10;
-      int maxZoom = globalMaxZoom;
-      Integer layer = sourceFeature.hasTag("layer") ? Integer.parseInt(sourceFeature.getTag("layer").toString()) : null;
-
-      double[] lineWidthLevels = {
-        0.0, // z0
-        0.0, // z1
-        0.0, // z2
-        0.0, // z3
-        0.0, // z4
-        0.0, // z5
-        0.0, // z6
-        0.0, // z7
-        0.0, // z8
-        0.0, // z9
-        1.0, // z10
-        1.0, // z11
-        2.0, // z12
-        2.5, // z13
-        3.0, // z14
-      };
-
-      String[] casingLineColorLevels = {
-        "", // z0
-        "", // z1
-        "", // z2
-        "", // z3
-        "", // z4
-        "", // z5
-        "", // z6
-        "", // z7
-        "", // z8
-        "", // z9
-        "#ccc", // z10
-        "#ccc", // z11
-        "#bbb", // z12
-        "#bbb", // z13
-        "#bbb", // z14
-      };
-
-      String[] lineColorLevels = {
-        "", // z0
-        "", // z1
-        "", // z2
-        "", // z3
-        "", // z4
-        "", // z5
-        "", // z6
-        "", // z7
-        "", // z8
-        "", // z9
-        "white", // z10
-        "white", // z11
-        "white", // z12
-        "white", // z13
-        "white", // z14
-      };
-
-      features.line("highway")
-        .setMinPixelSize(0)
-        .setMinZoom(minZoom)
-        .setMaxZoom(maxZoom)
-        .setAttr("line-sort-key", new LineSortKey(categoryIndex, isLink, isBridge, isTunnel, layer, true))
-        .setAttr("line-color", new LineColor(isTunnel, true, casingLineColorLevels))
-        .setAttr("line-width", new LineWidth(true, isLink, lineWidthLevels))
-        .setAttr("line-width-z20", 5 * (lineWidthLevels[14] - (isLink ? 1.5 : 0)) + 2);
-      
-      features.line("highway")
-        .setMinPixelSize(0)
-        .setMinZoom(minZoom)
-        .setMaxZoom(maxZoom)
-        .setAttr("line-sort-key", new LineSortKey(categoryIndex, isLink, isBridge, isTunnel, layer, false))
-        .setAttr("line-color", new LineColor(isTunnel, false, lineColorLevels))
-        .setAttr("line-width", new LineWidth(false, isLink, lineWidthLevels))
-        .setAttr("line-width-z20", 5 * (lineWidthLevels[14] - (isLink ? 1.5 : 0)));
-    }
-
-    if (sourceFeature.canBeLine() && sourceFeature.hasTag("highway", "secondary", "secondary_link")) {
-
-      int categoryIndex = Arrays.asList(highwayCategories).indexOf("secondary");
-      boolean isLink = sourceFeature.getTag("highway").toString().endsWith("_link");
-      boolean isTunnel = isTunnel(sourceFeature);
-      boolean isBridge = isBridge(sourceFeature);
-      int minZoom = isLink ? linkMinZoom : 9;
-      int maxZoom = globalMaxZoom;
-      Integer layer = sourceFeature.hasTag("layer") ? Integer.parseInt(sourceFeature.getTag("layer").toString()) : null;
-
-      double[] lineWidthLevels = {
-        0.0, // z0
-        0.0, // z1
-        0.0, // z2
-        0.0, // z3
-        0.0, // z4
-        0.0, // z5
-        0.0, // z6
-        0.0, // z7
-        0.0, // z8
-        1.0, // z9
-        1.0, // z10
-        2.0, // z11
-        2.5, // z12
-        3.0, // z13
-        3.5, // z14
-      };
-
-      String[] casingLineColorLevels = {
-        "", // z0
-        "", // z1
-        "", // z2
-        "", // z3
-        "", // z4
-        "", // z5
-        "", // z6
-        "", // z7
-        "", // z8
-        "#9b59b6", // z9
-        "#9b59b6", // z10
-        "#9b59b6", // z11
-        "#9b59b6", // z12
-        "#9b59b6", // z13
-        "#9b59b6", // z14
-      };
-
-      String[] lineColorLevels = {
-        "", // z0
-        "", // z1
-        "", // z2
-        "", // z3
-        "", // z4
-        "", // z5
-        "", // z6
-        "", // z7
-        "", // z8
-        "white", // z9
-        "white", // z10
-        "white", // z11
-        "white", // z12
-        "white", // z13
-        "white", // z14
-      };
-
-      features.line("highway")
-        .setMinPixelSize(0)
-        .setMinZoom(minZoom)
-        .setMaxZoom(maxZoom)
-        .setAttr("line-sort-key", new LineSortKey(categoryIndex, isLink, isBridge, isTunnel, layer, true))
-        .setAttr("line-color", new LineColor(isTunnel, true, casingLineColorLevels))
-        .setAttr("line-width", new LineWidth(true, isLink, lineWidthLevels))
-        .setAttr("line-width-z20", 5 * (lineWidthLevels[14] - (isLink ? 1.5 : 0)) + 2);
-      
-      features.line("highway")
-        .setMinPixelSize(0)
-        .setMinZoom(minZoom)
-        .setMaxZoom(maxZoom)
-        .setAttr("line-sort-key", new LineSortKey(categoryIndex, isLink, isBridge, isTunnel, layer, false))
-        .setAttr("line-color", new LineColor(isTunnel, false, lineColorLevels))
-        .setAttr("line-width", new LineWidth(false, isLink, lineWidthLevels))
-        .setAttr("line-width-z20", 5 * (lineWidthLevels[14] - (isLink ? 1.5 : 0)));
-    }
-
-    if (sourceFeature.canBeLine() && sourceFeature.hasTag("highway", "primary", "primary_link")) {
-
-      int categoryIndex = Arrays.asList(highwayCategories).indexOf("primary");
-      boolean isLink = sourceFeature.getTag("highway").toString().endsWith("_link");
-      boolean isTunnel = isTunnel(sourceFeature);
-      boolean isBridge = isBridge(sourceFeature);
-      int minZoom = isLink ? linkMinZoom : 8;
-      int maxZoom = globalMaxZoom;
-      Integer layer = sourceFeature.hasTag("layer") ? Integer.parseInt(sourceFeature.getTag("layer").toString()) : null;
-
-      double[] lineWidthLevels = {
-        0.0, // z0
-        0.0, // z1
-        0.0, // z2
-        0.0, // z3
-        0.0, // z4
-        0.0, // z5
-        0.0, // z6
-        0.0, // z7
-        1.0, // z8
-        1.0, // z9
-        1.0, // z10
-        2.0, // z11
-        2.5, // z12
-        3.0, // z13
-        3.5, // z14
-      };
-
-      String[] casingLineColorLevels = {
-        "", // z0
-        "", // z1
-        "", // z2
-        "", // z3
-        "", // z4
-        "", // z5
-        "", // z6
-        "", // z7
-        "#3498db", // z8
-        "#3498db", // z9
-        "#3498db", // z10
-        "#3498db", // z11
-        "#3498db", // z12
-        "#3498db", // z13
-        "#3498db", // z14
-      };
-
-      String[] lineColorLevels = {
-        "", // z0
-        "", // z1
-        "", // z2
-        "", // z3
-        "", // z4
-        "", // z5
-        "", // z6
-        "", // z7
-        "white", // z8
-        "white", // z9
-        "white", // z10
-        "white", // z11
-        "white", // z12
-        "white", // z13
-        "white", // z14
-      };
-
-      features.line("highway")
-        .setMinPixelSize(0)
-        .setMinZoom(minZoom)
-        .setMaxZoom(maxZoom)
-        .setAttr("line-sort-key", new LineSortKey(categoryIndex, isLink, isBridge, isTunnel, layer, true))
-        .setAttr("line-color", new LineColor(isTunnel, true, casingLineColorLevels))
-        .setAttr("line-width", new LineWidth(true, isLink, lineWidthLevels))
-        .setAttr("line-width-z20", 5 * (lineWidthLevels[14] - (isLink ? 1.5 : 0)) + 2);
-      
-      features.line("highway")
-        .setMinPixelSize(0)
-        .setMinZoom(minZoom)
-        .setMaxZoom(maxZoom)
-        .setAttr("line-sort-key", new LineSortKey(categoryIndex, isLink, isBridge, isTunnel, layer, false))
-        .setAttr("line-color", new LineColor(isTunnel, false, lineColorLevels))
-        .setAttr("line-width", new LineWidth(false, isLink, lineWidthLevels))
-        .setAttr("line-width-z20", 5 * (lineWidthLevels[14] - (isLink ? 1.5 : 0)));
-    }
-
-    if (sourceFeature.canBeLine() && sourceFeature.hasTag("highway", "trunk", "trunk_link")) {
-
-      int categoryIndex = Arrays.asList(highwayCategories).indexOf("trunk");
-      boolean isLink = sourceFeature.getTag("highway").toString().endsWith("_link");
-      boolean isTunnel = isTunnel(sourceFeature);
-      boolean isBridge = isBridge(sourceFeature);
-      int minZoom = isLink ? linkMinZoom : 7;
-      int maxZoom = globalMaxZoom;
-      Integer layer = sourceFeature.hasTag("layer") ? Integer.parseInt(sourceFeature.getTag("layer").toString()) : null;
-
-      double[] lineWidthLevels = {
-        0.0, // z0
-        0.0, // z1
-        0.0, // z2
-        0.0, // z3
-        0.0, // z4
-        0.0, // z5
-        0.0, // z6
-        1.0, // z7
-        1.5, // z8
-        2.0, // z9
-        2.5, // z10
-        3.0, // z11
-        3.5, // z12
-        4.0, // z13
-        4.5, // z14
-      };
-
-      String[] casingLineColorLevels = {
-        "", // z0
-        "", // z1
-        "", // z2
-        "", // z3
-        "", // z4
-        "", // z5
-        "", // z6
-        "#2ecc71", // z7
-        "#2ecc71", // z8
-        "#2ecc71", // z9
-        "#2ecc71", // z10
-        "#2ecc71", // z11
-        "#2ecc71", // z12
-        "#2ecc71", // z13
-        "#2ecc71", // z14
-      };
-
-      String[] lineColorLevels = {
-        "", // z0
-        "", // z1
-        "", // z2
-        "", // z3
-        "", // z4
-        "", // z5
-        "", // z6
-        "white", // z7
-        "white", // z8
-        "white", // z9
-        "white", // z10
-        "white", // z11
-        "white", // z12
-        "white", // z13
-        "white", // z14
-      };
-
-      features.line("highway")
-        .setMinPixelSize(0)
-        .setMinZoom(minZoom)
-        .setMaxZoom(maxZoom)
-        .setAttr("line-sort-key", new LineSortKey(categoryIndex, isLink, isBridge, isTunnel, layer, true))
-        .setAttr("line-color", new LineColor(isTunnel, true, casingLineColorLevels))
-        .setAttr("line-width", new LineWidth(true, isLink, lineWidthLevels))
-        .setAttr("line-width-z20", 5 * (lineWidthLevels[14] - (isLink ? 1.5 : 0)) + 2);
-      
-      features.line("highway")
-        .setMinPixelSize(0)
-        .setMinZoom(minZoom)
-        .setMaxZoom(maxZoom)
-        .setAttr("line-sort-key", new LineSortKey(categoryIndex, isLink, isBridge, isTunnel, layer, false))
-        .setAttr("line-color", new LineColor(isTunnel, false, lineColorLevels))
-        .setAttr("line-width", new LineWidth(false, isLink, lineWidthLevels))
-        .setAttr("line-width-z20", 5 * (lineWidthLevels[14] - (isLink ? 1.5 : 0)));
-    }
-
-    if (sourceFeature.canBeLine() && sourceFeature.hasTag("highway", "motorway", "motorway_link")) {
-
-      int categoryIndex = Arrays.asList(highwayCategories).indexOf("motorway");
-      boolean isLink = sourceFeature.getTag("highway").toString().endsWith("_link");
-      boolean isTunnel = isTunnel(sourceFeature);
-      boolean isBridge = isBridge(sourceFeature);
-      int minZoom = isLink ? linkMinZoom : 6;
-      int maxZoom = globalMaxZoom;
-      Integer layer = sourceFeature.hasTag("layer") ? Integer.parseInt(sourceFeature.getTag("layer").toString()) : null;
-
-      double[] lineWidthLevels = {
-        0.0, // z0
-        0.0, // z1
-        0.0, // z2
-        0.0, // z3
-        0.0, // z4
-        0.0, // z5
-        1.0, // z6
-        1.5, // z7
-        2.0, // z8
-        2.5, // z9
-        3.0, // z10
-        3.5, // z11
-        4.0, // z12
-        4.5, // z13
-        5.0, // z14
-      };
-
-      String[] casingLineColorLevels = {
-        "", // z0
-        "", // z1
-        "", // z2
-        "", // z3
-        "", // z4
-        "", // z5
-        "#fab724", // z6
-        "#fab724", // z7
-        "#fab724", // z8
-        "#fab724", // z9
-        "#fab724", // z10
-        "#fab724", // z11
-        "#fab724", // z12
-        "#fab724", // z13
-        "#fab724", // z14
-      };
-
-      String[] lineColorLevels = {
-        "", // z0
-        "", // z1
-        "", // z2
-        "", // z3
-        "", // z4
-        "", // z5
-        "#feefc3", // z6
-        "#feefc3", // z7
-        "#feefc3", // z8
-        "#feefc3", // z9
-        "#feefc3", // z10
-        "#feefc3", // z11
-        "#feefc3", // z12
-        "#feefc3", // z13
-        "#feefc3", // z14
-      };
-
-      features.line("highway")
-        .setMinPixelSize(0)
-        .setMinZoom(minZoom)
-        .setMaxZoom(maxZoom)
-        .setAttr("line-sort-key", new LineSortKey(categoryIndex, isLink, isBridge, isTunnel, layer, true))
-        .setAttr("line-color", new LineColor(isTunnel, true, casingLineColorLevels))
-        .setAttr("line-width", new LineWidth(true, isLink, lineWidthLevels))
-        .setAttr("line-width-z20", 5 * (lineWidthLevels[14] - (isLink ? 1.5 : 0)) + 2);
-      
-      features.line("highway")
-        .setMinPixelSize(0)
-        .setMinZoom(minZoom)
-        .setMaxZoom(maxZoom)
-        .setAttr("line-sort-key", new LineSortKey(categoryIndex, isLink, isBridge, isTunnel, layer, false))
-        .setAttr("line-color", new LineColor(isTunnel, false, lineColorLevels))
-        .setAttr("line-width", new LineWidth(false, isLink, lineWidthLevels))
-        .setAttr("line-width-z20", 5 * (lineWidthLevels[14] - (isLink ? 1.5 : 0)));
+    emitHighway(features, highwayClass, isBridge, isTunnel, layer, minZoom, maxZoom);
+    if (event != null) {
+      event.end(highway.toString(), highwayClass.isLink, isBridge, isTunnel);
     }
+  }
 
+  private void storeWay(SourceFeature sourceFeature, String highway, boolean isBridge, boolean isTunnel, int layer) {
+    try {
+      HighwayStore.Way way = HighwayStore.fromSource(sourceFeature, highway, isBridge, isTunnel, layer);
+      if (way != null) {
+        highwayStore.write(way);
+      }
+    } catch (GeometryException e) {
+      stats.dataError("highway_store_geometry");
+    }
+  }
+
+  private void recordBuffer(SourceFeature sourceFeature, int minZoom, int maxZoom) {
+    try {
+      if (sourceFeature.worldGeometry() instanceof LineString line) {
+        buffer.recordWay(line, minZoom, maxZoom);
+      }
+    } catch (GeometryException e) {
+      stats.dataError("highway_buffer_geometry");
+    }
+  }
+
+  private void collectOverview(SourceFeature sourceFeature, HighwayClass highwayClass) {
+    try {
+      if (sourceFeature.worldGeometry() instanceof LineString line) {
+        overviewLines.add(highwayClass.categoryIndex, line);
+      }
+    } catch (GeometryException e) {
+      stats.dataError("highway_overview_geometry");
+    }
+  }
+
+  /**
+   * Starts collecting the major roads drawn at overview zooms while processing, so that {@link #finish} emits their
+   * generalized network, or stops when {@code enabled} is false.
+   */
+  void collectOverview(boolean enabled) {
+    this.overviewLines = enabled && overview != null ? overview.collector() : null;
+  }
+
+  @Override
+  public void finish(String sourceName, FeatureCollector.Factory featureCollectors,
+    Consumer<FeatureCollector.Feature> emit) {
+    if (overviewLines != null) {
+      overviewLines.logMemory(LOGGER);
+      emitOverview(overviewLines.lines(), featureCollectors, emit);
+      overviewLines = null;
+    }
+  }
+
+  /**
+   * Emits the generalized network of {@code lines} for every overview zoom. The chains are numbered per zoom instead of
+   * taking the process-wide ids of {@link SimpleFeature}, so the build and the store renderers write the same ids.
+   */
+  void emitOverview(Collection<HighwayOverview.Line> lines, FeatureCollector.Factory featureCollectors,
+    Consumer<FeatureCollector.Feature> emit) {
+    for (int zoom = overview.minZoom(); zoom <= overview.maxZoom(); zoom++) {
+      long id = 0;
+      for (HighwayOverview.Line line : overview.generalize(zoom, lines)) {
+        HighwayClass highwayClass = highwayClasses.get(highwayStyles.get(line.categoryIndex()).category);
+        FeatureCollector features = featureCollectors.get(SimpleFeature.fromWorldGeometry(line.worldGeometry()));
+        emitHighway(features, highwayClass, false, false, HighwayTags.NO_LAYER, zoom, zoom);
+        id++;
+        for (FeatureCollector.Feature feature : features) {
+          emit.accept(feature.setId(id));
+        }
+      }
+    }
+  }
+
+  /** Returns the overview input lines of the stored ways, for rendering outside of a Planetiler run. */
+  Collection<HighwayOverview.Line> overviewLines(Collection<HighwayStore.Way> ways) {
+    HighwayOverview.Collector collector = overview.collector();
+    for (HighwayStore.Way way : ways) {
+      if (inOverview(way)) {
+        collector.add(highwayClasses.get(way.highway()).categoryIndex, way.worldGeometry());
+      }
+    }
+    return collector.lines();
+  }
+
+  /** Returns whether a stored way is part of the input of the overview network. */
+  boolean inOverview(HighwayStore.Way way) {
+    HighwayClass highwayClass = highwayClasses.get(way.highway());
+    return overview != null && highwayClass != null && !highwayClass.isLink &&
+      overview.covers(highwayClass.categoryIndex);
+  }
+
+  /**
+   * Returns the lowest zoom at which a stored way is drawn from its own geometry, above the overview zooms for the
+   * major roads that the overview draws, or {@link Integer#MAX_VALUE} when the way is not a highway of this profile.
+   */
+  int rawMinZoom(HighwayStore.Way way) {
+    HighwayClass highwayClass = highwayClasses.get(way.highway());
+    if (highwayClass == null) {
+      return Integer.MAX_VALUE;
+    }
+    return inOverview(way) ? overview.maxZoom() + 1 : highwayClass.minZoom;
+  }
+
+  /** Records every classified highway way into {@code writer} while processing, or stops recording when null. */
+  void setHighwayStore(HighwayStore.Writer writer) {
+    this.highwayStore = writer;
+  }
+
+  private void emitHighway(FeatureCollector features, HighwayClass highwayClass, boolean isBridge, boolean isTunnel,
+    int layer, int minZoom, int maxZoom) {
+    if (!singleFeature) {
+      emitLine(features, highwayClass, isBridge, isTunnel, layer, minZoom, maxZoom, true);
+    }
+    emitLine(features, highwayClass, isBridge, isTunnel, layer, minZoom, maxZoom, false);
+  }
+
+  private void emitLine(FeatureCollector features, HighwayClass highwayClass, boolean isBridge, boolean isTunnel,
+    int layer, int minZoom, int maxZoom, boolean isCasing) {
+    LineSortKey lineSortKey = lineSortKey(highwayClass, isBridge, isTunnel, layer, isCasing);
+    FeatureCollector.Feature line = features.line("highway")
+      .setMinPixelSize(0)
+      .setBufferPixelOverrides(buffer)
+      .setMinZoom(minZoom)
+      .setMaxZoom(maxZoom);
+
+    if (palette != null) {
+      line.setAttr(HighwayPalette.STYLE_ID, styleId(highwayClass, lineSortKey, isTunnel, isCasing));
+      return;
+    }
+
+    line
+      .setAttr("line-sort-key", lineSortKey)
+      .setAttr("line-color", highwayClass.lineColor(isTunnel, isCasing))
+      .setAttr("line-width", highwayClass.lineWidth(isCasing))
+      .setAttr("line-width-z20", isCasing ? highwayClass.casingLineWidthZ20 : highwayClass.lineWidthZ20);
+    if (singleFeature) {
+      line.setAttr("casing-color", highwayClass.lineColor(isTunnel, true));
+    }
+  }
+
+  private HighwayPalette.StyleId styleId(HighwayClass highwayClass, LineSortKey lineSortKey, boolean isTunnel,
+    boolean isCasing) {
+    HighwayPalette.StyleId styleId = palette.cached(lineSortKey);
+    if (styleId == null) {
+      styleId = palette.register(
+        lineSortKey,
+        highwayClass.lineColor(isTunnel, isCasing),
+        highwayClass.lineWidth(isCasing),
+        isCasing ? highwayClass.casingLineWidthZ20 : highwayClass.lineWidthZ20,
+        singleFeature ? highwayClass.lineColor(isTunnel, true) : null,
+        highwayClass.minZoom,
+        globalMaxZoom
+      );
+    }
+    return styleId;
+  }
+
+  private void registerPaletteStyles() {
+    for (HighwayStyle style : highwayStyles) {
+      for (String value : List.of(style.category, style.category + "_link")) {
+        HighwayClass highwayClass = highwayClasses.get(value);
+        if (highwayClass == null) {
+          continue;
+        }
+        for (int flags = 0; flags < 4; flags++) {
+          boolean isBridge = (flags & 2) != 0;
+          boolean isTunnel = (flags & 1) != 0;
+          for (int layer = HighwayClass.MIN_CACHED_LAYER - 1; layer <= HighwayClass.MAX_CACHED_LAYER; layer++) {
+            int tagLayer = layer < HighwayClass.MIN_CACHED_LAYER ? HighwayTags.NO_LAYER : layer;
+            if (!singleFeature) {
+              styleId(highwayClass, lineSortKey(highwayClass, isBridge, isTunnel, tagLayer, true), isTunnel, true);
+            }
+            styleId(highwayClass, lineSortKey(highwayClass, isBridge, isTunnel, tagLayer, false), isTunnel, false);
+          }
+        }
+      }
+    }
+  }
+
+  /** Returns the lowest zoom at which any highway class is drawn. */
+  int minZoom() {
+    int result = globalMaxZoom;
+    for (HighwayClass highwayClass : highwayClasses.values()) {
+      result = Math.min(result, highwayClass.minZoom);
+    }
+    return result;
+  }
+
+  boolean isHighwayClass(String highway) {
+    return highwayClasses.containsKey(highway);
+  }
+
+  HighwayMetrics metrics() {
+    return metrics;
+  }
+
+  HighwayLineMerger lineMerger() {
+    return lineMerger;
+  }
+
+  HighwayPalette palette() {
+    return palette;
+  }
+
+  /** Returns the generalization of major roads at overview zooms, or {@code null} when it is disabled. */
+  HighwayOverview overview() {
+    return overview;
   }
 
   @Override
@@ -640,16 +653,130 @@ public class SingleHighwayLayer implements Profile {
     List<VectorTile.Feature> items) {
 
     if ("highway".equals(layer)) {
-      return FeatureMerge.mergeLineStrings(items,
-        0.5,
-        zoom < 13 ? 0.5 : 0.1,
-        4
-      );
+      HighwayEvents.PostProcess event = null;
+      if (jfrEvents) {
+        event = new HighwayEvents.PostProcess();
+        event.begin();
+      }
+      long start = System.nanoTime();
+      List<VectorTile.Feature> merged = sortedAttributes(lineMerger.merge(zoom, canonicalOrder(items)));
+      long mergeNanos = System.nanoTime() - start;
+      if (overview != null) {
+        merged = overview.limit(zoom, merged);
+      }
+      if (tileBudget != null) {
+        merged = tileBudget.apply(zoom, merged, this);
+      }
+      if (bufferStats) {
+        buffer.record(zoom, merged);
+      }
+      metrics.postProcessed(zoom, items.size(), merged.size(), mergeNanos);
+      if (presort) {
+        merged = sortByLineSortKey(merged);
+      }
+      if (event != null) {
+        event.end(zoom, items.size(), merged.size());
+      }
+      return merged;
     }
 
     return null;
   }
 
+  /**
+   * Merges and sorts the highway features of a tile combined from several partial tiles, for example two shards
+   * drawing the same boundary tile. Unlike {@link #postProcessLayerFeatures} this leaves out the overview cap and the
+   * tile budget, which were already applied to every part.
+   */
+  List<VectorTile.Feature> mergeAndSort(int zoom, List<VectorTile.Feature> items) {
+    List<VectorTile.Feature> merged = sortedAttributes(lineMerger.merge(zoom, canonicalOrder(items)));
+    return presort ? sortByLineSortKey(merged) : merged;
+  }
+
+  /**
+   * Orders features by line sort key, then feature id, which is the OSM way id in both Planetiler and the renderers of
+   * the highway store. Geometry and attributes only break the rare remaining ties. Planetiler hands over features with
+   * equal sort keys in the order of its feature sort while the store renderers use other orders, and the line merge
+   * depends on the order, so without this a variant or restyled tile would differ from the same tile of a dedicated
+   * build. The keys are read once per feature and compared as primitives.
+   */
+  private List<VectorTile.Feature> canonicalOrder(List<VectorTile.Feature> features) {
+    int[] keys = new int[features.size()];
+    long[] ids = new long[features.size()];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = lineSortKey(features.get(i));
+      ids[i] = features.get(i).id();
+    }
+    int[] order = IndirectSort.mergesort(0, keys.length, (a, b) -> {
+      int result = keys[a] != keys[b] ? Integer.compare(keys[a], keys[b]) : Long.compare(ids[a], ids[b]);
+      if (result == 0) {
+        VectorTile.Feature first = features.get(a);
+        VectorTile.Feature second = features.get(b);
+        result = Arrays.compare(first.geometry().commands(), second.geometry().commands());
+        if (result == 0) {
+          result = new TreeMap<>(first.attrs()).toString().compareTo(new TreeMap<>(second.attrs()).toString());
+        }
+      }
+      return result;
+    });
+    List<VectorTile.Feature> result = new ArrayList<>(order.length);
+    for (int i : order) {
+      result.add(features.get(i));
+    }
+    return result;
+  }
+
+  /**
+   * Puts the attributes of each merged feature in key order. Planetiler decodes attributes in hash order, the store
+   * renderers in insertion order, and the key and value tables of the encoded tile follow that order.
+   */
+  private static List<VectorTile.Feature> sortedAttributes(List<VectorTile.Feature> features) {
+    List<VectorTile.Feature> result = new ArrayList<>(features.size());
+    for (VectorTile.Feature feature : features) {
+      result.add(feature.attrs() instanceof TreeMap ? feature :
+        new VectorTile.Feature(feature.layer(), feature.id(), feature.geometry(), new TreeMap<>(feature.attrs()),
+          feature.group()));
+    }
+    return result;
+  }
+
+  /**
+   * Orders features by their line sort key, keeping the merge order for equal keys, so that clients drawing in tile
+   * order get casing below fill and bridges and tunnels at their layer without sorting.
+   */
+  List<VectorTile.Feature> sortByLineSortKey(List<VectorTile.Feature> features) {
+    long[] keys = new long[features.size()];
+    boolean sorted = true;
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = ((long) lineSortKey(features.get(i)) << 32) | i;
+      sorted &= i == 0 || keys[i - 1] <= keys[i];
+    }
+    if (sorted) {
+      return features;
+    }
+    Arrays.sort(keys);
+    List<VectorTile.Feature> result = new ArrayList<>(keys.length);
+    for (long key : keys) {
+      result.add(features.get((int) key));
+    }
+    return result;
+  }
+
+  /** Returns the highway class of a rendered feature, like {@code tertiary_link}, decoded from its line sort key. */
+  String highwayClass(VectorTile.Feature feature, int zoom) {
+    int key = lineSortKey(feature);
+    String category = highwayStyles.get(LineSortKey.categoryIndex(key, zoom, categoryCount)).category;
+    return LineSortKey.isLink(key, zoom, categoryCount) ? category + "_link" : category;
+  }
+
+  private int lineSortKey(VectorTile.Feature feature) {
+    Object value = feature.attrs().get("line-sort-key");
+    if (palette != null && feature.attrs().get(HighwayPalette.STYLE_ID) instanceof Number styleId) {
+      value = palette.lineSortKey(styleId.intValue());
+    }
+    return value instanceof Number number ? number.intValue() : 0;
+  }
+
   @Override
   public String name() {
     return "SingleHighwayLayer";
@@ -670,11 +797,154 @@ public class SingleHighwayLayer implements Profile {
   }
 
   static void run(Arguments args) throws Exception {
+    long start = System.nanoTime();
     String area = args.getString("area", "geofabrik area to download", "monaco");
-    Planetiler.create(args)
-      .setProfile(new SingleHighwayLayer())
-      .addOsmSource("osm", Path.of("data", "sources", area + ".osm.pbf"), "planet".equals(area) ? "aws:latest" : ("geofabrik:" + area))
-      .overwriteOutput("mbtiles", Path.of("data", "single-highway-layer.mbtiles"))
-      .run();
+    Path output = args.file("mbtiles", "mbtiles output file", Path.of("data", "single-highway-layer.mbtiles"));
+    String pmtiles = args.getString("pmtiles", "pmtiles output file, empty to skip",
+      DEFAULT_PMTILES.toString());
+    String store = args.getString("highway_store",
+      "file that keeps the classified highway ways for incremental updates, empty to skip", "");
+    List<HighwayVariant> variants = HighwayVariant.parse(args.getString("variants",
+      "extra tilesets rendered from the same OSM read as name:style.properties entries separated by commas", ""),
+      output);
+    Path storePath = store.isBlank() && !variants.isEmpty() ?
+      output.resolveSibling(output.getFileName() + ".store.tmp") :
+      store.isBlank() ? null : Path.of(store);
+    String shardSpec = args.getString("shard",
+      "build only the tiles of shard index/count, for example 2/8, to be combined with HighwayShardMerge", "");
+    HighwayShard shard = null;
+    if (!shardSpec.isBlank()) {
+      shard = HighwayShard.parse(shardSpec,
+        args.getString("shard_bounds", "minLon,minLat,maxLon,maxLat of every shard separated by semicolons, " +
+          "empty for equal-width longitude stripes of --bounds", ""),
+        args.getString("bounds", "bounds of the build", "world"));
+      if (!variants.isEmpty() || storePath != null) {
+        throw new IllegalArgumentException("--shard does not support --variants or --highway_store");
+      }
+      output = shard.output(output);
+      args = shard.apply(args, output);
+      pmtiles = "";
+      LOGGER.info("Building shard {} of {} with bounds {} to {}", shard.index(), shard.count(), shard.bounds(),
+        output);
+    }
+    boolean filterNodes = args.getBoolean("filter_nodes",
+      "build from a copy of the OSM input reduced to highway ways and their nodes, so that only highway node " +
+        "locations are stored", false);
+    int metricsPort = args.getInteger("metrics_port", "port serving profile metrics at /metrics, 0 to disable", 0);
+    String metricsPush = args.getString("metrics_push_url",
+      "Prometheus push gateway job URL that profile metrics are pushed to, empty to disable", "");
+    int metricsPushSeconds = args.getInteger("metrics_push_interval", "seconds between metrics pushes", 15);
+    String jfr = args.getString("jfr", "Java Flight Recorder file to record profile events to", "");
+    // the input that addOsmSource reads, which --osm_path overrides
+    Path input = args.file("osm_path", "OSM input file", Path.of("data", "sources", area + ".osm.pbf"));
+    String inputUrl = "planet".equals(area) ? "aws:latest" : ("geofabrik:" + area);
+    boolean filter = filterNodes && Files.exists(input);
+    Path filtered = filter ? HighwayNodeFilter.filteredPath(input) : null;
+    Planetiler planetiler =
+      Planetiler.create(filter ? Arguments.of("osm_path", filtered.toString()).orElse(args) : args);
+    SingleHighwayLayer profile = new SingleHighwayLayer(styles(args), args, planetiler.stats());
+    if (filter) {
+      HighwayNodeFilter.filter(input, filtered, profile::isHighwayClass, args.threads()).log(LOGGER);
+      input = filtered;
+      inputUrl = null;
+    } else if (filterNodes) {
+      LOGGER.warn("--filter_nodes needs {} to be downloaded before the build, building without filtering", input);
+    }
+    try (
+      AutoCloseable recording = jfr.isBlank() ? null : HighwayEvents.record(Path.of(jfr));
+      AutoCloseable metricsPublisher = profile.metrics.publish(metricsPort, metricsPush, metricsPushSeconds);
+      HighwayStore.Writer storeWriter = storePath == null ? null : new HighwayStore.Writer(storePath)
+    ) {
+      profile.setHighwayStore(storeWriter);
+      profile.collectOverview(true);
+      planetiler
+        .setProfile(profile)
+        .addOsmSource("osm", input, inputUrl)
+        .overwriteOutput("mbtiles", output)
+        .run();
+      profile.setHighwayStore(null);
+      if (storeWriter != null) {
+        storeWriter.commit();
+        LOGGER.info("Stored {} highway ways in {}", storeWriter.count(), storePath);
+      }
+    }
+
+    profile.lineMerger.logStats(LOGGER);
+    if (profile.overview != null) {
+      profile.overview.logStats(LOGGER);
+    }
+    if (profile.tileBudget != null) {
+      profile.tileBudget.logStats(LOGGER);
+    }
+    if (profile.bufferStats) {
+      profile.buffer.logStats(LOGGER);
+    }
+    profile.writePalette(args.file("palette_style", "style.json generated for the style palette",
+      Path.of("style-palette.json")), output, tilesUrl(DEFAULT_PMTILES));
+    if (!pmtiles.isBlank()) {
+      PmtilesWriter.convert(output, Path.of(pmtiles), TileCodec.fromArguments(args, output));
+    }
+    if (shard != null) {
+      try (MbtilesArchive archive = MbtilesArchive.open(output)) {
+        for (var entry : shard.metadata((System.nanoTime() - start) / 1e9, args).entrySet()) {
+          archive.setMetadata(entry.getKey(), entry.getValue());
+        }
+      }
+    }
+    if (!variants.isEmpty()) {
+      writeVariants(args, variants, storePath, output);
+      if (store.isBlank()) {
+        Files.deleteIfExists(storePath);
+      }
+    }
+  }
+
+  /**
+   * Renders each variant from the highway ways recorded during the build. The output of a variant is the same as a
+   * {@link HighwayRestyle} run with its style file on the same store.
+   */
+  private static void writeVariants(Arguments args, List<HighwayVariant> variants, Path store, Path primary)
+    throws Exception {
+    var ways = HighwayStore.read(store);
+    int partitionZoom = args.getInteger("partition_zoom",
+      "zoom whose tiles are rendered as one unit of work for all higher zooms", 8);
+    Path baseStyle = Path.of("style.json");
+    for (HighwayVariant variant : variants) {
+      Stats stats = Stats.inMemory();
+      SingleHighwayLayer profile = new SingleHighwayLayer(HighwayStyle.load(variant.styleFile()), args, stats);
+      try (MbtilesArchive source = MbtilesArchive.open(primary)) {
+        MbtilesArchive.create(variant.mbtiles(), source.metadata()).close();
+      }
+      HighwayRestyle.restyle(args, profile, stats, ways, variant.mbtiles(), partitionZoom);
+      profile.writePalette(variant.paletteStyle(), variant.mbtiles(), tilesUrl(variant.pmtiles()));
+      PmtilesWriter.convert(variant.mbtiles(), variant.pmtiles(), TileCodec.fromArguments(args, variant.mbtiles()));
+      if (Files.exists(baseStyle)) {
+        Files.writeString(variant.style(), Files.readString(baseStyle)
+          .replace(tilesUrl(DEFAULT_PMTILES), tilesUrl(variant.pmtiles())));
+      }
+    }
+  }
+
+  /** Returns the tile URL that the demo page's styles use for a pmtiles file in the data directory. */
+  static String tilesUrl(Path pmtiles) {
+    return "pmtiles://data/" + pmtiles.getFileName() + "/{z}/{x}/{y}";
+  }
+
+  static List<HighwayStyle> styles(Arguments args) throws IOException {
+    String styleFile = args.getString("style_file",
+      "properties file overriding the default highway styles, empty for the defaults", "");
+    return HighwayStyle.loadOrDefaults(styleFile.isBlank() ? null : Path.of(styleFile));
+  }
+
+  /** Stores the style palette in the mbtiles metadata and writes the matching style, if palette encoding is on. */
+  void writePalette(Path style, Path mbtiles, String tilesUrl) throws Exception {
+    if (palette == null) {
+      return;
+    }
+    Files.writeString(style, palette.toStyleJson(tilesUrl));
+    try (MbtilesArchive archive = MbtilesArchive.open(mbtiles)) {
+      archive.setMetadata("highway_palette", palette.toMetadataJson());
+    }
+    palette.logAttributeBytes(LOGGER, singleFeature);
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,96 @@
+package com.onthegomap.planetiler.examples;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Least recently used tile cache bounded by the total size of the cached tiles. Tiles are kept in direct buffers that
+ * callers must only read through {@link ByteBuffer#duplicate()}, so the server writes a cached tile and its response
+ * head in one gathering write, and the JDK does not first copy the tile into a temporary direct buffer as it does for
+ * heap buffers. Every entry weighs at least {@link #MIN_ENTRY_BYTES}, the approximate size of the map entry, key and
+ * buffer object, so that empty tiles cannot grow the cache without bound.
+ */
+class TileCache {
+
+  static final int MIN_ENTRY_BYTES = 128;
+
+  private final long maxBytes;
+  private final LinkedHashMap<Long, ByteBuffer> tiles = new LinkedHashMap<>(1024, 0.75f, true);
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private long bytes = 0;
+
+  TileCache(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  static long key(int z, int x, int y) {
+    return ((long) z << 58) | ((long) x << 29) | y;
+  }
+
+  ByteBuffer get(long key) {
+    ByteBuffer result;
+    synchronized (this) {
+      result = tiles.get(key);
+    }
+    (result == null ? misses : hits).increment();
+    return result == null ? null : result.duplicate();
+  }
+
+  /** Like {@link #get} but without counting a hit or miss. */
+  ByteBuffer peek(long key) {
+    ByteBuffer result;
+    synchronized (this) {
+      result = tiles.get(key);
+    }
+    return result == null ? null : result.duplicate();
+  }
+
+  private static long weight(ByteBuffer tile) {
+    return Math.max(MIN_ENTRY_BYTES, tile.remaining());
+  }
+
+  /** Caches {@code data} and returns a read-only view of the cached copy. */
+  ByteBuffer put(long key, ByteBuffer data) {
+    ByteBuffer cached = data.isDirect() ? data.asReadOnlyBuffer() :
+      ByteBuffer.allocateDirect(data.remaining()).put(data.duplicate()).flip().asReadOnlyBuffer();
+    if (weight(cached) > maxBytes) {
+      return cached.duplicate();
+    }
+    synchronized (this) {
+      ByteBuffer previous = tiles.put(key, cached);
+      bytes += weight(cached) - (previous == null ? 0 : weight(previous));
+      var iterator = tiles.entrySet().iterator();
+      while (bytes > maxBytes && iterator.hasNext()) {
+        Map.Entry<Long, ByteBuffer> eldest = iterator.next();
+        bytes -= weight(eldest.getValue());
+        iterator.remove();
+        evictions.increment();
+      }
+    }
+    return cached.duplicate();
+  }
+
+  long hits() {
+    return hits.sum();
+  }
+
+  long misses() {
+    return misses.sum();
+  }
+
+  long evictions() {
+    return evictions.sum();
+  }
+
+  synchronized long bytes() {
+    return bytes;
+  }
+
+  synchronized int size() {
+    return tiles.size();
+  }
+}
@@ -0,0 +1,224 @@
+package com.onthegomap.planetiler.examples;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.onthegomap.planetiler.config.Arguments;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compression of the encoded tiles in the pmtiles output. {@code gzip} is what Planetiler writes to mbtiles and what
+ * every client reads. {@code zstd} is a PMTiles standard codec. {@code zstd_dict} uses a dictionary trained on tiles of
+ * the same build, which shares the attribute keys and the repeated {@code line-color} and {@code line-width} values
+ * across tiles. PMTiles has no field for a dictionary, so it goes into the metadata and the archive declares an
+ * unknown tile compression; {@link TileSource#open} decodes such archives itself.
+ */
+interface TileCodec {
+
+  String GZIP = "gzip";
+  String NONE = "none";
+  String ZSTD = "zstd";
+  String ZSTD_DICTIONARY = "zstd_dict";
+  List<String> NAMES = List.of(GZIP, NONE, ZSTD, ZSTD_DICTIONARY);
+  /** Metadata key of the base64 dictionary of {@code zstd_dict} archives. */
+  String DICTIONARY_METADATA = "highway_zstd_dictionary";
+
+  String name();
+
+  /** The PMTiles header value for this codec. */
+  byte pmtilesCompression();
+
+  byte[] compress(byte[] tile) throws IOException;
+
+  byte[] decompress(byte[] compressed) throws IOException;
+
+  /** The dictionary to store with the tiles, or {@code null}. */
+  default byte[] dictionary() {
+    return null;
+  }
+
+  static TileCodec gzip() {
+    return new TileCodec() {
+      @Override
+      public String name() {
+        return GZIP;
+      }
+
+      @Override
+      public byte pmtilesCompression() {
+        return PmtilesWriter.COMPRESSION_GZIP;
+      }
+
+      @Override
+      public byte[] compress(byte[] tile) throws IOException {
+        return PmtilesWriter.gzip(tile);
+      }
+
+      @Override
+      public byte[] decompress(byte[] compressed) throws IOException {
+        return MbtilesArchive.gunzipIfNeeded(compressed);
+      }
+    };
+  }
+
+  static TileCodec none() {
+    return new TileCodec() {
+      @Override
+      public String name() {
+        return NONE;
+      }
+
+      @Override
+      public byte pmtilesCompression() {
+        return PmtilesWriter.COMPRESSION_NONE;
+      }
+
+      @Override
+      public byte[] compress(byte[] tile) {
+        return tile;
+      }
+
+      @Override
+      public byte[] decompress(byte[] compressed) {
+        return compressed;
+      }
+    };
+  }
+
+  static TileCodec zstd(int level) {
+    return new TileCodec() {
+      @Override
+      public String name() {
+        return ZSTD;
+      }
+
+      @Override
+      public byte pmtilesCompression() {
+        return PmtilesWriter.COMPRESSION_ZSTD;
+      }
+
+      @Override
+      public byte[] compress(byte[] tile) {
+        return Zstd.compress(tile, level);
+      }
+
+      @Override
+      public byte[] decompress(byte[] compressed) {
+        return Zstd.decompress(compressed, (int) Zstd.decompressedSize(compressed));
+      }
+    };
+  }
+
+  static TileCodec zstd(int level, byte[] dictionary) {
+    ZstdDictCompress compressDictionary = new ZstdDictCompress(dictionary, level);
+    ZstdDictDecompress decompressDictionary = new ZstdDictDecompress(dictionary);
+    return new TileCodec() {
+      @Override
+      public String name() {
+        return ZSTD_DICTIONARY;
+      }
+
+      @Override
+      public byte pmtilesCompression() {
+        return PmtilesWriter.COMPRESSION_UNKNOWN;
+      }
+
+      @Override
+      public byte[] compress(byte[] tile) {
+        return Zstd.compress(tile, compressDictionary);
+      }
+
+      @Override
+      public byte[] decompress(byte[] compressed) {
+        return Zstd.decompress(compressed, decompressDictionary, (int) Zstd.decompressedSize(compressed));
+      }
+
+      @Override
+      public byte[] dictionary() {
+        return dictionary;
+      }
+    };
+  }
+
+  /** Trains a zstd dictionary of at most {@code size} bytes on uncompressed tiles. */
+  static byte[] trainDictionary(List<byte[]> samples, int size) {
+    long total = 0;
+    for (byte[] sample : samples) {
+      total += sample.length;
+    }
+    ZstdDictTrainer trainer = new ZstdDictTrainer((int) Math.min(Integer.MAX_VALUE - 8, total), size);
+    for (byte[] sample : samples) {
+      trainer.addSample(sample);
+    }
+    return trainer.trainSamples();
+  }
+
+  /**
+   * Returns up to {@code count} uncompressed tiles of {@code mbtiles}, spread evenly over all of its tiles, so that
+   * every zoom contributes in proportion to its tile count.
+   */
+  static List<byte[]> sampleTiles(Path mbtiles, int count) throws Exception {
+    List<byte[]> result = new ArrayList<>();
+    try (MbtilesArchive archive = MbtilesArchive.open(mbtiles)) {
+      long tiles = 0;
+      Map<String, String> metadata = archive.metadata();
+      int minZoom = Integer.parseInt(metadata.getOrDefault("minzoom", "0"));
+      int maxZoom = Integer.parseInt(metadata.getOrDefault("maxzoom", "14"));
+      for (int z = minZoom; z <= maxZoom; z++) {
+        tiles += archive.tileCoordinates(z).length;
+      }
+      long step = Math.max(1, tiles / count);
+      long[] index = {0};
+      archive.forEachTile(tile -> {
+        if (index[0]++ % step == 0 && result.size() < count) {
+          result.add(MbtilesArchive.gunzipIfNeeded(tile.data()));
+        }
+      });
+    }
+    return result;
+  }
+
+  /**
+   * Returns the codec selected by {@code --tile_compression}, training the {@code zstd_dict} dictionary on tiles of
+   * {@code mbtiles}.
+   */
+  static TileCodec fromArguments(Arguments args, Path mbtiles) throws Exception {
+    String name = args.getString("tile_compression", "pmtiles tile compression, one of " + NAMES, GZIP);
+    int level = args.getInteger("zstd_level", "zstd compression level", 19);
+    return switch (name) {
+      case GZIP -> gzip();
+      case NONE -> none();
+      case ZSTD -> zstd(level);
+      case ZSTD_DICTIONARY -> {
+        int samples = args.getInteger("zstd_dictionary_samples", "tiles to train the zstd dictionary on", 4000);
+        int size = args.getInteger("zstd_dictionary_bytes", "maximum zstd dictionary size", 112_640);
+        yield zstd(level, trainDictionary(sampleTiles(mbtiles, samples), size));
+      }
+      default -> throw new IllegalArgumentException(
+        "Unknown --tile_compression " + name + ", expected one of " + NAMES);
+    };
+  }
+
+  /** Returns the codec of a pmtiles archive from its header value and metadata. */
+  static TileCodec forPmtiles(byte compression, Map<String, String> metadata) {
+    return switch (compression) {
+      case PmtilesWriter.COMPRESSION_GZIP -> gzip();
+      case PmtilesWriter.COMPRESSION_ZSTD -> zstd(3);
+      case PmtilesWriter.COMPRESSION_UNKNOWN -> {
+        String dictionary = metadata.get(DICTIONARY_METADATA);
+        if (dictionary == null) {
+          throw new IllegalArgumentException("Unknown tile compression without a " + DICTIONARY_METADATA);
+        }
+        yield zstd(3, Base64.getDecoder().decode(dictionary));
+      }
+      case PmtilesWriter.COMPRESSION_NONE -> none();
+      default -> throw new IllegalArgumentException("Unsupported tile compression " + compression);
+    };
+  }
+}
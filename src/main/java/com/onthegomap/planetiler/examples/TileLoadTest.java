@@ -0,0 +1,125 @@
+package com.onthegomap.planetiler.examples;
+
+import com.onthegomap.planetiler.config.Arguments;
+import com.onthegomap.planetiler.geo.GeoUtils;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Requests random tiles inside a bounding box from a running {@link TileServer} with many concurrent clients and
+ * reports throughput and latency percentiles. A share of the requests goes to a small set of popular tiles, so cache
+ * hits and concurrent requests for the same tile are exercised as well.
+ */
+public class TileLoadTest {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(TileLoadTest.class);
+
+  public static void main(String[] args) throws Exception {
+    run(Arguments.fromArgsOrConfigFile(args));
+  }
+
+  static void run(Arguments args) throws Exception {
+    String url = args.getString("url", "base url of the tile server", "http://localhost:8080");
+    List<String> bounds = args.getList("bounds", "minLon,minLat,maxLon,maxLat to request tiles in",
+      List.of("7.40", "43.72", "7.44", "43.76"));
+    int minZoom = args.getInteger("min_zoom", "lowest zoom to request", 10);
+    int maxZoom = args.getInteger("max_zoom", "highest zoom to request", 14);
+    int clients = args.getInteger("clients", "concurrent clients", 32);
+    int requests = args.getInteger("requests", "total number of requests", 20_000);
+    double popularShare = args.getDouble("popular_share", "share of requests for the 16 most popular tiles", 0.5);
+    long seed = args.getLong("seed", "random seed", 1);
+
+    double minLon = Double.parseDouble(bounds.get(0));
+    double minLat = Double.parseDouble(bounds.get(1));
+    double maxLon = Double.parseDouble(bounds.get(2));
+    double maxLat = Double.parseDouble(bounds.get(3));
+    Random random = new Random(seed);
+    String[] paths = new String[requests];
+    String[] popular = new String[16];
+    for (int i = 0; i < popular.length; i++) {
+      popular[i] = randomTile(random, minLon, minLat, maxLon, maxLat, minZoom, maxZoom);
+    }
+    for (int i = 0; i < requests; i++) {
+      paths[i] = random.nextDouble() < popularShare ? popular[random.nextInt(popular.length)] :
+        randomTile(random, minLon, minLat, maxLon, maxLat, minZoom, maxZoom);
+    }
+
+    HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+    long[] latencies = new long[requests];
+    AtomicInteger next = new AtomicInteger();
+    AtomicInteger errors = new AtomicInteger();
+    AtomicInteger empty = new AtomicInteger();
+    AtomicLong bytes = new AtomicLong();
+    ExecutorService executor = Executors.newFixedThreadPool(clients);
+    long start = System.nanoTime();
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int c = 0; c < clients; c++) {
+        futures.add(executor.submit(() -> {
+          int i;
+          while ((i = next.getAndIncrement()) < requests) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(url + paths[i])).GET().build();
+            long requestStart = System.nanoTime();
+            try {
+              HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+              latencies[i] = System.nanoTime() - requestStart;
+              if (response.statusCode() == 204) {
+                empty.incrementAndGet();
+              } else if (response.statusCode() != 200) {
+                errors.incrementAndGet();
+              }
+              bytes.addAndGet(response.body().length);
+            } catch (Exception e) {
+              latencies[i] = System.nanoTime() - requestStart;
+              errors.incrementAndGet();
+            }
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    long elapsed = System.nanoTime() - start;
+
+    Arrays.sort(latencies);
+    LOGGER.info("{} requests from {} clients in {} ms: {} requests/s, {} empty, {} errors, {} bytes", requests,
+      clients, elapsed / 1_000_000, String.format("%.0f", requests / (elapsed / 1e9)), empty.get(), errors.get(),
+      bytes.get());
+    LOGGER.info("latency p50 {} ms, p95 {} ms, p99 {} ms, max {} ms", millis(latencies, 0.5),
+      millis(latencies, 0.95), millis(latencies, 0.99), millis(latencies, 1));
+  }
+
+  private static String randomTile(Random random, double minLon, double minLat, double maxLon, double maxLat,
+    int minZoom, int maxZoom) {
+    int z = minZoom + random.nextInt(maxZoom - minZoom + 1);
+    double worldX = GeoUtils.getWorldX(minLon + random.nextDouble() * (maxLon - minLon));
+    double worldY = GeoUtils.getWorldY(minLat + random.nextDouble() * (maxLat - minLat));
+    int tiles = 1 << z;
+    int x = Math.min(tiles - 1, (int) (worldX * tiles));
+    int y = Math.min(tiles - 1, (int) (worldY * tiles));
+    return "/" + z + "/" + x + "/" + y + ".pbf";
+  }
+
+  private static String millis(long[] sorted, double quantile) {
+    int index = Math.min(sorted.length - 1, (int) Math.ceil(quantile * sorted.length) - 1);
+    return String.format("%.2f", sorted[Math.max(0, index)] / 1e6);
+  }
+}
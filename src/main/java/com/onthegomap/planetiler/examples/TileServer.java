@@ -0,0 +1,443 @@
+package com.onthegomap.planetiler.examples;
+
+import com.onthegomap.planetiler.config.Arguments;
+import com.onthegomap.planetiler.config.PlanetilerConfig;
+import com.onthegomap.planetiler.stats.Stats;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Small HTTP/1.1 server for the demo page: serves {@code /{z}/{x}/{y}.pbf} from an mbtiles or pmtiles file through a
+ * {@link TileCache}, {@code style.json} with its tile URL pointed at this server, {@code index.html} and
+ * {@code /metrics}. One selector thread does all socket I/O; tile lookups run on a worker pool. Cached tiles live in
+ * direct buffers and are written to the socket together with the response head in one gathering write.
+ */
+public class TileServer implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(TileServer.class);
+  private static final Pattern TILE_PATH = Pattern.compile("^/(\\d+)/(\\d+)/(\\d+)\\.(pbf|mvt)$");
+  private static final Pattern PMTILES_URL = Pattern.compile("pmtiles://[^\"]*?/\\{z}/\\{x}/\\{y}");
+  private static final Map<String, String> CONTENT_TYPES = Map.of(
+    "html", "text/html; charset=utf-8",
+    "json", "application/json",
+    "js", "text/javascript",
+    "css", "text/css",
+    "png", "image/png"
+  );
+  private static final int MAX_REQUEST_BYTES = 16 * 1024;
+
+  private final TileSource source;
+  private final TileCache cache;
+  private final Path webRoot;
+  private final ServerSocketChannel server;
+  private final Selector selector;
+  private final ExecutorService workers;
+  private final Queue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+  private final LatencyHistogram tileLatency = new LatencyHistogram();
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder notFound = new LongAdder();
+  private final LongAdder bytesSent = new LongAdder();
+  private final Thread selectorThread;
+  private volatile boolean running = true;
+
+  /** A response head plus body that is written with a single gathering write. */
+  private record Response(ByteBuffer[] buffers, boolean keepAlive) {
+
+    boolean hasRemaining() {
+      for (ByteBuffer buffer : buffers) {
+        if (buffer.hasRemaining()) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  private static class Connection {
+    ByteBuffer in = ByteBuffer.allocate(4096);
+    Response response;
+  }
+
+  TileServer(InetSocketAddress address, TileSource source, TileCache cache, Path webRoot, int threads)
+    throws IOException {
+    this.source = source;
+    this.cache = cache;
+    this.webRoot = webRoot.toAbsolutePath().normalize();
+    this.selector = Selector.open();
+    this.server = ServerSocketChannel.open();
+    server.bind(address);
+    server.configureBlocking(false);
+    server.register(selector, SelectionKey.OP_ACCEPT);
+    this.workers = Executors.newFixedThreadPool(Math.max(1, threads));
+    this.selectorThread = new Thread(this::loop, "tile-server");
+    selectorThread.start();
+  }
+
+  public static void main(String[] args) throws Exception {
+    run(Arguments.fromArgsOrConfigFile(args));
+  }
+
+  static void run(Arguments args) throws Exception {
+    int port = args.getInteger("port", "port to listen on", 8080);
+    long cacheBytes = args.getLong("cache_bytes", "maximum size of the hot tile cache", 64L << 20);
+    Path webRoot = args.file("web_root", "directory with index.html and the style files", Path.of("."));
+    String store = args.getString("highway_store",
+      "render tiles on demand from this highway store instead of serving --tiles", "");
+    Path tiles;
+    TileSource source;
+    if (store.isBlank()) {
+      tiles = args.inputFile("tiles", "mbtiles or pmtiles file to serve", SingleHighwayLayer.DEFAULT_PMTILES);
+      source = TileSource.open(tiles);
+    } else {
+      tiles = Path.of(store);
+      source = onDemand(args, Path.of(store), cacheBytes);
+      // the on-demand source keeps rendered tiles itself
+      cacheBytes = 0;
+    }
+    TileServer server = new TileServer(new InetSocketAddress(port), source, new TileCache(cacheBytes), webRoot,
+      args.threads());
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      try {
+        server.close();
+      } catch (Exception e) {
+        LOGGER.warn("Failed to stop the server", e);
+      }
+    }));
+    LOGGER.info("Serving {} on http://localhost:{}/", tiles, port);
+    server.selectorThread.join();
+  }
+
+  private static OnDemandTileSource onDemand(Arguments args, Path store, long cacheBytes) throws Exception {
+    String persist = args.getString("persist", "mbtiles file that keeps tiles rendered on demand, empty to skip", "");
+    Stats stats = Stats.inMemory();
+    SingleHighwayLayer profile = new SingleHighwayLayer(SingleHighwayLayer.styles(args), args, stats);
+    PlanetilerConfig config = PlanetilerConfig.from(args);
+    Map<String, String> metadata = new LinkedHashMap<>();
+    metadata.put("name", profile.name());
+    metadata.put("description", profile.description());
+    metadata.put("attribution", profile.attribution());
+    metadata.put("format", "pbf");
+    metadata.put("minzoom", Integer.toString(config.minzoom()));
+    metadata.put("maxzoom", Integer.toString(config.maxzoom()));
+    metadata.put("json", "{\"vector_layers\":[{\"id\":\"highway\",\"fields\":{}}]}");
+    long start = System.nanoTime();
+    var ways = HighwayStore.read(store);
+    OnDemandTileSource source = new OnDemandTileSource(profile, config, stats, ways, cacheBytes,
+      persist.isBlank() ? null : Path.of(persist), metadata);
+    LOGGER.info("Indexed {} highway ways for on-demand rendering in {} ms", ways.size(),
+      (System.nanoTime() - start) / 1_000_000);
+    return source;
+  }
+
+  InetSocketAddress address() throws IOException {
+    return (InetSocketAddress) server.getLocalAddress();
+  }
+
+  private void loop() {
+    while (running) {
+      try {
+        selector.select(1000);
+        Runnable task;
+        while ((task = selectorTasks.poll()) != null) {
+          try {
+            task.run();
+          } catch (RuntimeException e) {
+            LOGGER.warn("Selector task failed", e);
+          }
+        }
+        var keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          try {
+            if (!key.isValid()) {
+              continue;
+            }
+            if (key.isAcceptable()) {
+              accept();
+            } else if (key.isReadable()) {
+              read(key);
+            } else if (key.isWritable()) {
+              write(key);
+            }
+          } catch (IOException | RuntimeException e) {
+            // only this connection is broken, keep serving the others
+            LOGGER.debug("Closing connection after {}", e.toString());
+            close(key);
+          }
+        }
+      } catch (IOException e) {
+        LOGGER.warn("Selector failed", e);
+      }
+    }
+  }
+
+  private void accept() throws IOException {
+    SocketChannel channel;
+    while ((channel = server.accept()) != null) {
+      channel.configureBlocking(false);
+      channel.register(selector, SelectionKey.OP_READ, new Connection());
+    }
+  }
+
+  private void read(SelectionKey key) throws IOException {
+    Connection connection = (Connection) key.attachment();
+    SocketChannel channel = (SocketChannel) key.channel();
+    if (!connection.in.hasRemaining()) {
+      if (connection.in.capacity() >= MAX_REQUEST_BYTES) {
+        close(key);
+        return;
+      }
+      ByteBuffer larger = ByteBuffer.allocate(connection.in.capacity() * 2);
+      connection.in = larger.put(connection.in.flip());
+    }
+    if (channel.read(connection.in) < 0) {
+      close(key);
+      return;
+    }
+    dispatch(key, connection);
+  }
+
+  /** Hands the next complete request of a connection to the workers and mutes the socket until it is answered. */
+  private void dispatch(SelectionKey key, Connection connection) {
+    String request = requestHead(connection.in);
+    if (request == null) {
+      return;
+    }
+    key.interestOps(0);
+    long start = System.nanoTime();
+    workers.execute(() -> {
+      Response response;
+      try {
+        response = respond(request, start);
+      } catch (Exception e) {
+        LOGGER.warn("Failed to answer {}", request.lines().findFirst().orElse(""), e);
+        response = text(500, "Internal Server Error", "text/plain", false);
+      }
+      Response result = response;
+      selectorTasks.add(() -> {
+        if (key.isValid()) {
+          connection.response = result;
+          key.interestOps(SelectionKey.OP_WRITE);
+        }
+      });
+      selector.wakeup();
+    });
+  }
+
+  /** Removes and returns the head of the first complete request in {@code in}, or null if it is not complete yet. */
+  private static String requestHead(ByteBuffer in) {
+    byte[] bytes = in.array();
+    int end = in.position();
+    for (int i = 3; i < end; i++) {
+      if (bytes[i - 3] == '\r' && bytes[i - 2] == '\n' && bytes[i - 1] == '\r' && bytes[i] == '\n') {
+        String head = new String(bytes, 0, i + 1, StandardCharsets.ISO_8859_1);
+        in.flip().position(i + 1);
+        in.compact();
+        return head;
+      }
+    }
+    return null;
+  }
+
+  private void write(SelectionKey key) throws IOException {
+    Connection connection = (Connection) key.attachment();
+    SocketChannel channel = (SocketChannel) key.channel();
+    Response response = connection.response;
+    bytesSent.add(channel.write(response.buffers()));
+    if (response.hasRemaining()) {
+      return;
+    }
+    connection.response = null;
+    if (!response.keepAlive()) {
+      close(key);
+      return;
+    }
+    key.interestOps(SelectionKey.OP_READ);
+    dispatch(key, connection);
+  }
+
+  private void close(SelectionKey key) {
+    key.cancel();
+    try {
+      key.channel().close();
+    } catch (IOException e) {
+      // already closed
+    }
+  }
+
+  private Response respond(String head, long start) throws Exception {
+    requests.increment();
+    String[] requestLine = head.substring(0, head.indexOf('\r')).split(" ");
+    boolean keepAlive = requestLine.length > 2 && "HTTP/1.1".equals(requestLine[2]) &&
+      !head.toLowerCase(Locale.ROOT).contains("\nconnection: close");
+    if (requestLine.length < 2 || !"GET".equals(requestLine[0])) {
+      return text(405, "Method Not Allowed", "text/plain", keepAlive);
+    }
+    String path = requestLine[1];
+    int query = path.indexOf('?');
+    if (query >= 0) {
+      path = path.substring(0, query);
+    }
+
+    Matcher tile = TILE_PATH.matcher(path);
+    if (tile.matches()) {
+      Response response = tile(Integer.parseInt(tile.group(1)), Integer.parseInt(tile.group(2)),
+        Integer.parseInt(tile.group(3)), keepAlive);
+      tileLatency.record(System.nanoTime() - start);
+      return response;
+    }
+    if ("/metrics".equals(path)) {
+      return text(200, metrics(), "text/plain; version=0.0.4", keepAlive);
+    }
+    return file("/".equals(path) ? "/index.html" : path, host(head), keepAlive);
+  }
+
+  private Response tile(int z, int x, int y, boolean keepAlive) throws Exception {
+    if (z > 30 || x >= (1 << z) || y >= (1 << z)) {
+      notFound.increment();
+      return text(404, "Not Found", "text/plain", keepAlive);
+    }
+    long key = TileCache.key(z, x, y);
+    ByteBuffer data = cache.get(key);
+    if (data == null) {
+      ByteBuffer stored = source.getTile(z, x, y);
+      if (stored == null) {
+        notFound.increment();
+        return new Response(new ByteBuffer[]{head(204, "No Content", null, 0, null, keepAlive)}, keepAlive);
+      }
+      data = cache.put(key, stored);
+    }
+    String encoding = data.remaining() > 1 && (data.get(data.position()) & 0xFF) == 0x1F &&
+      (data.get(data.position() + 1) & 0xFF) == 0x8B ? "gzip" : null;
+    return new Response(new ByteBuffer[]{
+      head(200, "OK", "application/vnd.mapbox-vector-tile", data.remaining(), encoding, keepAlive), data
+    }, keepAlive);
+  }
+
+  private Response file(String path, String host, boolean keepAlive) throws IOException {
+    Path file = webRoot.resolve(path.substring(1)).normalize();
+    String name = file.getFileName() == null ? "" : file.getFileName().toString();
+    String extension = name.substring(name.lastIndexOf('.') + 1);
+    if (!file.startsWith(webRoot) || !file.getParent().equals(webRoot) || !CONTENT_TYPES.containsKey(extension) ||
+      !Files.isRegularFile(file)) {
+      notFound.increment();
+      return text(404, "Not Found", "text/plain", keepAlive);
+    }
+    if ("json".equals(extension)) {
+      String style = PMTILES_URL.matcher(Files.readString(file))
+        .replaceAll(Matcher.quoteReplacement("http://" + host + "/{z}/{x}/{y}.pbf"));
+      return text(200, style, CONTENT_TYPES.get(extension), keepAlive);
+    }
+    byte[] body = Files.readAllBytes(file);
+    return new Response(new ByteBuffer[]{
+      head(200, "OK", CONTENT_TYPES.get(extension), body.length, null, keepAlive), ByteBuffer.wrap(body)
+    }, keepAlive);
+  }
+
+  private static String host(String head) {
+    for (String line : head.split("\r\n")) {
+      if (line.regionMatches(true, 0, "host:", 0, 5)) {
+        return line.substring(5).trim();
+      }
+    }
+    return "localhost";
+  }
+
+  private static Response text(int status, String body, String contentType, boolean keepAlive) {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    String reason = switch (status) {
+      case 200 -> "OK";
+      case 404 -> "Not Found";
+      case 405 -> "Method Not Allowed";
+      default -> "Internal Server Error";
+    };
+    return new Response(new ByteBuffer[]{
+      head(status, reason, contentType, bytes.length, null, keepAlive), ByteBuffer.wrap(bytes)
+    }, keepAlive);
+  }
+
+  private static ByteBuffer head(int status, String reason, String contentType, long length, String encoding,
+    boolean keepAlive) {
+    StringBuilder head = new StringBuilder(160)
+      .append("HTTP/1.1 ").append(status).append(' ').append(reason).append("\r\n")
+      .append("Access-Control-Allow-Origin: *\r\n")
+      .append("Content-Length: ").append(length).append("\r\n");
+    if (contentType != null) {
+      head.append("Content-Type: ").append(contentType).append("\r\n");
+    }
+    if (encoding != null) {
+      head.append("Content-Encoding: ").append(encoding).append("\r\n");
+    }
+    head.append(keepAlive ? "Connection: keep-alive\r\n" : "Connection: close\r\n").append("\r\n");
+    return ByteBuffer.wrap(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+  }
+
+  String metrics() {
+    StringBuilder out = new StringBuilder();
+    counter(out, "tile_server_requests_total", "HTTP requests received", requests.sum());
+    counter(out, "tile_server_not_found_total", "Requests for tiles or files that do not exist", notFound.sum());
+    counter(out, "tile_server_cache_hits_total", "Tiles served from the cache", cache.hits());
+    counter(out, "tile_server_cache_misses_total", "Tiles read from the archive", cache.misses());
+    counter(out, "tile_server_cache_evictions_total", "Tiles evicted from the cache", cache.evictions());
+    counter(out, "tile_server_sent_bytes_total", "Response bytes written to sockets", bytesSent.sum());
+    out.append("# TYPE tile_server_cache_bytes gauge\ntile_server_cache_bytes ").append(cache.bytes()).append('\n');
+    out.append("# TYPE tile_server_cache_tiles gauge\ntile_server_cache_tiles ").append(cache.size()).append('\n');
+    tileLatency.writePrometheus(out, "tile_server_tile_latency_seconds", "Time from request to response per tile", "");
+    if (source instanceof OnDemandTileSource onDemand) {
+      counter(out, "tile_server_renders_total", "Tiles rendered on demand", onDemand.renders());
+      counter(out, "tile_server_render_milliseconds_total", "Time spent rendering tiles on demand",
+        onDemand.renderNanos() / 1_000_000L);
+      counter(out, "tile_server_shared_renders_total", "Requests that waited for a rendering already in progress",
+        onDemand.sharedRenders());
+      counter(out, "tile_server_persisted_hits_total", "Tiles read from the persisted mbtiles file",
+        onDemand.persistedHits());
+    }
+    return out.toString();
+  }
+
+  private static void counter(StringBuilder out, String name, String help, long value) {
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n')
+      .append("# TYPE ").append(name).append(" counter\n")
+      .append(name).append(' ').append(value).append('\n');
+  }
+
+  @Override
+  public synchronized void close() throws Exception {
+    if (!running) {
+      return;
+    }
+    running = false;
+    selector.wakeup();
+    selectorThread.join();
+    workers.shutdown();
+    server.close();
+    selector.close();
+    source.close();
+    long hits = cache.hits();
+    long total = hits + cache.misses();
+    LOGGER.info("Served {} requests, cache hit rate {}%, p50 {} ms, p99 {} ms", requests.sum(),
+      total == 0 ? 0 : 100 * hits / total, tileLatency.quantileUpperBound(0.5) * 1000,
+      tileLatency.quantileUpperBound(0.99) * 1000);
+  }
+}
@@ -0,0 +1,375 @@
+package com.onthegomap.planetiler.examples;
+
+import com.onthegomap.planetiler.config.Arguments;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decodes every tile of an mbtiles file and writes a JSON report with the per-zoom tile size distribution, feature
+ * counts and the bytes spent on geometry versus each attribute key and value. A value table entry that several keys
+ * refer to is split evenly between them, so the bytes of all keys add up to the size of the value table.
+ */
+public class TileSizeReport {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(TileSizeReport.class);
+  private static final int MAX_VALUES_PER_KEY = 50;
+  private static final int MAX_OVERSIZED_TILES = 1000;
+  private static final int BATCH_SIZE = 256;
+
+  static class KeyStats {
+    long keyTableBytes;
+    long valueTableBytes;
+    long tagBytes;
+    long features;
+    final Map<String, Long> valueBytes = new HashMap<>();
+
+    void add(KeyStats other) {
+      keyTableBytes += other.keyTableBytes;
+      valueTableBytes += other.valueTableBytes;
+      tagBytes += other.tagBytes;
+      features += other.features;
+      other.valueBytes.forEach((value, bytes) -> valueBytes.merge(value, bytes, Long::sum));
+    }
+  }
+
+  static class ZoomStats {
+    int[] tileBytes = new int[1024];
+    int tiles;
+    long compressedBytes;
+    long uncompressedBytes;
+    long features;
+    long geometryBytes;
+    long featureOverheadBytes;
+    long layerOverheadBytes;
+    final Map<String, KeyStats> keys = new TreeMap<>();
+
+    void addTile(int bytes) {
+      if (tiles == tileBytes.length) {
+        tileBytes = Arrays.copyOf(tileBytes, tiles * 2);
+      }
+      tileBytes[tiles++] = bytes;
+    }
+
+    void add(ZoomStats other) {
+      for (int i = 0; i < other.tiles; i++) {
+        addTile(other.tileBytes[i]);
+      }
+      compressedBytes += other.compressedBytes;
+      uncompressedBytes += other.uncompressedBytes;
+      features += other.features;
+      geometryBytes += other.geometryBytes;
+      featureOverheadBytes += other.featureOverheadBytes;
+      layerOverheadBytes += other.layerOverheadBytes;
+      other.keys.forEach((key, stats) -> keys.computeIfAbsent(key, k -> new KeyStats()).add(stats));
+    }
+
+    KeyStats key(String key) {
+      return keys.computeIfAbsent(key, k -> new KeyStats());
+    }
+  }
+
+  record OversizedTile(int z, int x, int y, int bytes) {}
+
+  private final ZoomStats[] zooms = new ZoomStats[32];
+  private final List<OversizedTile> oversized = new ArrayList<>();
+  private final int tileBudget;
+
+  TileSizeReport(int tileBudget) {
+    this.tileBudget = tileBudget;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Arguments arguments = Arguments.fromArgsOrConfigFile(args);
+    Path mbtiles = arguments.file("mbtiles", "mbtiles file to analyze", Path.of("data", "single-highway-layer.mbtiles"));
+    Path output = arguments.file("report", "JSON report to write",
+      Path.of("data", "single-highway-layer-report.json"));
+    int tileBudget = arguments.getInteger("tile_budget", "list tiles with more compressed bytes than this", 500_000);
+    int threads = arguments.threads();
+
+    TileSizeReport report = new TileSizeReport(tileBudget);
+    long start = System.nanoTime();
+    report.analyze(mbtiles, threads);
+    Files.writeString(output, report.toJson());
+    LOGGER.info("Analyzed {} in {}s, wrote {}", mbtiles,
+      TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), output);
+  }
+
+  void analyze(Path mbtiles, int threads) throws Exception {
+    int workers = Math.max(1, threads);
+    ExecutorService executor = Executors.newFixedThreadPool(workers);
+    // at most this many batches are read ahead, a failed batch fails the report when its result is taken
+    Deque<Future<TileSizeReport>> pending = new ArrayDeque<>();
+    int maxPending = workers * 4;
+    try (MbtilesArchive archive = MbtilesArchive.open(mbtiles)) {
+      List<List<MbtilesArchive.Tile>> batch = new ArrayList<>(List.of(new ArrayList<>()));
+      archive.forEachTile(tile -> {
+        batch.get(0).add(tile);
+        if (batch.get(0).size() >= BATCH_SIZE) {
+          pending.add(executor.submit(analyzeBatch(batch.get(0))));
+          batch.set(0, new ArrayList<>());
+          if (pending.size() >= maxPending) {
+            merge(pending.poll().get());
+          }
+        }
+      });
+      pending.add(executor.submit(analyzeBatch(batch.get(0))));
+      while (!pending.isEmpty()) {
+        merge(pending.poll().get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private Callable<TileSizeReport> analyzeBatch(List<MbtilesArchive.Tile> batch) {
+    return () -> {
+      TileSizeReport partial = new TileSizeReport(tileBudget);
+      for (MbtilesArchive.Tile tile : batch) {
+        partial.addTile(tile);
+      }
+      return partial;
+    };
+  }
+
+  private void merge(TileSizeReport other) {
+    for (int z = 0; z < zooms.length; z++) {
+      if (other.zooms[z] != null) {
+        zoom(z).add(other.zooms[z]);
+      }
+    }
+    oversized.addAll(other.oversized);
+  }
+
+  private ZoomStats zoom(int z) {
+    if (zooms[z] == null) {
+      zooms[z] = new ZoomStats();
+    }
+    return zooms[z];
+  }
+
+  void addTile(MbtilesArchive.Tile tile) throws Exception {
+    byte[] data = MbtilesArchive.gunzipIfNeeded(tile.data());
+    ZoomStats stats = zoom(tile.z());
+    stats.addTile(tile.data().length);
+    stats.compressedBytes += tile.data().length;
+    stats.uncompressedBytes += data.length;
+    if (tile.data().length > tileBudget) {
+      oversized.add(new OversizedTile(tile.z(), tile.x(), tile.y(), tile.data().length));
+    }
+
+    ProtobufReader tileReader = new ProtobufReader(data);
+    while (tileReader.hasMore()) {
+      int tag = tileReader.readTag();
+      if (tag >>> 3 == 3 && (tag & 7) == ProtobufReader.LENGTH_DELIMITED) {
+        int start = tileReader.position();
+        ProtobufReader layer = tileReader.readMessage();
+        long layerBytes = tileReader.position() - start + ProtobufReader.varintSize(tag);
+        stats.layerOverheadBytes += layerBytes - addLayer(layer, stats);
+      } else {
+        tileReader.skip(tag & 7);
+      }
+    }
+  }
+
+  /** Returns the bytes attributed to features, keys and values; the rest of the layer counts as overhead. */
+  private long addLayer(ProtobufReader layer, ZoomStats stats) {
+    List<String> keys = new ArrayList<>();
+    List<Integer> keySizes = new ArrayList<>();
+    List<String> values = new ArrayList<>();
+    List<Integer> valueSizes = new ArrayList<>();
+    List<int[]> featureTags = new ArrayList<>();
+    long attributed = 0;
+
+    while (layer.hasMore()) {
+      int tag = layer.readTag();
+      int field = tag >>> 3;
+      int start = layer.position();
+      if (field == 2) {
+        ProtobufReader feature = layer.readMessage();
+        long featureBytes = layer.position() - start + ProtobufReader.varintSize(tag);
+        long geometryBytes = 0;
+        int[] tags = new int[0];
+        while (feature.hasMore()) {
+          int featureTag = feature.readTag();
+          int featureField = featureTag >>> 3;
+          int fieldStart = feature.position();
+          if (featureField == 4) {
+            feature.skip(featureTag & 7);
+            geometryBytes += feature.position() - fieldStart + ProtobufReader.varintSize(featureTag);
+          } else if (featureField == 2 && (featureTag & 7) == ProtobufReader.LENGTH_DELIMITED) {
+            ProtobufReader packed = feature.readMessage();
+            List<Integer> indices = new ArrayList<>();
+            while (packed.hasMore()) {
+              indices.add((int) packed.readVarint());
+            }
+            tags = indices.stream().mapToInt(Integer::intValue).toArray();
+          } else {
+            feature.skip(featureTag & 7);
+          }
+        }
+        stats.features++;
+        stats.geometryBytes += geometryBytes;
+        stats.featureOverheadBytes += featureBytes - geometryBytes;
+        attributed += featureBytes;
+        featureTags.add(tags);
+      } else if (field == 3) {
+        keys.add(layer.readString());
+        int size = layer.position() - start + ProtobufReader.varintSize(tag);
+        keySizes.add(size);
+        attributed += size;
+      } else if (field == 4) {
+        ProtobufReader value = layer.readMessage();
+        values.add(readValue(value));
+        int size = layer.position() - start + ProtobufReader.varintSize(tag);
+        valueSizes.add(size);
+        attributed += size;
+      } else {
+        layer.skip(tag & 7);
+      }
+    }
+
+    for (int i = 0; i < keys.size(); i++) {
+      stats.key(keys.get(i)).keyTableBytes += keySizes.get(i);
+    }
+    BitSet[] valueKeys = new BitSet[values.size()];
+    for (int[] tags : featureTags) {
+      for (int i = 0; i + 1 < tags.length; i += 2) {
+        if (tags[i] >= keys.size() || tags[i + 1] >= values.size()) {
+          continue;
+        }
+        KeyStats key = stats.key(keys.get(tags[i]));
+        int tagBytes = ProtobufReader.varintSize(tags[i]) + ProtobufReader.varintSize(tags[i + 1]);
+        key.tagBytes += tagBytes;
+        key.features++;
+        // the feature overhead counted above includes its tags, move them to the key they belong to
+        stats.featureOverheadBytes -= tagBytes;
+        if (valueKeys[tags[i + 1]] == null) {
+          valueKeys[tags[i + 1]] = new BitSet(keys.size());
+        }
+        valueKeys[tags[i + 1]].set(tags[i]);
+      }
+    }
+    for (int value = 0; value < values.size(); value++) {
+      BitSet users = valueKeys[value];
+      if (users == null) {
+        continue;
+      }
+      int size = valueSizes.get(value);
+      int share = size / users.cardinality();
+      int remainder = size - share * users.cardinality();
+      for (int key = users.nextSetBit(0); key >= 0; key = users.nextSetBit(key + 1)) {
+        long bytes = share + (remainder-- > 0 ? 1 : 0);
+        KeyStats keyStats = stats.key(keys.get(key));
+        keyStats.valueTableBytes += bytes;
+        keyStats.valueBytes.merge(values.get(value), bytes, Long::sum);
+      }
+    }
+    return attributed;
+  }
+
+  private static String readValue(ProtobufReader value) {
+    String result = "";
+    while (value.hasMore()) {
+      int tag = value.readTag();
+      switch (tag >>> 3) {
+        case 1 -> result = value.readString();
+        case 2 -> result = Float.toString(value.readFloat());
+        case 3 -> result = Double.toString(value.readDouble());
+        case 4, 5 -> result = Long.toString(value.readVarint());
+        case 6 -> result = Long.toString(value.readSignedVarint());
+        case 7 -> result = Boolean.toString(value.readVarint() != 0);
+        default -> value.skip(tag & 7);
+      }
+    }
+    return result;
+  }
+
+  private static int percentile(int[] sorted, int count, double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    int index = (int) Math.ceil(percentile * count) - 1;
+    return sorted[Math.max(0, Math.min(count - 1, index))];
+  }
+
+  String toJson() {
+    StringBuilder json = new StringBuilder("{\n  \"tile_budget\": ").append(tileBudget).append(",\n  \"zooms\": [");
+    boolean firstZoom = true;
+    for (int z = 0; z < zooms.length; z++) {
+      ZoomStats stats = zooms[z];
+      if (stats == null) {
+        continue;
+      }
+      int[] sorted = Arrays.copyOf(stats.tileBytes, stats.tiles);
+      Arrays.sort(sorted);
+      json.append(firstZoom ? "\n" : ",\n");
+      firstZoom = false;
+      json.append("    {\"zoom\": ").append(z)
+        .append(", \"tiles\": ").append(stats.tiles)
+        .append(", \"compressed_bytes\": ").append(stats.compressedBytes)
+        .append(", \"uncompressed_bytes\": ").append(stats.uncompressedBytes)
+        .append(", \"tile_bytes_p50\": ").append(percentile(sorted, stats.tiles, 0.5))
+        .append(", \"tile_bytes_p95\": ").append(percentile(sorted, stats.tiles, 0.95))
+        .append(", \"tile_bytes_max\": ").append(stats.tiles == 0 ? 0 : sorted[stats.tiles - 1])
+        .append(", \"features\": ").append(stats.features)
+        .append(", \"geometry_bytes\": ").append(stats.geometryBytes)
+        .append(", \"feature_overhead_bytes\": ").append(stats.featureOverheadBytes)
+        .append(", \"layer_overhead_bytes\": ").append(stats.layerOverheadBytes)
+        .append(", \"keys\": {");
+      boolean firstKey = true;
+      for (var keyEntry : stats.keys.entrySet()) {
+        KeyStats key = keyEntry.getValue();
+        json.append(firstKey ? "\n" : ",\n");
+        firstKey = false;
+        json.append("      ").append(Json.string(keyEntry.getKey())).append(": {")
+          .append("\"features\": ").append(key.features)
+          .append(", \"key_table_bytes\": ").append(key.keyTableBytes)
+          .append(", \"value_table_bytes\": ").append(key.valueTableBytes)
+          .append(", \"tag_bytes\": ").append(key.tagBytes)
+          .append(", \"values\": {");
+        List<Map.Entry<String, Long>> values = key.valueBytes.entrySet().stream()
+          .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+          .limit(MAX_VALUES_PER_KEY)
+          .toList();
+        for (int i = 0; i < values.size(); i++) {
+          json.append(i == 0 ? "" : ", ")
+            .append(Json.string(values.get(i).getKey())).append(": ").append(values.get(i).getValue());
+        }
+        json.append("}}");
+      }
+      json.append(firstKey ? "}}" : "\n    }}");
+    }
+    json.append("\n  ],\n  \"oversized_tiles\": [");
+    List<OversizedTile> largest = oversized.stream()
+      .sorted(Comparator.comparingInt(OversizedTile::bytes).reversed())
+      .limit(MAX_OVERSIZED_TILES)
+      .toList();
+    for (int i = 0; i < largest.size(); i++) {
+      OversizedTile tile = largest.get(i);
+      json.append(i == 0 ? "\n" : ",\n")
+        .append("    {\"z\": ").append(tile.z())
+        .append(", \"x\": ").append(tile.x())
+        .append(", \"y\": ").append(tile.y())
+        .append(", \"bytes\": ").append(tile.bytes()).append('}');
+    }
+    json.append(largest.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+    return json.toString();
+  }
+}
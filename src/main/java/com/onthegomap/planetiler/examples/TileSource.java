@@ -0,0 +1,77 @@
+package com.onthegomap.planetiler.examples;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/** Thread-safe lookup of encoded tiles by {@code z/x/y}. */
+interface TileSource extends AutoCloseable {
+
+  /** Returns the stored bytes of a tile, usually gzipped, or {@code null} when the tile does not exist. */
+  ByteBuffer getTile(int z, int x, int y) throws Exception;
+
+  @Override
+  default void close() throws Exception {}
+
+  /**
+   * Opens an mbtiles or pmtiles file depending on its extension. Tiles of pmtiles archives compressed with zstd are
+   * served gzipped, which every browser can decode.
+   */
+  static TileSource open(Path path) throws Exception {
+    if (!path.getFileName().toString().endsWith(".pmtiles")) {
+      return mbtiles(path);
+    }
+    PmtilesReader reader = PmtilesReader.open(path);
+    byte compression = reader.tileCompression();
+    if (compression == PmtilesWriter.COMPRESSION_GZIP || compression == PmtilesWriter.COMPRESSION_NONE) {
+      return reader;
+    }
+    TileCodec codec = reader.codec();
+    return new TileSource() {
+      @Override
+      public ByteBuffer getTile(int z, int x, int y) throws Exception {
+        ByteBuffer stored = reader.getTile(z, x, y);
+        if (stored == null) {
+          return null;
+        }
+        byte[] data = new byte[stored.remaining()];
+        stored.get(data);
+        return ByteBuffer.wrap(PmtilesWriter.gzip(codec.decompress(data)));
+      }
+
+      @Override
+      public void close() throws Exception {
+        reader.close();
+      }
+    };
+  }
+
+  /** Reads tiles from an mbtiles file with one connection per calling thread. */
+  static TileSource mbtiles(Path path) {
+    Queue<MbtilesArchive> opened = new ConcurrentLinkedQueue<>();
+    ThreadLocal<MbtilesArchive> archives = ThreadLocal.withInitial(() -> {
+      try {
+        MbtilesArchive archive = MbtilesArchive.open(path);
+        opened.add(archive);
+        return archive;
+      } catch (Exception e) {
+        throw new IllegalStateException("Unable to open " + path, e);
+      }
+    });
+    return new TileSource() {
+      @Override
+      public ByteBuffer getTile(int z, int x, int y) throws Exception {
+        byte[] data = archives.get().getTile(z, x, y);
+        return data == null ? null : ByteBuffer.wrap(data);
+      }
+
+      @Override
+      public void close() throws Exception {
+        for (MbtilesArchive archive : opened) {
+          archive.close();
+        }
+      }
+    };
+  }
+}
@@ -0,0 +1,113 @@
+package com.onthegomap.planetiler.examples;
+
+import com.onthegomap.planetiler.VectorTile;
+import com.onthegomap.planetiler.geo.GeoUtils;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.util.AffineTransformation;
+
+/**
+ * Checks that highway lines meet without seams when the z14 tiles are overzoomed up to z20. MapLibre clips what it
+ * draws for a tile to that tile, so every piece of a line that lies within half its drawn width, plus antialiasing, of
+ * a tile edge must also be in the tile on the other side of the edge. The drawn width is interpolated between
+ * {@code line-width} at z14 and {@code line-width-z20} as the styles do.
+ */
+class BufferSeamCheck {
+
+  private static final int ZOOM = 14;
+  private static final int MAX_OVERZOOM = 20;
+  private static final double TILE_PIXELS = 256;
+  private static final double CSS_PIXELS_PER_TILE_PIXEL = 2;
+  private static final double ANTIALIAS_CSS_PIXELS = 1;
+  /** Tiles are simplified on their own, so the copies of a line in two tiles may differ by this many tile pixels. */
+  private static final double TOLERANCE = 0.25;
+  private static final int[][] NEIGHBORS = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+
+  /** Returns a description of every seam found in the z14 tiles of {@code mbtiles}, empty when there is none. */
+  static List<String> run(Path mbtiles) throws Exception {
+    Map<Long, List<VectorTile.Feature>> tiles = new HashMap<>();
+    try (MbtilesArchive archive = MbtilesArchive.open(mbtiles)) {
+      for (long coordinate : archive.tileCoordinates(ZOOM)) {
+        int x = (int) (coordinate >>> 32);
+        int y = (int) coordinate;
+        tiles.put(coordinate, VectorTile.decode(MbtilesArchive.gunzipIfNeeded(archive.getTile(ZOOM, x, y))));
+      }
+    }
+    List<String> failures = new ArrayList<>();
+    for (var entry : tiles.entrySet()) {
+      int x = (int) (entry.getKey() >>> 32);
+      int y = (int) (long) entry.getKey();
+      for (VectorTile.Feature feature : entry.getValue()) {
+        double reach = reach(feature);
+        if (reach <= 0) {
+          continue;
+        }
+        Geometry line = feature.geometry().decode();
+        for (int[] neighbor : NEIGHBORS) {
+          Geometry nearEdge = line.intersection(GeoUtils.JTS_FACTORY.toGeometry(edgeStrip(neighbor, reach)));
+          if (nearEdge.getLength() <= TOLERANCE) {
+            continue;
+          }
+          long otherKey = ((long) (x + neighbor[0]) << 32) | (y + neighbor[1]);
+          Geometry drawn = AffineTransformation
+            .translationInstance(-neighbor[0] * TILE_PIXELS, -neighbor[1] * TILE_PIXELS)
+            .transform(nearEdge);
+          double missing = drawn.difference(sameStyle(tiles.get(otherKey), feature).buffer(TOLERANCE)).getLength();
+          if (missing > TOLERANCE) {
+            failures.add(String.format("z%d tile %d/%d lacks %.2f px of %s drawn within %.2f px of its edge by %d/%d",
+              ZOOM, x + neighbor[0], y + neighbor[1], missing, feature.attrs(), reach, x, y));
+          }
+        }
+      }
+    }
+    return failures;
+  }
+
+  /**
+   * Returns how far past a tile edge, in z14 tile pixels, a client draws {@code feature} at its widest between z14
+   * and z20, or 0 when the feature does not carry its widths.
+   */
+  private static double reach(VectorTile.Feature feature) {
+    if (!(feature.attrs().get("line-width") instanceof Number z14) ||
+      !(feature.attrs().get("line-width-z20") instanceof Number z20)) {
+      return 0;
+    }
+    // the single-feature style draws the casing 2 CSS pixels wider than the line
+    double casing = feature.attrs().containsKey("casing-color") ? 2 : 0;
+    double reach = 0;
+    for (int zoom = ZOOM; zoom <= MAX_OVERZOOM; zoom++) {
+      double width = casing + z14.doubleValue() +
+        (z20.doubleValue() - z14.doubleValue()) * (zoom - ZOOM) / (MAX_OVERZOOM - ZOOM);
+      double cssPixels = width / 2 + ANTIALIAS_CSS_PIXELS;
+      reach = Math.max(reach, cssPixels / CSS_PIXELS_PER_TILE_PIXEL / (1 << (zoom - ZOOM)));
+    }
+    return reach;
+  }
+
+  /** Returns the part of a tile within {@code reach} of its edge with the tile at offset {@code neighbor}. */
+  private static Envelope edgeStrip(int[] neighbor, double reach) {
+    double minX = neighbor[0] > 0 ? TILE_PIXELS - reach : 0;
+    double maxX = neighbor[0] < 0 ? reach : TILE_PIXELS;
+    double minY = neighbor[1] > 0 ? TILE_PIXELS - reach : 0;
+    double maxY = neighbor[1] < 0 ? reach : TILE_PIXELS;
+    return new Envelope(minX, maxX, minY, maxY);
+  }
+
+  /** Returns the lines of {@code features} drawn the same way as {@code feature}. */
+  private static Geometry sameStyle(List<VectorTile.Feature> features, VectorTile.Feature feature) throws Exception {
+    List<Geometry> lines = new ArrayList<>();
+    if (features != null) {
+      for (VectorTile.Feature other : features) {
+        if (other.attrs().equals(feature.attrs())) {
+          lines.add(other.geometry().decode());
+        }
+      }
+    }
+    return GeoUtils.JTS_FACTORY.buildGeometry(lines);
+  }
+}
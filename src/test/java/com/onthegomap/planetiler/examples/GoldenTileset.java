@@ -0,0 +1,220 @@
+package com.onthegomap.planetiler.examples;
+
+import com.onthegomap.planetiler.TestUtils;
+import com.onthegomap.planetiler.config.Arguments;
+import com.onthegomap.planetiler.mbtiles.Mbtiles;
+import com.onthegomap.planetiler.util.Gzip;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds the synthetic fixture of {@link SyntheticOsm} offline with {@link SingleHighwayLayer#run} and compares the
+ * result with a checked-in baseline: the checksum of every tile must match, and total tile bytes must not grow beyond
+ * their threshold. Wall time and peak heap depend on the machine that wrote the baseline, so they are only compared
+ * with {@code --check_performance}. The tiles are read and every decoded geometry is validated with the Planetiler
+ * test-jar's {@link TestUtils}, and the z14 tiles are checked for seams with {@link BufferSeamCheck}. Fails with an
+ * exception, and so {@link GoldenTilesetTest} fails the build, on any difference. {@code --update_baseline} writes the
+ * current build as the new baseline instead.
+ */
+public class GoldenTileset {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(GoldenTileset.class);
+  private static final int MAX_LISTED_TILES = 20;
+
+  record Measurement(double wallSeconds, long peakHeapBytes, long tilesetBytes, Map<String, String> tileChecksums) {
+
+    Properties toProperties() {
+      Properties properties = new Properties();
+      properties.setProperty("wall_seconds", Double.toString(Math.round(wallSeconds * 100) / 100.0));
+      properties.setProperty("peak_heap_bytes", Long.toString(peakHeapBytes));
+      properties.setProperty("tileset_bytes", Long.toString(tilesetBytes));
+      properties.setProperty("tiles", Integer.toString(tileChecksums.size()));
+      return properties;
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    run(Arguments.fromArgsOrConfigFile(args));
+  }
+
+  static void run(Arguments args) throws Exception {
+    int size = args.getInteger("golden_size", "blocks per side of the synthetic street grid", 12);
+    Path fixture = args.file("fixture", "synthetic .osm.pbf to generate", Path.of("data", "golden", "golden.osm.pbf"));
+    Path output = args.file("output", "mbtiles to build", Path.of("data", "golden", "golden.mbtiles"));
+    Path baseline = args.file("baseline", "baseline measurements",
+      Path.of("src", "test", "resources", "golden-baseline.properties"));
+    Path checksums = args.file("checksums", "baseline tile checksums",
+      Path.of("src", "test", "resources", "golden-tiles.tsv"));
+    boolean checkPerformance = args.getBoolean("check_performance",
+      "also compare wall time and peak heap with the baseline, which only holds on the machine that wrote it", false);
+    double maxTime = args.getDouble("max_time_regression", "allowed relative wall time increase", 0.5);
+    double timeSlack = args.getDouble("time_slack_seconds", "wall time increase always allowed, for noise", 2);
+    double maxHeap = args.getDouble("max_heap_regression", "allowed relative peak heap increase", 0.25);
+    double maxSize = args.getDouble("max_size_regression", "allowed relative total tile bytes increase", 0.01);
+    boolean update = args.getBoolean("update_baseline", "write this build as the new baseline", false);
+
+    List<String> checks = OverviewJunctionCheck.run();
+    if (!checks.isEmpty()) {
+      checks.forEach(failure -> LOGGER.error("{}", failure));
+      throw new IllegalStateException("Overview junction check failed: " + checks.size() + " failures");
+    }
+
+    Files.createDirectories(fixture.toAbsolutePath().getParent());
+    SyntheticOsm osm = SyntheticOsm.generate(size);
+    osm.write(fixture);
+    LOGGER.info("Wrote {} nodes and {} ways to {}", osm.nodeCount(), osm.wayCount(), fixture);
+
+    Measurement current = build(args, fixture, output);
+    LOGGER.info("Built {} tiles, {} bytes in {} s with a peak heap of {} MB", current.tileChecksums().size(),
+      current.tilesetBytes(), String.format("%.2f", current.wallSeconds()), current.peakHeapBytes() >> 20);
+    List<String> seams = BufferSeamCheck.run(output);
+    if (!seams.isEmpty()) {
+      seams.stream().limit(MAX_LISTED_TILES).forEach(failure -> LOGGER.error("{}", failure));
+      throw new IllegalStateException("Buffer seam check failed: " + seams.size() + " seams at z14 overzoom");
+    }
+
+    if (update) {
+      writeBaseline(current, baseline, checksums);
+      LOGGER.info("Wrote the baseline to {} and {}", baseline, checksums);
+      return;
+    }
+    if (!Files.exists(baseline) || !Files.exists(checksums)) {
+      throw new IllegalStateException("No baseline at " + baseline + " and " + checksums +
+        ", create it with --update_baseline=true");
+    }
+    List<String> failures = compare(current, readProperties(baseline), readChecksums(checksums), checkPerformance,
+      maxTime, timeSlack, maxHeap, maxSize);
+    if (!failures.isEmpty()) {
+      failures.forEach(failure -> LOGGER.error("{}", failure));
+      throw new IllegalStateException("Golden tileset regressed: " + failures.size() + " failures");
+    }
+    LOGGER.info("Golden tileset matches the baseline");
+  }
+
+  private static Measurement build(Arguments args, Path fixture, Path output) throws Exception {
+    Arguments buildArgs = Arguments.of(Map.of(
+      "osm_path", fixture.toString(),
+      "mbtiles", output.toString(),
+      "pmtiles", "",
+      "palette_style", output.resolveSibling("style-palette.json").toString()
+    )).orElse(args);
+
+    List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+      .filter(pool -> pool.getType() == MemoryType.HEAP)
+      .toList();
+    System.gc();
+    heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+    long start = System.nanoTime();
+    SingleHighwayLayer.run(buildArgs);
+    double wallSeconds = (System.nanoTime() - start) / 1e9;
+    // the pools peak at different times, so the sum overstates the peak, but it does so the same way every run
+    long peakHeap = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+
+    Map<String, String> tileChecksums = new TreeMap<>();
+    long tilesetBytes = 0;
+    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+    try (Mbtiles db = Mbtiles.newReadOnlyDatabase(output)) {
+      for (Mbtiles.TileEntry tile : TestUtils.getAllTiles(db)) {
+        tilesetBytes += tile.bytes().length;
+        byte[] hash = digest.digest(Gzip.gunzip(tile.bytes()));
+        StringBuilder hex = new StringBuilder();
+        for (int i = 0; i < 16; i++) {
+          hex.append(String.format("%02x", hash[i]));
+        }
+        tileChecksums.put(tile.tile().z() + "/" + tile.tile().x() + "/" + tile.tile().y(), hex.toString());
+      }
+      for (var features : TestUtils.getTileMap(db).values()) {
+        for (TestUtils.ComparableFeature feature : features) {
+          TestUtils.validateGeometry(feature.geometry().geom());
+        }
+      }
+    }
+    return new Measurement(wallSeconds, peakHeap, tilesetBytes, tileChecksums);
+  }
+
+  static List<String> compare(Measurement current, Properties baseline, Map<String, String> baselineChecksums,
+    boolean checkPerformance, double maxTime, double timeSlack, double maxHeap, double maxSize) {
+    List<String> failures = new ArrayList<>();
+    List<String> changed = new ArrayList<>();
+    for (var entry : baselineChecksums.entrySet()) {
+      String checksum = current.tileChecksums().get(entry.getKey());
+      if (checksum == null) {
+        changed.add(entry.getKey() + " missing");
+      } else if (!checksum.equals(entry.getValue())) {
+        changed.add(entry.getKey() + " changed");
+      }
+    }
+    for (String tile : current.tileChecksums().keySet()) {
+      if (!baselineChecksums.containsKey(tile)) {
+        changed.add(tile + " added");
+      }
+    }
+    if (!changed.isEmpty()) {
+      failures.add(changed.size() + " tiles differ from the baseline: " +
+        String.join(", ", changed.subList(0, Math.min(MAX_LISTED_TILES, changed.size()))) +
+        (changed.size() > MAX_LISTED_TILES ? ", ..." : ""));
+    }
+
+    if (checkPerformance) {
+      double baselineSeconds = Double.parseDouble(baseline.getProperty("wall_seconds"));
+      if (current.wallSeconds() > baselineSeconds * (1 + maxTime) + timeSlack) {
+        failures.add(String.format("Wall time %.2f s exceeds the baseline %.2f s by more than %.0f%% + %.1f s",
+          current.wallSeconds(), baselineSeconds, maxTime * 100, timeSlack));
+      }
+      long baselineHeap = Long.parseLong(baseline.getProperty("peak_heap_bytes"));
+      if (current.peakHeapBytes() > baselineHeap * (1 + maxHeap)) {
+        failures.add(String.format("Peak heap %d MB exceeds the baseline %d MB by more than %.0f%%",
+          current.peakHeapBytes() >> 20, baselineHeap >> 20, maxHeap * 100));
+      }
+    }
+    long baselineBytes = Long.parseLong(baseline.getProperty("tileset_bytes"));
+    if (current.tilesetBytes() > baselineBytes * (1 + maxSize)) {
+      failures.add(String.format("Tileset size %d bytes exceeds the baseline %d bytes by more than %.1f%%",
+        current.tilesetBytes(), baselineBytes, maxSize * 100));
+    }
+    return failures;
+  }
+
+  private static void writeBaseline(Measurement current, Path baseline, Path checksums) throws IOException {
+    Files.createDirectories(baseline.toAbsolutePath().getParent());
+    try (Writer writer = Files.newBufferedWriter(baseline)) {
+      current.toProperties().store(writer, "Golden tileset baseline, regenerate with --update_baseline=true");
+    }
+    StringBuilder tsv = new StringBuilder();
+    current.tileChecksums().forEach((tile, checksum) -> tsv.append(tile).append('\t').append(checksum).append('\n'));
+    Files.writeString(checksums, tsv);
+  }
+
+  private static Properties readProperties(Path path) throws IOException {
+    Properties properties = new Properties();
+    try (Reader reader = Files.newBufferedReader(path)) {
+      properties.load(reader);
+    }
+    return properties;
+  }
+
+  private static Map<String, String> readChecksums(Path path) throws IOException {
+    Map<String, String> result = new TreeMap<>();
+    for (String line : Files.readAllLines(path)) {
+      int tab = line.indexOf('\t');
+      if (tab > 0) {
+        result.put(line.substring(0, tab), line.substring(tab + 1));
+      }
+    }
+    return result;
+  }
+}
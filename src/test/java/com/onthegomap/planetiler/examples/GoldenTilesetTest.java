@@ -0,0 +1,27 @@
+package com.onthegomap.planetiler.examples;
+
+import com.onthegomap.planetiler.config.Arguments;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Runs {@link GoldenTileset} in the default build. The fixture, tileset and temporary files go to a temporary
+ * directory, and the baseline is read from {@code src/test/resources}. System properties are passed on as arguments,
+ * e.g. {@code -Dupdate_baseline=true} to write a new baseline or {@code -Dcheck_performance=true} to also compare wall
+ * time and peak heap.
+ */
+class GoldenTilesetTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void matchesBaseline() throws Exception {
+    GoldenTileset.run(Arguments.of(
+      "fixture", tempDir.resolve("golden.osm.pbf").toString(),
+      "output", tempDir.resolve("golden.mbtiles").toString(),
+      "tmpdir", tempDir.resolve("tmp").toString()
+    ).orElse(Arguments.from(System.getProperties())));
+  }
+}
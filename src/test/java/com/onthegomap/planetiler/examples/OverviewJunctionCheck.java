@@ -0,0 +1,62 @@
+package com.onthegomap.planetiler.examples;
+
+import com.onthegomap.planetiler.geo.GeoUtils;
+import java.util.ArrayList;
+import java.util.List;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+
+/**
+ * Checks the overview network at a motorway/trunk junction: a trunk that runs along a motorway snaps onto the same
+ * grid edges at the overview zooms, and those shared edges must be drawn as motorway, the more important class.
+ */
+class OverviewJunctionCheck {
+
+  /** Returns a description of every failed check, empty when the overview draws the junction correctly. */
+  static List<String> run() {
+    List<HighwayStyle> styles = HighwayStyle.defaults();
+    int motorway = categoryIndex(styles, "motorway");
+    int trunk = categoryIndex(styles, "trunk");
+    HighwayOverview overview = new SingleHighwayLayer().overview();
+    List<String> failures = new ArrayList<>();
+    if (overview == null) {
+      return failures;
+    }
+    // the trunk comes in from the north and follows the motorway for about 23 km
+    LineString motorwayLine = worldLine(8.0, 47.0, 9.0, 47.0);
+    LineString trunkLine = worldLine(8.5, 47.3, 8.5, 47.0, 8.8, 47.0);
+    HighwayOverview.Collector collector = overview.collector();
+    collector.add(motorway, motorwayLine);
+    collector.add(trunk, trunkLine);
+    for (int zoom = overview.minZoom(); zoom <= overview.maxZoom(); zoom++) {
+      double motorwayLength = 0;
+      for (HighwayOverview.Line line : overview.generalize(zoom, collector.lines())) {
+        if (line.categoryIndex() == motorway) {
+          motorwayLength += line.worldGeometry().getLength();
+        }
+      }
+      if (motorwayLength < 0.9 * motorwayLine.getLength()) {
+        failures.add(String.format("z%d overview draws %.0f%% of a motorway as motorway where a trunk joins it", zoom,
+          motorwayLength * 100 / motorwayLine.getLength()));
+      }
+    }
+    return failures;
+  }
+
+  private static int categoryIndex(List<HighwayStyle> styles, String category) {
+    for (int i = 0; i < styles.size(); i++) {
+      if (styles.get(i).category.equals(category)) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException("No style for " + category);
+  }
+
+  private static LineString worldLine(double... lonLats) {
+    Coordinate[] coordinates = new Coordinate[lonLats.length / 2];
+    for (int i = 0; i < coordinates.length; i++) {
+      coordinates[i] = new Coordinate(lonLats[2 * i], lonLats[2 * i + 1]);
+    }
+    return (LineString) GeoUtils.latLonToWorldCoords(GeoUtils.JTS_FACTORY.createLineString(coordinates));
+  }
+}
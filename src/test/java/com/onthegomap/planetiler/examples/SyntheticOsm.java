@@ -0,0 +1,219 @@
+package com.onthegomap.planetiler.examples;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deterministic synthetic {@code .osm.pbf} for the golden tileset: a street grid with dense motorway interchanges,
+ * dual carriageways, stacks of bridges and tunnels on many layers and a few malformed {@code layer} tags. The same
+ * size always produces the same bytes.
+ */
+class SyntheticOsm {
+
+  private static final int WAYS_PER_BLOCK = 8000;
+  private static final int NODES_PER_BLOCK = 8000;
+  private static final double MIN_LON = 8.50;
+  private static final double MIN_LAT = 47.35;
+
+  private record OsmWay(Map<String, String> tags, long[] refs) {}
+
+  private double[] lons = new double[1024];
+  private double[] lats = new double[1024];
+  private int nodeCount;
+  private final List<OsmWay> ways = new ArrayList<>();
+  private double maxLon = MIN_LON;
+  private double maxLat = MIN_LAT;
+
+  /**
+   * Returns the fixture with a {@code size} by {@code size} grid of blocks of about 1 km, an interchange at every
+   * third grid crossing and a stack of bridges and tunnels at every other one.
+   */
+  static SyntheticOsm generate(int size) {
+    SyntheticOsm osm = new SyntheticOsm();
+    double step = 0.01;
+    String[] gridClasses = {"secondary", "unclassified", "tertiary", "unclassified", "primary", "unclassified"};
+    for (int i = 0; i <= size; i++) {
+      String highway = gridClasses[i % gridClasses.length];
+      osm.line(tags("highway", highway), grid(MIN_LON, MIN_LAT + i * step, step, 0, size, 8));
+      osm.line(tags("highway", highway), grid(MIN_LON + i * step, MIN_LAT, 0, step, size, 8));
+    }
+    for (int x = 1; x < size; x++) {
+      for (int y = 1; y < size; y++) {
+        double lon = MIN_LON + x * step + step / 2;
+        double lat = MIN_LAT + y * step + step / 2;
+        if ((x + y) % 3 == 0) {
+          osm.interchange(lon, lat, step * 0.3);
+        } else if ((x + y) % 2 == 0) {
+          osm.stack(lon, lat, step * 0.3);
+        }
+      }
+    }
+    return osm;
+  }
+
+  private static double[] grid(double lon, double lat, double dLon, double dLat, int size, int nodesPerBlock) {
+    double[] result = new double[(size * nodesPerBlock + 1) * 2];
+    for (int i = 0; i <= size * nodesPerBlock; i++) {
+      result[i * 2] = lon + dLon * i / nodesPerBlock;
+      result[i * 2 + 1] = lat + dLat * i / nodesPerBlock;
+    }
+    return result;
+  }
+
+  private static Map<String, String> tags(String... keysAndValues) {
+    Map<String, String> result = new LinkedHashMap<>();
+    for (int i = 0; i < keysAndValues.length; i += 2) {
+      result.put(keysAndValues[i], keysAndValues[i + 1]);
+    }
+    return result;
+  }
+
+  /**
+   * Two dual carriageway motorways crossing on a bridge, with a loop ramp in every quadrant and straight slip roads
+   * joining a trunk ring around the crossing.
+   */
+  private void interchange(double lon, double lat, double radius) {
+    double gap = radius * 0.04;
+    line(tags("highway", "motorway", "oneway", "yes"), lon - radius, lat - gap, lon + radius, lat - gap);
+    line(tags("highway", "motorway", "oneway", "yes"), lon + radius, lat + gap, lon - radius, lat + gap);
+    line(tags("highway", "motorway", "oneway", "yes", "bridge", "yes", "layer", "1"),
+      lon - gap, lat - radius, lon - gap, lat + radius);
+    line(tags("highway", "motorway", "oneway", "yes", "bridge", "yes", "layer", "1"),
+      lon + gap, lat + radius, lon + gap, lat - radius);
+    for (int quadrant = 0; quadrant < 4; quadrant++) {
+      double sx = quadrant == 0 || quadrant == 3 ? 1 : -1;
+      double sy = quadrant < 2 ? 1 : -1;
+      double[] loop = new double[26];
+      for (int i = 0; i < 13; i++) {
+        double angle = Math.PI * 2 * i / 12;
+        loop[i * 2] = lon + sx * radius * (0.3 + 0.2 * Math.cos(angle));
+        loop[i * 2 + 1] = lat + sy * radius * (0.3 + 0.2 * Math.sin(angle));
+      }
+      line(tags("highway", "motorway_link", "oneway", "yes"), loop);
+      line(tags("highway", "motorway_link", "oneway", "yes"),
+        lon + sx * radius * 0.9, lat + sy * gap, lon + sx * radius * 0.6, lat + sy * radius * 0.3,
+        lon + sx * gap, lat + sy * radius * 0.9);
+      line(tags("highway", "trunk_link", quadrant % 2 == 0 ? "bridge" : "tunnel", "yes"),
+        lon + sx * radius * 0.6, lat + sy * radius * 0.3, lon + sx * radius, lat + sy * radius);
+    }
+    double[] ring = new double[34];
+    for (int i = 0; i < 17; i++) {
+      double angle = Math.PI * 2 * i / 16;
+      ring[i * 2] = lon + radius * 1.1 * Math.cos(angle);
+      ring[i * 2 + 1] = lat + radius * 1.1 * Math.sin(angle);
+    }
+    line(tags("highway", "trunk"), ring);
+  }
+
+  /** Ways crossing one point on layers from -3 to 4, some with malformed or out-of-range layer tags. */
+  private void stack(double lon, double lat, double radius) {
+    String[][] structures = {
+      {"tunnel", "yes", "layer", "-3"},
+      {"tunnel", "yes", "layer", "-2"},
+      {"tunnel", "yes", "layer", "-1"},
+      {"covered", "yes"},
+      {},
+      {"bridge", "yes"},
+      {"bridge", "yes", "layer", "2"},
+      {"bridge", "viaduct", "layer", "3"},
+      {"bridge", "yes", "layer", "4"},
+      {"bridge", "yes", "layer", "-1;0"},
+      {"tunnel", "yes", "layer", "upper"},
+    };
+    String[] classes = {"primary", "secondary_link", "tertiary", "motorway_link", "primary_link", "trunk",
+      "secondary", "tertiary_link", "motorway", "unclassified", "trunk_link"};
+    for (int i = 0; i < structures.length; i++) {
+      double angle = Math.PI * i / structures.length;
+      double dx = Math.cos(angle) * radius;
+      double dy = Math.sin(angle) * radius;
+      Map<String, String> tags = tags(structures[i]);
+      tags.put("highway", classes[i]);
+      line(tags, lon - dx, lat - dy, lon - dx * 0.2, lat - dy * 0.2 + radius * 0.01, lon + dx, lat + dy);
+    }
+  }
+
+  private void line(Map<String, String> tags, double... lonLat) {
+    long[] refs = new long[lonLat.length / 2];
+    for (int i = 0; i < refs.length; i++) {
+      refs[i] = node(lonLat[i * 2], lonLat[i * 2 + 1]);
+    }
+    ways.add(new OsmWay(tags, refs));
+  }
+
+  private long node(double lon, double lat) {
+    if (nodeCount == lons.length) {
+      lons = Arrays.copyOf(lons, nodeCount * 2);
+      lats = Arrays.copyOf(lats, nodeCount * 2);
+    }
+    lons[nodeCount] = lon;
+    lats[nodeCount] = lat;
+    maxLon = Math.max(maxLon, lon);
+    maxLat = Math.max(maxLat, lat);
+    return ++nodeCount;
+  }
+
+  int nodeCount() {
+    return nodeCount;
+  }
+
+  int wayCount() {
+    return ways.size();
+  }
+
+  /** Writes the header, then all nodes as dense nodes, then all ways, in blocks of at most 8000 entities. */
+  void write(Path output) throws IOException {
+    try (OsmPbf.Writer writer = new OsmPbf.Writer(output)) {
+      ProtobufWriter bbox = new ProtobufWriter()
+        .signedVarintField(1, nanodegrees(MIN_LON - 0.01))
+        .signedVarintField(2, nanodegrees(maxLon + 0.01))
+        .signedVarintField(3, nanodegrees(maxLat + 0.01))
+        .signedVarintField(4, nanodegrees(MIN_LAT - 0.01));
+      writer.write(OsmPbf.HEADER, new ProtobufWriter()
+        .messageField(1, bbox)
+        .stringField(4, "OsmSchema-V0.6")
+        .stringField(4, "DenseNodes")
+        .stringField(16, "single-highway-layer golden harness")
+        .toByteArray());
+
+      for (int start = 0; start < nodeCount; start += NODES_PER_BLOCK) {
+        OsmPbf.Block block = new OsmPbf.Block();
+        for (int i = start; i < Math.min(nodeCount, start + NODES_PER_BLOCK); i++) {
+          block.addNode(i + 1, nanodegrees(lats[i]) / block.granularity, nanodegrees(lons[i]) / block.granularity);
+        }
+        writer.write(OsmPbf.DATA, OsmPbf.encode(block));
+      }
+
+      for (int start = 0; start < ways.size(); start += WAYS_PER_BLOCK) {
+        OsmPbf.Block block = new OsmPbf.Block();
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        strings.put("", 0);
+        for (int i = start; i < Math.min(ways.size(), start + WAYS_PER_BLOCK); i++) {
+          OsmWay way = ways.get(i);
+          int[] keys = new int[way.tags().size()];
+          int[] values = new int[keys.length];
+          int tag = 0;
+          for (var entry : way.tags().entrySet()) {
+            keys[tag] = strings.computeIfAbsent(entry.getKey(), key -> strings.size());
+            values[tag] = strings.computeIfAbsent(entry.getValue(), value -> strings.size());
+            tag++;
+          }
+          block.ways.add(new OsmPbf.Way(i + 1, keys, values, way.refs()));
+        }
+        block.strings = strings.keySet().stream()
+          .map(string -> string.getBytes(StandardCharsets.UTF_8))
+          .toArray(byte[][]::new);
+        writer.write(OsmPbf.DATA, OsmPbf.encode(block));
+      }
+    }
+  }
+
+  private static long nanodegrees(double degrees) {
+    return Math.round(degrees * 1e9);
+  }
+}